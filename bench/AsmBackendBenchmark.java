@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This compares building a program as Hack assembly straight from the compiler's instructions, with --asm, against
+ * building vm files for a vm translator. It compiles the particle simulation from InliningBenchmark both ways with a
+ * few settings, runs the vm files with the VmInterpreter and the assembly with the HackInterpreter, and checks they
+ * print the same. For each build it prints the Hack instructions a straightforward translator would run, estimated
+ * with VmCost, next to the ones the assembly really ran, and the number of instructions in the assembly.
+ *
+ * It then times compiling generated classes to assembly in memory both ways: translating each class's instructions
+ * directly, and writing them as vm text, parsing the text back and translating that, which is the stage --asm leaves
+ * out. Pass the number of simulation steps to run.
+ */
+public class AsmBackendBenchmark {
+
+    private static final BenchmarkHarness harness = new BenchmarkHarness(2000, 3000);
+    private static final int DEFAULT_STEPS = 200;
+    private static final int CLASS_COUNT = 50;
+
+    private static final String[][] SETTINGS = {
+            {},
+            {"--peephole"},
+            {"--inline", "--whole-program", "--peephole"},
+    };
+
+    private static final VmCode code = new VmCode();
+    private static final VmEmitter vm = new VmEmitter();
+
+    public static void main(String[] args) throws Exception {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STEPS;
+        for (String[] flags : SETTINGS) {
+            runBoth(InliningBenchmark.getSources(steps), flags);
+        }
+
+        List<String> sources = new CorpusGenerator().classes(CLASS_COUNT).generate();
+        long tokenCount = 0;
+        for (String source : sources) {
+            Tokenizer tokenizer = new Tokenizer(source);
+            while (tokenizer.hasNext()) {
+                tokenizer.next();
+                tokenCount++;
+            }
+        }
+        System.out.println();
+        harness.run("compile to asm directly", tokenCount, sources.size(), () -> compileAll(sources, false));
+        harness.run("compile to vm text, then asm", tokenCount, sources.size(), () -> compileAll(sources, true));
+    }
+
+    //Builds the program as vm files and as assembly with the flags, runs both and prints what each ran.
+    private static void runBoth(Map<String, String> sources, String[] flags) throws IOException {
+        Path directory = Files.createTempDirectory("jack-asm");
+        try {
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                Files.writeString(directory.resolve(source.getKey()), source.getValue());
+            }
+            InliningBenchmark.compile(directory, flags);
+            VmInterpreter vmInterpreter = VmInterpreter.load(directory);
+            vmInterpreter.run();
+
+            String[] asmFlags = new String[flags.length + 1];
+            System.arraycopy(flags, 0, asmFlags, 0, flags.length);
+            asmFlags[flags.length] = CompilerOptions.ASM_FLAG;
+            InliningBenchmark.compile(directory, asmFlags);
+            HackInterpreter hackInterpreter = HackInterpreter.assemble(Files.readString(
+                    directory.resolve(directory.getFileName() + HackTranslator.ASM_EXTENSION)));
+            hackInterpreter.run();
+
+            if (!vmInterpreter.getOutput().equals(hackInterpreter.getOutput())) {
+                throw new IllegalStateException("The assembly printed " + hackInterpreter.getOutput()
+                        + " instead of " + vmInterpreter.getOutput());
+            }
+            System.out.printf("%-40s %12d Hack instructions estimated from vm %12d run as asm %6.1f%% fewer"
+                            + " %7d in the ROM%n", flags.length == 0 ? "(no flags)" : String.join(" ", flags),
+                    vmInterpreter.getHackInstructions(), hackInterpreter.getSteps(),
+                    100.0 * (vmInterpreter.getHackInstructions() - hackInterpreter.getSteps())
+                            / vmInterpreter.getHackInstructions(), hackInterpreter.getInstructionCount());
+        } finally {
+            BenchmarkSources.deleteDirectory(directory);
+        }
+    }
+
+    //Compiles every source and translates it to assembly, either straight from its instructions or through vm text.
+    private static void compileAll(List<String> sources, boolean throughText) {
+        for (int i = 0; i < sources.size(); i++) {
+            code.reset();
+            new Compiler(code, new Tokenizer(sources.get(i))).compileClass();
+            List<VmInstruction> instructions = code.getInstructions();
+            if (throughText) {
+                vm.reset();
+                code.writeTo(vm);
+                instructions = new ArrayList<>();
+                for (String line : vm.toString().split("\n")) {
+                    VmInstruction instruction = VmParser.parseLine(line);
+                    if (instruction != null) {
+                        instructions.add(instruction);
+                    }
+                }
+            }
+            new HackTranslator().translate("Class" + i, instructions);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * This is a small benchmark harness in plain Java, since the project is built with javac alone and has no build
+ * module for JMH. Each benchmark is warmed up and then timed for a while, running it as many times as fits. The bytes
+ * the benchmark
+ * thread allocated are read from the JVM, so the allocation per class can be reported like the GC profiler would.
+ */
+class BenchmarkHarness {
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    //Each phase runs the benchmark at least this many times, and for at least its time.
+    private static final int MIN_ITERATIONS = 5;
+
+    private final long warmupNanos;
+    private final long measureNanos;
+
+    BenchmarkHarness(long warmupMillis, long measureMillis) {
+        this.warmupNanos = warmupMillis * 1_000_000;
+        this.measureNanos = measureMillis * 1_000_000;
+    }
+
+    //Runs the benchmark and prints its time, throughput and allocation. Each run handles the given number of tokens
+    //and classes.
+    void run(String name, long tokenCount, int classCount, Benchmark benchmark) throws Exception {
+        long warmupStart = System.nanoTime();
+        for (int i = 0; i < MIN_ITERATIONS || System.nanoTime() - warmupStart < warmupNanos; i++) {
+            benchmark.run();
+        }
+
+        long fastest = Long.MAX_VALUE;
+        long totalNanos = 0;
+        int iterations = 0;
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        while (iterations < MIN_ITERATIONS || totalNanos < measureNanos) {
+            long start = System.nanoTime();
+            benchmark.run();
+            long elapsed = System.nanoTime() - start;
+            totalNanos += elapsed;
+            fastest = Math.min(fastest, elapsed);
+            iterations++;
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        double seconds = totalNanos / 1e9 / iterations;
+        System.out.printf("%-32s %9.2f ms/op (fastest %.2f) %12.0f tokens/s %9.0f classes/s %10.1f KB/class%n",
+                name, seconds * 1000, fastest / 1e6, tokenCount / seconds, classCount / seconds,
+                allocated / 1024.0 / iterations / classCount);
+    }
+
+    /**
+     * This is one run of a benchmark.
+     */
+    interface Benchmark {
+        void run() throws Exception;
+    }
+}
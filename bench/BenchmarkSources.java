@@ -0,0 +1,46 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * This provides the jack sources used by the benchmarks, either read from a directory or made by the CorpusGenerator
+ * with its default settings.
+ */
+class BenchmarkSources {
+
+    //Reads every jack file in the directory, sorted by name.
+    static List<String> read(Path directory) throws IOException {
+        List<String> sources = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths.filter(p -> p.toString().endsWith(".jack")).sorted()::iterator) {
+                sources.add(Files.readString(path));
+            }
+        }
+        return sources;
+    }
+
+    //Makes the given number of synthetic classes.
+    static List<String> synthetic(int classCount) {
+        return new CorpusGenerator().classes(classCount).generate();
+    }
+
+    //Writes the given number of synthetic classes to the directory.
+    static void writeSynthetic(Path directory, int classCount) throws IOException {
+        new CorpusGenerator().classes(classCount).write(directory);
+    }
+
+    //Deletes the directory and the files in it.
+    static void deleteDirectory(Path directory) {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.Set;
+
+/**
+ * This is the part of the OS the benchmark programs use, built into the interpreters so a program runs without the
+ * OS's own code: Math.multiply and Math.divide, Memory.alloc, Array.new, the String functions the compiler calls for
+ * string literals and Output's print functions, with their output kept as text. Memory is handed out from the heap
+ * and never given back. A string is its length followed by its characters.
+ */
+class BuiltInOs {
+
+    static final int HEAP_BASE = 2048;
+    static final int HEAP_END = 16384;
+
+    private static final Set<String> FUNCTIONS = Set.of("Math.multiply", "Math.divide", "Memory.alloc", "Array.new",
+            "Memory.deAlloc", "Array.dispose", "String.new", "String.dispose", "String.appendChar", "String.length",
+            "String.charAt", "Output.printInt", "Output.printChar", "Output.printString", "Output.println");
+
+    private final short[] ram;
+    private int heap = HEAP_BASE;
+    private final StringBuilder output = new StringBuilder();
+
+    BuiltInOs(short[] ram) {
+        this.ram = ram;
+    }
+
+    //Returns true if the function is built in.
+    static boolean has(String function) {
+        return FUNCTIONS.contains(function);
+    }
+
+    //Runs the function on the arguments and returns its result, which is 0 for void functions.
+    int call(String function, int[] arguments) {
+        switch (function) {
+            case "Math.multiply":
+                return arguments[0] * arguments[1];
+            case "Math.divide":
+                return arguments[0] / arguments[1];
+            case "Memory.alloc":
+            case "Array.new":
+                return alloc(arguments[0]);
+            case "String.new":
+                int string = alloc(arguments[0] + 1);
+                ram[string] = 0;
+                return string;
+            case "String.appendChar":
+                ram[arguments[0] + 1 + ram[arguments[0]]] = (short) arguments[1];
+                ram[arguments[0]]++;
+                return arguments[0];
+            case "String.length":
+                return ram[arguments[0]];
+            case "String.charAt":
+                return ram[arguments[0] + 1 + arguments[1]];
+            case "Memory.deAlloc":
+            case "Array.dispose":
+            case "String.dispose":
+                return 0;
+            case "Output.printInt":
+                output.append(arguments[0]);
+                return 0;
+            case "Output.printChar":
+                output.append((char) arguments[0]);
+                return 0;
+            case "Output.printString":
+                for (int i = 0; i < ram[arguments[0]]; i++) {
+                    output.append((char) ram[arguments[0] + 1 + i]);
+                }
+                return 0;
+            case "Output.println":
+                output.append('\n');
+                return 0;
+            default:
+                throw new IllegalStateException("The built in OS doesn't have " + function);
+        }
+    }
+
+    private int alloc(int size) {
+        int block = heap;
+        heap += Math.max(size, 1);
+        if (heap > HEAP_END) {
+            throw new IllegalStateException("Out of heap");
+        }
+        return block;
+    }
+
+    String getOutput() {
+        return output.toString();
+    }
+}
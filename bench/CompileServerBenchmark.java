@@ -0,0 +1,147 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This runs a CompileServer on a free loopback port in this JVM and sends it requests with the JDK's HTTP client, so
+ * it needs no network. It first checks that a request for the synthetic corpus returns the same vm files as the
+ * EmbeddedCompiler, then prints the requests per second and mean latency with 1, 4 and 16 clients each sending small
+ * requests of a few classes, and finally floods a server with one compile thread and a short queue to show requests
+ * being turned away and timing out. The server's metrics are printed after each part.
+ */
+public class CompileServerBenchmark {
+
+    private static final int CLASSES_PER_REQUEST = 4;
+    private static final long MEASURE_MILLIS = 3000;
+    private static final int[] CLIENT_COUNTS = {1, 4, 16};
+
+    private static final HttpClient client = HttpClient.newHttpClient();
+
+    public static void main(String[] args) throws Exception {
+        List<String> sources = BenchmarkSources.synthetic(64);
+
+        CompileServer server = new CompileServer(0, CompileServer.DEFAULT_THREADS, CompileServer.DEFAULT_QUEUE,
+                CompileServer.DEFAULT_TIMEOUT_MILLIS);
+        server.start();
+        try {
+            checkSameOutput(server, sources);
+            for (int clients : CLIENT_COUNTS) {
+                run(server, sources, clients, MEASURE_MILLIS / 2);
+                run(server, sources, clients, MEASURE_MILLIS);
+            }
+            System.out.print(server.getMetrics());
+        } finally {
+            server.stop(0);
+        }
+
+        System.out.println("Overload: 1 compile thread, queue of 2, 200 ms timeout, 32 clients sending 64 classes");
+        CompileServer smallServer = new CompileServer(0, 1, 2, 200);
+        smallServer.start();
+        try {
+            String request = toRequest(sources, 0, sources.size());
+            ExecutorService clients = Executors.newFixedThreadPool(32);
+            List<Future<Integer>> statuses = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                statuses.add(clients.submit(() -> post(smallServer, request).statusCode()));
+            }
+            Map<Integer, Integer> statusCounts = new TreeMap<>();
+            for (Future<Integer> status : statuses) {
+                statusCounts.merge(status.get(), 1, Integer::sum);
+            }
+            clients.shutdown();
+            System.out.println("Status codes: " + statusCounts);
+            System.out.print(smallServer.getMetrics());
+        } finally {
+            smallServer.stop(0);
+        }
+    }
+
+    //Sends the whole corpus in one request and throws if any vm file differs from the embedded compiler's.
+    private static void checkSameOutput(CompileServer server, List<String> sources) throws Exception {
+        HttpResponse<String> response = post(server, toRequest(sources, 0, sources.size()));
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("The server answered " + response.statusCode() + ": " + response.body());
+        }
+        EmbeddedCompiler.Result expected = new EmbeddedCompiler().compile(toSourceMap(sources, 0, sources.size()));
+        if (!response.body().equals(CompileServer.toJson(expected))) {
+            throw new IllegalStateException("The server's response differs from the embedded compiler's result");
+        }
+        Map<?, ?> files = (Map<?, ?>) ((Map<?, ?>) Json.parse(response.body())).get("files");
+        System.out.println("Checked " + files.size() + " vm files from one request against EmbeddedCompiler");
+    }
+
+    //Sends requests from the given number of clients for a while and prints the throughput and latency.
+    private static void run(CompileServer server, List<String> sources, int clientCount, long millis)
+            throws Exception {
+        List<String> requests = new ArrayList<>();
+        for (int i = 0; i + CLASSES_PER_REQUEST <= sources.size(); i += CLASSES_PER_REQUEST) {
+            requests.add(toRequest(sources, i, i + CLASSES_PER_REQUEST));
+        }
+        AtomicLong count = new AtomicLong();
+        AtomicLong latencyNanos = new AtomicLong();
+        long end = System.nanoTime() + millis * 1_000_000;
+        ExecutorService clients = Executors.newFixedThreadPool(clientCount);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < clientCount; i++) {
+                int first = i;
+                workers.add(clients.submit(() -> {
+                    for (int request = first; System.nanoTime() < end; request += clientCount) {
+                        long start = System.nanoTime();
+                        HttpResponse<String> response = post(server, requests.get(request % requests.size()));
+                        if (response.statusCode() != 200) {
+                            throw new IllegalStateException("The server answered " + response.statusCode());
+                        }
+                        latencyNanos.addAndGet(System.nanoTime() - start);
+                        count.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            clients.shutdown();
+        }
+        System.out.printf("%2d clients: %8.0f requests/s %8.0f classes/s %8.2f ms mean latency%n", clientCount,
+                count.get() * 1000.0 / millis, count.get() * CLASSES_PER_REQUEST * 1000.0 / millis,
+                latencyNanos.get() / 1e6 / count.get());
+    }
+
+    private static HttpResponse<String> post(CompileServer server, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/compile"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    //Returns the request body for the sources from start to end.
+    private static String toRequest(List<String> sources, int start, int end) {
+        StringBuilder request = new StringBuilder("{\"sources\": {");
+        for (Map.Entry<String, String> source : toSourceMap(sources, start, end).entrySet()) {
+            request.append(request.charAt(request.length() - 1) == '{' ? "" : ", ")
+                    .append(Json.quote(source.getKey())).append(": ").append(Json.quote(source.getValue()));
+        }
+        return request.append("}}").toString();
+    }
+
+    //Names each source by the class it declares.
+    private static Map<String, String> toSourceMap(List<String> sources, int start, int end) {
+        Map<String, String> sourceMap = new LinkedHashMap<>();
+        for (String source : sources.subList(start, end)) {
+            String className = source.substring(source.indexOf("class ") + 6, source.indexOf('{')).trim();
+            sourceMap.put(className + JackCompiler.IN_EXTENSION, source);
+        }
+        return sourceMap;
+    }
+}
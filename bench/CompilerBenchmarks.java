@@ -0,0 +1,91 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This runs the lexing, class index, parsing and code generation, and end to end benchmarks on each corpus. Pass directories of
+ * jack files, such as the nand2tetris sample programs, to use them as corpora. Synthetic classes are always used as
+ * well, and --classes N sets how many.
+ */
+public class CompilerBenchmarks {
+
+    private static final int DEFAULT_CLASS_COUNT = 500;
+    private static final BenchmarkHarness harness = new BenchmarkHarness(2000, 3000);
+
+    //The parse benchmark reuses these like each compiling thread does.
+    private static final VmCode code = new VmCode();
+    private static final VmEmitter vm = new VmEmitter();
+
+    public static void main(String[] args) throws Exception {
+        int classCount = DEFAULT_CLASS_COUNT;
+        List<Path> directories = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--classes")) {
+                classCount = Integer.parseInt(args[++i]);
+            } else {
+                directories.add(Path.of(args[i]));
+            }
+        }
+
+        for (Path directory : directories) {
+            runAll(directory.getFileName().toString(), directory);
+        }
+
+        Path syntheticDirectory = Files.createTempDirectory("jack-benchmarks");
+        try {
+            BenchmarkSources.writeSynthetic(syntheticDirectory, classCount);
+            runAll("synthetic-" + classCount, syntheticDirectory);
+        } finally {
+            BenchmarkSources.deleteDirectory(syntheticDirectory);
+        }
+    }
+
+    //Runs each benchmark on the jack files in the directory.
+    private static void runAll(String corpusName, Path directory) throws Exception {
+        List<String> sources = BenchmarkSources.read(directory);
+        List<List<Token>> tokenizedSources = new ArrayList<>();
+        long tokenCount = 0;
+        for (String source : sources) {
+            List<Token> tokens = new ArrayList<>();
+            new Tokenizer(source).forEachRemaining(tokens::add);
+            tokenizedSources.add(tokens);
+            tokenCount += tokens.size();
+        }
+        int classCount = sources.size();
+
+        harness.run(corpusName + " lex", tokenCount, classCount, () -> lex(sources));
+        File[] files = directory.toFile().listFiles((file) -> file.getName().endsWith(JackCompiler.IN_EXTENSION));
+        harness.run(corpusName + " class index", tokenCount, classCount, () -> new ClassIndex().update(files, 1));
+        harness.run(corpusName + " parse+codegen", tokenCount, classCount, () -> compile(tokenizedSources));
+        harness.run(corpusName + " end to end", tokenCount, classCount, () -> compileDirectory(directory));
+    }
+
+    //Tokenizes every source.
+    private static void lex(List<String> sources) {
+        for (String source : sources) {
+            Tokenizer tokenizer = new Tokenizer(source);
+            while (tokenizer.hasNext()) {
+                tokenizer.next();
+            }
+        }
+    }
+
+    //Compiles tokens that were read ahead of time and writes the vm code as text.
+    private static void compile(List<List<Token>> tokenizedSources) {
+        for (List<Token> tokens : tokenizedSources) {
+            code.reset();
+            new Compiler(code, tokens.iterator()).compileClass();
+            vm.reset();
+            code.writeTo(vm);
+        }
+    }
+
+    //Compiles the directory with JackCompiler on this thread, so all of its allocation is counted.
+    private static void compileDirectory(Path directory) throws IOException {
+        String[] args = {CompilerOptions.JOBS_FLAG, "1", directory.toString()};
+        JackCompiler.createJackCompiler(CompilerOptions.parse(args)).createOutput();
+    }
+}
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * This generates valid Jack classes for benchmarks and scaling tests. The size of the corpus is set with the setters
+ * or their command line flags, and the classes are made from a seed, so the same settings always give the same
+ * sources. Each class is made from its own seed, so changing the number of classes doesn't change the classes that
+ * were already there.
+ *
+ * Every class has a constructor, the given number of int functions taking two arguments, and a method. Statements are
+ * lets, ifs, whiles and dos, mixed at random, and expressions are trees of operators, locals, constants, array
+ * elements and calls to the other classes' functions.
+ */
+class CorpusGenerator {
+
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "&", "|", "<", ">", "="};
+
+    private long seed = 1;
+    private int classCount = 100;
+    private int subroutinesPerClass = 10;
+    private int statementsPerSubroutine = 20;
+    private int expressionDepth = 3;
+    private int stringLength = 10;
+    private int identifierCount = 8;
+
+    CorpusGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    CorpusGenerator classes(int classCount) {
+        this.classCount = classCount;
+        return this;
+    }
+
+    CorpusGenerator subroutinesPerClass(int subroutinesPerClass) {
+        this.subroutinesPerClass = subroutinesPerClass;
+        return this;
+    }
+
+    CorpusGenerator statementsPerSubroutine(int statementsPerSubroutine) {
+        this.statementsPerSubroutine = statementsPerSubroutine;
+        return this;
+    }
+
+    //Sets how deeply the operators in each expression nest. Each level is in parentheses, so deep expressions also make
+    //long lines.
+    CorpusGenerator expressionDepth(int expressionDepth) {
+        this.expressionDepth = expressionDepth;
+        return this;
+    }
+
+    CorpusGenerator stringLength(int stringLength) {
+        this.stringLength = stringLength;
+        return this;
+    }
+
+    //Sets the number of local variables in each subroutine.
+    CorpusGenerator identifierCount(int identifierCount) {
+        this.identifierCount = Math.max(1, identifierCount);
+        return this;
+    }
+
+    //Sets a value from its command line flag, such as --classes.
+    CorpusGenerator set(String flag, long value) {
+        switch (flag) {
+            case "--seed":
+                return seed(value);
+            case "--classes":
+                return classes((int) value);
+            case "--subroutines":
+                return subroutinesPerClass((int) value);
+            case "--statements":
+                return statementsPerSubroutine((int) value);
+            case "--depth":
+                return expressionDepth((int) value);
+            case "--string":
+                return stringLength((int) value);
+            case "--locals":
+                return identifierCount((int) value);
+            default:
+                throw new IllegalArgumentException("Unknown option: " + flag);
+        }
+    }
+
+    //Returns the source of every class.
+    List<String> generate() {
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < classCount; i++) {
+            sources.add(generateClass(i));
+        }
+        return sources;
+    }
+
+    //Writes every class to the directory as a jack file.
+    void write(Path directory) throws IOException {
+        for (int i = 0; i < classCount; i++) {
+            Files.writeString(directory.resolve(className(i) + JackCompiler.IN_EXTENSION), generateClass(i));
+        }
+    }
+
+    //Returns a description of the settings for benchmark output.
+    @Override
+    public String toString() {
+        return "classes=" + classCount + " subroutines=" + subroutinesPerClass + " statements="
+                + statementsPerSubroutine + " depth=" + expressionDepth + " string=" + stringLength
+                + " locals=" + identifierCount + " seed=" + seed;
+    }
+
+    //Makes the class with the given index.
+    String generateClass(int index) {
+        SplittableRandom random = new SplittableRandom(seed * 31 + index);
+        String name = className(index);
+        StringBuilder source = new StringBuilder();
+        source.append("class ").append(name).append(" {\n");
+        source.append("    field int x, y;\n    static int count;\n\n");
+        source.append("    constructor ").append(name).append(" new(int ax, int ay) {\n");
+        source.append("        let x = ax;\n        let y = ay;\n        let count = count + 1;\n");
+        source.append("        return this;\n    }\n\n");
+
+        source.append("    method int sum() {\n        return x + y;\n    }\n");
+        for (int subroutine = 0; subroutine < subroutinesPerClass; subroutine++) {
+            source.append('\n');
+            new SubroutineWriter(source, random).write(subroutine);
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    //Jack identifiers can't contain digits, so numbers are written as letters.
+    static String className(int index) {
+        return "Gen" + letters(index);
+    }
+
+    static String letters(int number) {
+        StringBuilder letters = new StringBuilder();
+        do {
+            letters.append((char) ('A' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return letters.toString();
+    }
+
+    private static String localName(int index) {
+        return "v" + letters(index);
+    }
+
+    private static String functionName(int index) {
+        return "f" + letters(index);
+    }
+
+    /**
+     * This writes one function with its locals and statements.
+     */
+    private class SubroutineWriter {
+        private final StringBuilder source;
+        private final SplittableRandom random;
+        private int statementsLeft;
+
+        SubroutineWriter(StringBuilder source, SplittableRandom random) {
+            this.source = source;
+            this.random = random;
+        }
+
+        void write(int subroutine) {
+            source.append("    function int ").append(functionName(subroutine)).append("(int a, int b) {\n");
+            source.append("        var Array arr;\n");
+            for (int i = 0; i < identifierCount; i += 100) {
+                source.append("        var int ");
+                for (int local = i; local < Math.min(i + 100, identifierCount); local++) {
+                    source.append(local == i ? "" : ", ").append(localName(local));
+                }
+                source.append(";\n");
+            }
+            source.append("        let arr = Array.new(16);\n");
+
+            statementsLeft = statementsPerSubroutine;
+            while (statementsLeft > 0) {
+                writeStatement(2);
+            }
+            source.append("        return ");
+            writeExpression(expressionDepth);
+            source.append(";\n    }\n");
+        }
+
+        //Writes a random statement. Ifs and whiles hold a few statements of their own, which count towards the total.
+        private void writeStatement(int indent) {
+            statementsLeft--;
+            String padding = "    ".repeat(indent);
+            int kind = random.nextInt(10);
+            if (kind < 4 || indent > 5) {
+                source.append(padding).append("let ").append(randomLocal()).append(" = ");
+                writeExpression(expressionDepth);
+                source.append(";\n");
+            } else if (kind < 5) {
+                source.append(padding).append("let arr[").append(random.nextInt(16)).append("] = ");
+                writeExpression(expressionDepth);
+                source.append(";\n");
+            } else if (kind < 7) {
+                source.append(padding).append("if (");
+                writeExpression(expressionDepth);
+                source.append(") {\n");
+                writeBlock(indent + 1);
+                source.append(padding).append("} else {\n");
+                writeBlock(indent + 1);
+                source.append(padding).append("}\n");
+            } else if (kind < 8) {
+                String counter = randomLocal();
+                source.append(padding).append("let ").append(counter).append(" = 0;\n");
+                source.append(padding).append("while (").append(counter).append(" < ").append(random.nextInt(100) + 1)
+                        .append(") {\n");
+                writeBlock(indent + 1);
+                source.append(padding).append("    let ").append(counter).append(" = ").append(counter)
+                        .append(" + 1;\n");
+                source.append(padding).append("}\n");
+            } else if (kind < 9) {
+                source.append(padding).append("do Output.printString(\"").append(randomString()).append("\");\n");
+            } else {
+                source.append(padding).append("do Output.printInt(");
+                writeExpression(expressionDepth);
+                source.append(");\n");
+            }
+        }
+
+        private void writeBlock(int indent) {
+            int count = 1 + random.nextInt(3);
+            for (int i = 0; i < count && statementsLeft > 0; i++) {
+                writeStatement(indent);
+            }
+        }
+
+        //Writes an expression whose operators nest to the given depth.
+        private void writeExpression(int depth) {
+            if (depth <= 0) {
+                writeTerm();
+                return;
+            }
+            source.append('(');
+            writeExpression(depth - 1);
+            source.append(") ").append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+            writeTerm();
+        }
+
+        private void writeTerm() {
+            switch (random.nextInt(6)) {
+                case 0:
+                    source.append(random.nextInt(1000));
+                    break;
+                case 1:
+                    source.append("arr[").append(random.nextInt(16)).append(']');
+                    break;
+                case 2:
+                    source.append(className(random.nextInt(classCount))).append('.')
+                            .append(functionName(random.nextInt(subroutinesPerClass))).append("(a, ")
+                            .append(randomLocal()).append(')');
+                    break;
+                case 3:
+                    source.append(random.nextBoolean() ? "-" : "~").append(randomLocal());
+                    break;
+                default:
+                    source.append(randomLocal());
+            }
+        }
+
+        private String randomLocal() {
+            return localName(random.nextInt(identifierCount));
+        }
+
+        //Makes a string of letters and spaces of the set length.
+        private String randomString() {
+            StringBuilder text = new StringBuilder(stringLength);
+            for (int i = 0; i < stringLength; i++) {
+                int character = random.nextInt(27);
+                text.append(character == 26 ? ' ' : (char) ('a' + character));
+            }
+            return text.toString();
+        }
+    }
+
+    //Writes a corpus to a directory from the command line, for example:
+    //java CorpusGenerator out --classes 100 --subroutines 10 --statements 20 --depth 3 --string 10 --locals 8 --seed 1
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args[0]);
+        CorpusGenerator generator = new CorpusGenerator();
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            generator.set(args[i], Long.parseLong(args[i + 1]));
+        }
+        Files.createDirectories(directory);
+        generator.write(directory);
+        System.out.println("Wrote " + generator + " to " + directory);
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This serves compile requests to one shared EmbeddedCompiler from several threads at once, like a build server
+ * would. Each request compiles one class from the corpus. It first checks that the embedded compiler writes the same
+ * vm code as JackCompiler does for the folder, then prints the requests per second with 1, 2, 4 and 8 threads. Pass a
+ * folder of jack files to use them, otherwise 200 synthetic classes are used. Any other arguments are passed to the
+ * compiler as flags.
+ */
+public class EmbeddedCompilerBenchmark {
+
+    private static final int SYNTHETIC_CLASS_COUNT = 200;
+    private static final long WARMUP_MILLIS = 2000;
+    private static final long MEASURE_MILLIS = 3000;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws Exception {
+        List<String> flags = new ArrayList<>();
+        Path directory = null;
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                flags.add(arg);
+            } else {
+                directory = Path.of(arg);
+            }
+        }
+        boolean synthetic = directory == null;
+        if (synthetic) {
+            directory = Files.createTempDirectory("jack-embedded");
+            BenchmarkSources.writeSynthetic(directory, SYNTHETIC_CLASS_COUNT);
+        }
+
+        try {
+            EmbeddedCompiler compiler = new EmbeddedCompiler(flags.toArray(new String[0]));
+            Map<String, String> sources = readSources(directory);
+            checkSameOutput(compiler, sources, directory, flags);
+
+            List<Map.Entry<String, String>> requests = new ArrayList<>(sources.entrySet());
+            for (int threads : THREAD_COUNTS) {
+                run(compiler, requests, threads, WARMUP_MILLIS);
+                long compiles = run(compiler, requests, threads, MEASURE_MILLIS);
+                System.out.printf("%d threads: %10.0f compiles/s %12.0f compiles/minute%n", threads,
+                        compiles * 1000.0 / MEASURE_MILLIS, compiles * 60_000.0 / MEASURE_MILLIS);
+            }
+        } finally {
+            if (synthetic) {
+                BenchmarkSources.deleteDirectory(directory);
+            }
+        }
+    }
+
+    //Reads every jack file in the directory by file name.
+    private static Map<String, String> readSources(Path directory) throws IOException {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (Path path : Files.list(directory).filter(p -> p.toString().endsWith(".jack")).sorted().toList()) {
+            sources.put(path.getFileName().toString(), Files.readString(path));
+        }
+        return sources;
+    }
+
+    //Compiles the folder with JackCompiler and the sources with the embedded compiler, and throws if any vm file
+    //differs.
+    private static void checkSameOutput(EmbeddedCompiler compiler, Map<String, String> sources, Path directory,
+                                        List<String> flags) throws IOException {
+        List<String> args = new ArrayList<>(flags);
+        args.add(directory.toString());
+        JackCompiler.createJackCompiler(CompilerOptions.parse(args.toArray(new String[0]))).createOutput();
+
+        EmbeddedCompiler.Result result = compiler.compile(sources);
+        if (!result.isSuccess()) {
+            throw new IllegalStateException("The corpus didn't compile: " + result.getDiagnostics());
+        }
+        for (String vmFileName : result.getVmFileNames()) {
+            byte[] expected = Files.readAllBytes(directory.resolve(vmFileName));
+            if (!Arrays.equals(expected, result.getVmBytes(vmFileName))) {
+                throw new IllegalStateException(vmFileName + " differs from the one JackCompiler wrote");
+            }
+        }
+        System.out.println("Checked " + result.getVmFileNames().size() + " vm files against JackCompiler");
+    }
+
+    //Compiles one class per request on the given number of threads for a while, and returns how many were compiled.
+    private static long run(EmbeddedCompiler compiler, List<Map.Entry<String, String>> requests, int threads,
+                            long millis) throws Exception {
+        AtomicLong compiles = new AtomicLong();
+        long end = System.nanoTime() + millis * 1_000_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int first = i;
+                workers.add(pool.submit(() -> {
+                    for (int request = first; System.nanoTime() < end; request += threads) {
+                        Map.Entry<String, String> source = requests.get(request % requests.size());
+                        EmbeddedCompiler.Result result = compiler.compile(source.getKey(), source.getValue());
+                        if (!result.isSuccess()) {
+                            throw new IllegalStateException(result.getDiagnostics().toString());
+                        }
+                        compiles.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return compiles.get();
+    }
+}
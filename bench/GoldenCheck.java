@@ -0,0 +1,360 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * This checks that the optimizations don't change what a program does. It compiles each golden program without them
+ * and with several settings, runs every build with the VmInterpreter and checks it prints the program's expected
+ * output. It also checks each optimization changed the code that ran, so one that stops matching doesn't pass
+ * unnoticed.
+ *
+ * The peephole programs are built with every rule, with each rule switched off and with each rule on its own. The
+ * conditions program uses ints that aren't true or false as if and while conditions, which jack allows, since a rule
+ * that assumes every condition is -1 or 0 changes which branch those take.
+ *
+ * The multiply program multiplies and divides a range of values by constants, including negative ones, ones over the
+ * multiply budget and Short.MIN_VALUE, where the results wrap around. Its expected output is worked out here with
+ * 16 bit arithmetic. The strings program evaluates the same literals in loops and in a function called more than
+ * once, for --share-strings.
+ */
+public class GoldenCheck {
+
+    private static final int[] VALUES = {0, 1, -1, 2, 7, -7, 181, -182, 1000, -1000, 32767, -32767, Short.MIN_VALUE};
+    private static final int[] FACTORS = {0, 1, -1, 2, 3, 5, 7, -7, 10, -10, 16, 64, 100, -100, 255, 1000, 4095,
+            12345, -12345, 16384, 32767, -32767, Short.MIN_VALUE};
+    private static final int[] DIVISORS = {1, -1, 2, 7, -7, 1000, 32767, Short.MIN_VALUE};
+
+    //Expressions in x that mix reduced and unreduced multiplications, with what they work out to. Jack has no
+    //precedence, so x * 4 + 1 * 1000 is ((x * 4) + 1) * 1000.
+    private static final Map<String, IntUnaryOperator> COMPOUNDS = new LinkedHashMap<>();
+
+    static {
+        COMPOUNDS.put("x * 4 + 1 * 1000", x -> ((x * 4) + 1) * 1000);
+        COMPOUNDS.put("(x * 3) * 7", x -> x * 3 * 7);
+        COMPOUNDS.put("(x * 5) / 1", x -> x * 5);
+        COMPOUNDS.put("(x / -1) * -1", x -> (short) -x * -1);
+        COMPOUNDS.put("(x * 0) + x", x -> x);
+        COMPOUNDS.put("(x * 12345) * 2", x -> x * 12345 * 2);
+    }
+
+    private static final String[][] STRENGTH_BUILDS = {
+            {CompilerOptions.STRENGTH_REDUCE_FLAG},
+            {CompilerOptions.STRENGTH_REDUCE_FLAG, CompilerOptions.MULTIPLY_BUDGET_FLAG, "0"},
+            {CompilerOptions.STRENGTH_REDUCE_FLAG, CompilerOptions.MULTIPLY_BUDGET_FLAG, "1000"},
+            {CompilerOptions.STRENGTH_REDUCE_FLAG, CompilerOptions.PEEPHOLE_FLAG},
+    };
+
+    private static final String[][] STRING_BUILDS = {
+            {CompilerOptions.SHARE_STRINGS_FLAG},
+            {CompilerOptions.SHARE_STRINGS_FLAG, CompilerOptions.STRENGTH_REDUCE_FLAG, CompilerOptions.PEEPHOLE_FLAG},
+    };
+
+    public static void main(String[] args) throws IOException {
+        checkPeepholeRules();
+        checkBuilds("multiply", multiplyProgram(), multiplyOutput(), STRENGTH_BUILDS);
+        checkBuilds("strings", STRINGS, STRINGS_OUTPUT, STRING_BUILDS);
+    }
+
+    //Builds the peephole programs with each set of rules and checks each rule removed instructions from at least one.
+    private static void checkPeepholeRules() throws IOException {
+        List<String[]> builds = new ArrayList<>();
+        builds.add(new String[] {CompilerOptions.PEEPHOLE_FLAG});
+        for (PeepholeRule rule : PeepholeRule.values()) {
+            builds.add(new String[] {CompilerOptions.PEEPHOLE_FLAG, CompilerOptions.DISABLE_RULE_FLAG,
+                    rule.getRuleName()});
+        }
+        for (PeepholeRule rule : PeepholeRule.values()) {
+            builds.add(onlyRule(rule));
+        }
+
+        long[] removedByRule = new long[PeepholeRule.values().length];
+        for (Map.Entry<String, String[]> program : PEEPHOLE_PROGRAMS.entrySet()) {
+            String name = program.getKey();
+            String source = program.getValue()[0];
+            String expected = program.getValue()[1];
+            Path directory = Files.createTempDirectory("jack-golden");
+            try {
+                Files.writeString(directory.resolve("Main.jack"), source);
+                int unoptimized = run(name, directory, expected).getInstructionCount();
+                for (String[] flags : builds) {
+                    run(name, directory, expected, flags);
+                }
+                for (PeepholeRule rule : PeepholeRule.values()) {
+                    removedByRule[rule.ordinal()] += unoptimized
+                            - run(name, directory, expected, onlyRule(rule)).getInstructionCount();
+                }
+            } finally {
+                BenchmarkSources.deleteDirectory(directory);
+            }
+            System.out.printf("%-12s same output from %d builds%n", name, builds.size() + 1);
+        }
+
+        for (PeepholeRule rule : PeepholeRule.values()) {
+            if (removedByRule[rule.ordinal()] <= 0) {
+                throw new IllegalStateException(rule.getRuleName() + " didn't remove anything from the programs");
+            }
+            System.out.printf("%-20s removed %d instructions%n", rule.getRuleName(), removedByRule[rule.ordinal()]);
+        }
+    }
+
+    //Builds the program without flags and with each set of flags, and checks each build prints the expected output
+    //and runs different code from the build without flags.
+    private static void checkBuilds(String name, String source, String expected, String[][] builds)
+            throws IOException {
+        Path directory = Files.createTempDirectory("jack-golden");
+        try {
+            Files.writeString(directory.resolve("Main.jack"), source);
+            long unoptimizedSteps = run(name, directory, expected).getSteps();
+            for (String[] flags : builds) {
+                if (run(name, directory, expected, flags).getSteps() == unoptimizedSteps) {
+                    throw new IllegalStateException(name + " built with " + String.join(" ", flags)
+                            + " ran the same number of vm instructions as without it");
+                }
+            }
+        } finally {
+            BenchmarkSources.deleteDirectory(directory);
+        }
+        System.out.printf("%-12s same output from %d builds%n", name, builds.length + 1);
+    }
+
+    //Returns the flags that switch on the peephole optimizer with only the given rule.
+    private static String[] onlyRule(PeepholeRule only) {
+        List<String> flags = new ArrayList<>();
+        flags.add(CompilerOptions.PEEPHOLE_FLAG);
+        for (PeepholeRule rule : PeepholeRule.values()) {
+            if (rule != only) {
+                flags.add(CompilerOptions.DISABLE_RULE_FLAG);
+                flags.add(rule.getRuleName());
+            }
+        }
+        return flags.toArray(new String[0]);
+    }
+
+    //Builds the program with the flags, runs it and checks its output. Returns the interpreter it ran in.
+    private static VmInterpreter run(String name, Path directory, String expected, String... flags)
+            throws IOException {
+        InliningBenchmark.compile(directory, flags);
+        VmInterpreter interpreter = VmInterpreter.load(directory);
+        interpreter.run();
+        if (!interpreter.getOutput().equals(expected)) {
+            throw new IllegalStateException(name + " built with " + String.join(" ", flags) + " printed "
+                    + interpreter.getOutput() + " instead of " + expected);
+        }
+        return interpreter;
+    }
+
+    //Returns a program that prints, for each value, the value multiplied by each factor, divided by each divisor and
+    //put through each compound expression, one value per line. Multiplying a call by 0 must still make the call, so
+    //it then prints how many calls were made.
+    private static String multiplyProgram() {
+        StringBuilder source = new StringBuilder();
+        source.append("class Main {\n    static int calls;\n\n    function void main() {\n");
+        source.append("        var Array values;\n        var int i, x;\n");
+        source.append("        let values = Array.new(").append(VALUES.length).append(");\n");
+        for (int i = 0; i < VALUES.length; i++) {
+            source.append("        let values[").append(i).append("] = ").append(literal(VALUES[i])).append(";\n");
+        }
+        source.append("        let i = 0;\n        while (i < ").append(VALUES.length).append(") {\n");
+        source.append("            let x = values[i];\n");
+        for (int factor : FACTORS) {
+            printTerm(source, "x * " + literal(factor));
+        }
+        for (int factor : FACTORS) {
+            printTerm(source, literal(factor) + " * x");
+        }
+        for (int divisor : DIVISORS) {
+            printTerm(source, "x / " + literal(divisor));
+        }
+        for (String compound : COMPOUNDS.keySet()) {
+            printTerm(source, compound);
+        }
+        source.append("            do Output.println();\n            let i = i + 1;\n        }\n");
+        printTerm(source, "Main.count() * 0");
+        printTerm(source, "0 * Main.count()");
+        source.append("        do Output.printInt(calls);\n        do Output.println();\n        return;\n    }\n\n");
+        source.append("    function int count() {\n        let calls = calls + 1;\n        return calls;\n    }\n}\n");
+        return source.toString();
+    }
+
+    //Returns what the multiply program prints, worked out with 16 bit arithmetic.
+    private static String multiplyOutput() {
+        StringBuilder output = new StringBuilder();
+        for (int value : VALUES) {
+            for (int factor : FACTORS) {
+                output.append((short) (value * factor)).append(' ');
+            }
+            for (int factor : FACTORS) {
+                output.append((short) (factor * value)).append(' ');
+            }
+            for (int divisor : DIVISORS) {
+                output.append((short) (value / divisor)).append(' ');
+            }
+            for (IntUnaryOperator compound : COMPOUNDS.values()) {
+                output.append((short) compound.applyAsInt(value)).append(' ');
+            }
+            output.append('\n');
+        }
+        return output.append("0 0 2\n").toString();
+    }
+
+    //Writes a statement that prints the expression and a space.
+    private static void printTerm(StringBuilder source, String expression) {
+        source.append("            do Output.printInt(").append(expression).append(");\n");
+        source.append("            do Output.printChar(32);\n");
+    }
+
+    //Returns the jack for a constant. The vm can only push 0 to 32767, so jack can't write -32768 on its own.
+    private static String literal(int value) {
+        if (value == Short.MIN_VALUE) {
+            return "(-32767 - 1)";
+        }
+        return value < 0 ? "(-" + -value + ")" : "" + value;
+    }
+
+    private static final String CONDITIONS = """
+            class Main {
+                function void main() {
+                    var int x, y, n;
+                    var boolean flag;
+                    let x = 5;
+                    let y = 6;
+
+                    if (x) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~x) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (x & 2) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~(x & y)) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~(x | 0)) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~Main.identity(x)) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~(x + 1)) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~(-x)) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    do Output.println();
+
+                    if (~(x < y)) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~(x = 5)) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~((x > y) | (y = 6))) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~((x < y) & ~(y > x))) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~(~(x = y))) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~true) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    if (~false) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    let flag = x > y;
+                    if (~flag) { do Output.printChar(65); } else { do Output.printChar(66); }
+                    do Output.println();
+
+                    let n = 3;
+                    while (n) {
+                        do Output.printInt(n);
+                        let n = n - 1;
+                    }
+                    while (~(n = -2)) {
+                        do Output.printInt(n);
+                        let n = n - 1;
+                    }
+                    do Output.println();
+                    return;
+                }
+
+                function int identity(int value) {
+                    return value;
+                }
+            }
+            """;
+
+    private static final String FLOW = """
+            class Main {
+                function void main() {
+                    var int i, total;
+                    let i = 0;
+                    let total = 0;
+                    while (true) {
+                        if (i > 9) {
+                            do Output.printInt(total);
+                            do Output.println();
+                            do Output.printInt(Main.sign(-(-i)));
+                            do Output.printInt(Main.sign(~(~(i - 20))));
+                            do Output.printInt(Main.sign(0));
+                            do Output.println();
+                            do Output.printInt(Main.sum(3, 4));
+                            do Output.printInt(Main.firstOver(7));
+                            do Output.println();
+                            return;
+                        }
+                        if (i = 4) {
+                            let total = total + 100;
+                        }
+                        let total = total + i;
+                        let i = i + 1;
+                    }
+                    return;
+                }
+
+                function int sign(int value) {
+                    if (value < 0) {
+                        return -1;
+                    } else {
+                        if (value > 0) {
+                            return 1;
+                        } else {
+                            return 0;
+                        }
+                    }
+                }
+
+                function int sum(int a, int b) {
+                    var int result;
+                    let result = a + b;
+                    return result;
+                }
+
+                function int firstOver(int limit) {
+                    var int i;
+                    let i = 0;
+                    while (true) {
+                        let i = i + 3;
+                        if (i > limit) {
+                            return i;
+                        }
+                    }
+                    return -1;
+                }
+            }
+            """;
+
+    private static final String STRINGS = """
+            class Main {
+                function void main() {
+                    var int i;
+                    var String text;
+                    let i = 0;
+                    while (i < 3) {
+                        do Output.printString("loop ");
+                        let text = "abc";
+                        do Output.printInt(text.length());
+                        do Output.printChar(text.charAt(i));
+                        do Output.printString(Main.greeting());
+                        do Output.println();
+                        let i = i + 1;
+                    }
+                    do Output.printString("loop ");
+                    do Output.printString(Main.greeting());
+                    do Output.println();
+                    return;
+                }
+
+                function String greeting() {
+                    return "hi";
+                }
+            }
+            """;
+
+    private static final String STRINGS_OUTPUT = "loop 3ahi\nloop 3bhi\nloop 3chi\nloop hi\n";
+
+    //Each peephole program's source and the output it should print.
+    private static final Map<String, String[]> PEEPHOLE_PROGRAMS = Map.of(
+            "conditions", new String[] {CONDITIONS, "BBBBBBBB\nBBBABBAA\n3210-1\n"},
+            "flow", new String[] {FLOW, "145\n1-10\n79\n"});
+}
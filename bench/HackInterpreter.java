@@ -0,0 +1,256 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This runs a Hack assembly program the way the CPU emulator does, so benchmarks can count the Hack instructions a
+ * program built with --asm runs. It assembles the program into Hack machine code and runs that, so anything the
+ * assembler wouldn't take fails here too.
+ *
+ * The OS is the same built in one the VmInterpreter uses. A call to an OS function the program doesn't have goes to a
+ * trap address at the top of the ROM, where the function runs on the arguments HackTranslator's call code left, and
+ * returns through its return code with the result in D. The program stops when it reaches the bootstrap's halt loop.
+ */
+class HackInterpreter {
+
+    private static final int RAM_SIZE = 32768;
+    private static final int FIRST_VARIABLE = 16;
+    private static final long MAX_STEPS = 4_000_000_000L;
+
+    //The ALU bits of each computation, with the bit that reads M instead of A.
+    private static final Map<String, Integer> COMPUTATIONS = new HashMap<>();
+
+    static {
+        String[][] computations = {
+                {"0", "101010"}, {"1", "111111"}, {"-1", "111010"}, {"D", "001100"}, {"A", "110000"},
+                {"!D", "001101"}, {"!A", "110001"}, {"-D", "001111"}, {"-A", "110011"}, {"D+1", "011111"},
+                {"A+1", "110111"}, {"D-1", "001110"}, {"A-1", "110010"}, {"D+A", "000010"}, {"D-A", "010011"},
+                {"A-D", "000111"}, {"D&A", "000000"}, {"D|A", "010101"},
+        };
+        for (String[] computation : computations) {
+            int bits = Integer.parseInt(computation[1], 2);
+            COMPUTATIONS.put(computation[0], bits);
+            if (computation[0].contains("A")) {
+                COMPUTATIONS.put(computation[0].replace('A', 'M'), bits | 0b1000000);
+            }
+        }
+    }
+
+    private final short[] rom;
+    private final String[] trapFunctions;
+    private final int trapBase;
+    private final int haltAddress;
+    private final int returnAddress;
+    private final int instructionCount;
+
+    private short[] ram;
+    private BuiltInOs os;
+    private long steps = 0;
+
+    private HackInterpreter(short[] rom, int instructionCount, String[] trapFunctions, int trapBase,
+                            int haltAddress, int returnAddress) {
+        this.rom = rom;
+        this.instructionCount = instructionCount;
+        this.trapFunctions = trapFunctions;
+        this.trapBase = trapBase;
+        this.haltAddress = haltAddress;
+        this.returnAddress = returnAddress;
+    }
+
+    //Assembles the program. Symbols that aren't labels are OS functions if the built in OS has them, and variables
+    //otherwise.
+    static HackInterpreter assemble(String asm) {
+        List<String> instructions = new ArrayList<>();
+        Map<String, Integer> symbols = new HashMap<>();
+        for (int i = 0; i <= 15; i++) {
+            symbols.put("R" + i, i);
+        }
+        symbols.put("SP", 0);
+        symbols.put("LCL", 1);
+        symbols.put("ARG", 2);
+        symbols.put("THIS", 3);
+        symbols.put("THAT", 4);
+        symbols.put("SCREEN", 16384);
+        symbols.put("KBD", 24576);
+        for (String line : asm.split("\n")) {
+            int comment = line.indexOf("//");
+            line = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("(")) {
+                symbols.put(line.substring(1, line.length() - 1), instructions.size());
+            } else {
+                instructions.add(line);
+            }
+        }
+
+        List<String> trapFunctions = new ArrayList<>();
+        int nextVariable = FIRST_VARIABLE;
+        short[] rom = new short[RAM_SIZE];
+        for (int i = 0; i < instructions.size(); i++) {
+            String instruction = instructions.get(i);
+            if (instruction.startsWith("@")) {
+                String symbol = instruction.substring(1);
+                if (Character.isDigit(symbol.charAt(0))) {
+                    rom[i] = (short) Integer.parseInt(symbol);
+                    continue;
+                }
+                if (!symbols.containsKey(symbol)) {
+                    if (BuiltInOs.has(symbol)) {
+                        trapFunctions.add(symbol);
+                        symbols.put(symbol, RAM_SIZE - trapFunctions.size());
+                    } else {
+                        symbols.put(symbol, nextVariable++);
+                    }
+                }
+                rom[i] = (short) (int) symbols.get(symbol);
+            } else {
+                rom[i] = (short) encode(instruction);
+            }
+        }
+
+        int trapBase = RAM_SIZE - trapFunctions.size();
+        if (instructions.size() > trapBase) {
+            throw new IllegalArgumentException("The program doesn't fit in the ROM: " + instructions.size()
+                    + " instructions");
+        }
+        String[] traps = new String[trapFunctions.size()];
+        for (int i = 0; i < traps.length; i++) {
+            traps[RAM_SIZE - 1 - i - trapBase] = trapFunctions.get(i);
+        }
+        return new HackInterpreter(rom, instructions.size(), traps, trapBase, symbols.get("$HALT"),
+                symbols.get("$RETURN_D"));
+    }
+
+    //Encodes a computation instruction, dest=comp;jump.
+    private static int encode(String instruction) {
+        int equals = instruction.indexOf('=');
+        int semicolon = instruction.indexOf(';');
+        String dest = equals >= 0 ? instruction.substring(0, equals) : "";
+        String comp = instruction.substring(equals + 1, semicolon >= 0 ? semicolon : instruction.length());
+        String jump = semicolon >= 0 ? instruction.substring(semicolon + 1) : "";
+        Integer computation = COMPUTATIONS.get(comp);
+        if (computation == null) {
+            throw new IllegalArgumentException("Unknown computation: " + instruction);
+        }
+        int destBits = (dest.contains("A") ? 4 : 0) | (dest.contains("D") ? 2 : 0) | (dest.contains("M") ? 1 : 0);
+        int jumpBits;
+        switch (jump) {
+            case "":
+                jumpBits = 0;
+                break;
+            case "JGT":
+                jumpBits = 1;
+                break;
+            case "JEQ":
+                jumpBits = 2;
+                break;
+            case "JGE":
+                jumpBits = 3;
+                break;
+            case "JLT":
+                jumpBits = 4;
+                break;
+            case "JNE":
+                jumpBits = 5;
+                break;
+            case "JLE":
+                jumpBits = 6;
+                break;
+            case "JMP":
+                jumpBits = 7;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown jump: " + instruction);
+        }
+        return 0b1110000000000000 | computation << 6 | destBits << 3 | jumpBits;
+    }
+
+    //Runs the program from the start until it reaches the halt loop.
+    void run() {
+        ram = new short[RAM_SIZE];
+        os = new BuiltInOs(ram);
+        steps = 0;
+        int a = 0;
+        int d = 0;
+        int pc = 0;
+        while (pc != haltAddress) {
+            if (pc >= trapBase) {
+                d = callOs(trapFunctions[pc - trapBase]);
+                pc = returnAddress;
+                continue;
+            }
+            if (++steps > MAX_STEPS) {
+                throw new IllegalStateException("The program ran for more than " + MAX_STEPS + " instructions");
+            }
+            int instruction = rom[pc] & 0xffff;
+            if ((instruction & 0x8000) == 0) {
+                a = instruction;
+                pc++;
+                continue;
+            }
+
+            //The ALU, from its six control bits.
+            int x = d;
+            int y = (instruction & 0x1000) != 0 ? ram[a] : (short) a;
+            if ((instruction & 0x800) != 0) {
+                x = 0;
+            }
+            if ((instruction & 0x400) != 0) {
+                x = ~x;
+            }
+            if ((instruction & 0x200) != 0) {
+                y = 0;
+            }
+            if ((instruction & 0x100) != 0) {
+                y = ~y;
+            }
+            int out = (instruction & 0x80) != 0 ? x + y : x & y;
+            if ((instruction & 0x40) != 0) {
+                out = ~out;
+            }
+            out = (short) out;
+
+            int address = a;
+            if ((instruction & 0x20) != 0) {
+                a = out & 0xffff;
+            }
+            if ((instruction & 0x10) != 0) {
+                d = out;
+            }
+            if ((instruction & 0x8) != 0) {
+                ram[address] = (short) out;
+            }
+            boolean jump = ((instruction & 0x4) != 0 && out < 0) || ((instruction & 0x2) != 0 && out == 0)
+                    || ((instruction & 0x1) != 0 && out > 0);
+            pc = jump ? address : pc + 1;
+        }
+    }
+
+    //Runs an OS function on the arguments the call code left between ARG and the saved frame, and returns its result.
+    private int callOs(String function) {
+        int argumentBase = ram[2];
+        int[] arguments = new int[ram[1] - argumentBase - 5];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = ram[argumentBase + i];
+        }
+        return (short) os.call(function, arguments);
+    }
+
+    //Getters
+    String getOutput() {
+        return os.getOutput();
+    }
+
+    //Returns the number of Hack instructions run, leaving out the OS.
+    long getSteps() {
+        return steps;
+    }
+
+    //Returns the number of instructions in the ROM.
+    int getInstructionCount() {
+        return instructionCount;
+    }
+}
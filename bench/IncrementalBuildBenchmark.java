@@ -0,0 +1,64 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * This benchmarks incremental compilation. It writes a tree of synthetic jack classes, compiles it once, and then
+ * times rebuilds where nothing changed, which should only hash the sources and check the vm files.
+ */
+public class IncrementalBuildBenchmark {
+
+    private static final int DEFAULT_CLASS_COUNT = 500;
+    private static final int REBUILDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        int classCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLASS_COUNT;
+        Path directory = Files.createTempDirectory("jack-incremental");
+        BenchmarkSources.writeSynthetic(directory, classCount);
+
+        long start = System.nanoTime();
+        compile(directory, "--incremental");
+        System.out.printf("Full build of %d classes: %.1f ms%n", classCount, millisSince(start));
+
+        double fastest = Double.MAX_VALUE;
+        double total = 0;
+        for (int i = 0; i < REBUILDS; i++) {
+            start = System.nanoTime();
+            compile(directory, "--incremental");
+            double elapsed = millisSince(start);
+            fastest = Math.min(fastest, elapsed);
+            total += elapsed;
+        }
+        System.out.printf("No-op rebuild of %d classes: %.1f ms average, %.1f ms fastest over %d runs%n",
+                classCount, total / REBUILDS, fastest, REBUILDS);
+
+        start = System.nanoTime();
+        compile(directory);
+        System.out.printf("Non-incremental rebuild of %d classes: %.1f ms%n", classCount, millisSince(start));
+
+        deleteTree(directory.toFile());
+    }
+
+    //Compiles the directory in this JVM with the given flags.
+    private static void compile(Path directory, String... flags) {
+        String[] args = new String[flags.length + 1];
+        System.arraycopy(flags, 0, args, 0, flags.length);
+        args[flags.length] = directory.toString();
+        JackCompiler.createJackCompiler(CompilerOptions.parse(args)).createOutput();
+    }
+
+    private static double millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * This measures how much faster inlining makes compiled code run. It compiles a small particle simulation, whose
+ * classes use getters and setters the way jack programs usually do, with several inlining settings, then runs each
+ * build with the VmInterpreter. It checks that every build prints the same output, and prints the vm instructions and
+ * the estimated Hack instructions each one ran, with the reduction over the build without inlining.
+ *
+ * Inlining on its own only works within each class, so the Particle methods that call its own getters gain. With
+ * --whole-program the calls from Main to Particle are inlined as well. Pass the number of simulation steps to run.
+ */
+public class InliningBenchmark {
+
+    private static final int DEFAULT_STEPS = 200;
+
+    private static final String[][] SETTINGS = {
+            {},
+            {"--inline"},
+            {"--inline", "--whole-program", "--inline-budget", "4"},
+            {"--inline", "--whole-program"},
+            {"--inline", "--whole-program", "--inline-budget", "24"},
+            {"--inline", "--whole-program", "--peephole"},
+    };
+
+    public static void main(String[] args) throws IOException {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STEPS;
+        Map<String, String> sources = getSources(steps);
+
+        String expectedOutput = null;
+        long baseHackInstructions = 0;
+        for (String[] flags : SETTINGS) {
+            Path directory = Files.createTempDirectory("jack-inlining");
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                Files.writeString(directory.resolve(source.getKey()), source.getValue());
+            }
+            compile(directory, flags);
+            VmInterpreter interpreter = VmInterpreter.load(directory);
+            interpreter.run();
+            BenchmarkSources.deleteDirectory(directory);
+
+            if (expectedOutput == null) {
+                expectedOutput = interpreter.getOutput();
+                baseHackInstructions = interpreter.getHackInstructions();
+            }
+            else if (!expectedOutput.equals(interpreter.getOutput())) {
+                throw new IllegalStateException("Output changed with " + String.join(" ", flags) + ": "
+                        + interpreter.getOutput() + " instead of " + expectedOutput);
+            }
+            System.out.printf("%-52s %6d vm instructions %10d vm steps %12d Hack instructions %6.1f%% fewer%n",
+                    flags.length == 0 ? "(no inlining)" : String.join(" ", flags), interpreter.getInstructionCount(),
+                    interpreter.getSteps(), interpreter.getHackInstructions(),
+                    100.0 * (baseHackInstructions - interpreter.getHackInstructions()) / baseHackInstructions);
+        }
+        System.out.println("Output: " + expectedOutput.trim());
+    }
+
+    //Returns the sources of the simulation by file name, running it for the given number of steps.
+    static Map<String, String> getSources(int steps) {
+        return Map.of("Particle.jack", PARTICLE, "Main.jack", MAIN.replace("STEPS", "" + steps));
+    }
+
+    //Compiles the directory in this JVM with the given flags.
+    static void compile(Path directory, String... flags) {
+        String[] args = new String[flags.length + 1];
+        System.arraycopy(flags, 0, args, 0, flags.length);
+        args[flags.length] = directory.toString();
+        JackCompiler.createJackCompiler(CompilerOptions.parse(args)).createOutput();
+    }
+
+    private static final String PARTICLE = """
+            class Particle {
+                field int x, y, dx, dy;
+
+                constructor Particle new(int startX, int startY, int speedX, int speedY) {
+                    let x = startX;
+                    let y = startY;
+                    let dx = speedX;
+                    let dy = speedY;
+                    return this;
+                }
+
+                method int getX() { return x; }
+                method int getY() { return y; }
+                method int getDx() { return dx; }
+                method int getDy() { return dy; }
+                method void setX(int value) { let x = value; return; }
+                method void setY(int value) { let y = value; return; }
+                method void setDx(int value) { let dx = value; return; }
+                method void setDy(int value) { let dy = value; return; }
+
+                function int clamp(int value, int low, int high) {
+                    if (value < low) { return low; }
+                    if (value > high) { return high; }
+                    return value;
+                }
+
+                method void bounce(int width, int height) {
+                    if ((getX() < 0) | (getX() > width)) {
+                        do setDx(-getDx());
+                        do setX(Particle.clamp(getX(), 0, width));
+                    }
+                    if ((getY() < 0) | (getY() > height)) {
+                        do setDy(-getDy());
+                        do setY(Particle.clamp(getY(), 0, height));
+                    }
+                    return;
+                }
+            }
+            """;
+
+    private static final String MAIN = """
+            class Main {
+                function void main() {
+                    var Array particles;
+                    var Particle particle;
+                    var int count, i, step, sum;
+                    let count = 16;
+                    let particles = Array.new(count);
+                    let i = 0;
+                    while (i < count) {
+                        let particles[i] = Particle.new(i * 31, i * 15, 7 - i, i - 5);
+                        let i = i + 1;
+                    }
+
+                    let step = 0;
+                    while (step < STEPS) {
+                        let i = 0;
+                        while (i < count) {
+                            let particle = particles[i];
+                            do particle.setX(particle.getX() + particle.getDx());
+                            do particle.setY(particle.getY() + particle.getDy());
+                            do particle.bounce(511, 255);
+                            let i = i + 1;
+                        }
+                        let step = step + 1;
+                    }
+
+                    let sum = 0;
+                    let i = 0;
+                    while (i < count) {
+                        let particle = particles[i];
+                        let sum = sum + particle.getX() - particle.getY();
+                        let i = i + 1;
+                    }
+                    do Output.printInt(sum);
+                    do Output.println();
+                    return;
+                }
+            }
+            """;
+}
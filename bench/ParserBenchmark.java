@@ -0,0 +1,59 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This benchmarks the parser and code generator on their own. Every source is tokenized once up front, then the
+ * Compiler is timed compiling the in-memory tokens of the whole corpus and writing the vm code as text. Pass a
+ * directory of jack files to use it as the corpus, otherwise synthetic classes are used. Pass --peephole to time the
+ * peephole optimizer as well.
+ */
+public class ParserBenchmark {
+
+    private static final int SYNTHETIC_CLASS_COUNT = 500;
+    private static final int WARMUP_ITERATIONS = 10;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws IOException {
+        CompilerOptions options = CompilerOptions.parse(args);
+        List<String> sources = options.getInputPath() != null ? BenchmarkSources.read(Path.of(options.getInputPath()))
+                : BenchmarkSources.synthetic(SYNTHETIC_CLASS_COUNT);
+        PeepholeOptimizer optimizer = options.isPeephole() ? new PeepholeOptimizer(options.getPeepholeRules()) : null;
+
+        List<List<Token>> tokenizedSources = new ArrayList<>();
+        long tokenCount = 0;
+        for (String source : sources) {
+            List<Token> tokens = new ArrayList<>();
+            new Tokenizer(source).forEachRemaining(tokens::add);
+            tokenizedSources.add(tokens);
+            tokenCount += tokens.size();
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            compileAll(tokenizedSources, optimizer);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            compileAll(tokenizedSources, optimizer);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / ITERATIONS;
+        System.out.printf("Parsed %d classes (%d tokens) in %.2f ms: %.0f tokens/s, %.0f classes/s%n",
+                sources.size(), tokenCount, seconds * 1000, tokenCount / seconds, sources.size() / seconds);
+    }
+
+    private static void compileAll(List<List<Token>> tokenizedSources, PeepholeOptimizer optimizer) {
+        VmCode code = new VmCode();
+        VmEmitter vm = new VmEmitter();
+        for (List<Token> tokens : tokenizedSources) {
+            code.reset();
+            new Compiler(code, tokens.iterator()).compileClass();
+            if (optimizer != null) {
+                optimizer.optimize(code);
+            }
+            vm.reset();
+            code.writeTo(vm);
+        }
+    }
+}
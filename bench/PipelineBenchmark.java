@@ -0,0 +1,55 @@
+import java.util.List;
+
+/**
+ * This compares compiling very large classes with the tokenizer on the same thread as the compiler and with it on its
+ * own thread in a TokenPipeline, with a few queue sizes. The sources are generated in memory, so only lexing and code
+ * generation are timed. The bytes per class only count the compiling thread, so in the pipeline they leave out the
+ * tokens, which the lexing thread allocates. Pass the number of statements per subroutine to change the class size.
+ */
+public class PipelineBenchmark {
+
+    private static final BenchmarkHarness harness = new BenchmarkHarness(2000, 3000);
+    private static final int CLASS_COUNT = 4;
+    private static final int DEFAULT_STATEMENTS = 2000;
+    private static final int[] QUEUE_BATCHES = {1, 8, 64};
+
+    private static final VmCode code = new VmCode();
+    private static final VmEmitter vm = new VmEmitter();
+
+    public static void main(String[] args) throws Exception {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STATEMENTS;
+        List<String> sources = new CorpusGenerator().classes(CLASS_COUNT).subroutinesPerClass(20)
+                .statementsPerSubroutine(statements).generate();
+        long tokenCount = 0;
+        for (String source : sources) {
+            Tokenizer tokenizer = new Tokenizer(source);
+            while (tokenizer.hasNext()) {
+                tokenizer.next();
+                tokenCount++;
+            }
+        }
+        System.out.printf("%d classes of %d tokens each%n", CLASS_COUNT, tokenCount / CLASS_COUNT);
+
+        harness.run("one thread", tokenCount, CLASS_COUNT, () -> compileAll(sources, 0));
+        for (int queueBatches : QUEUE_BATCHES) {
+            harness.run("pipeline, queue " + queueBatches, tokenCount, CLASS_COUNT,
+                    () -> compileAll(sources, queueBatches));
+        }
+    }
+
+    //Compiles every source, in a pipeline with the given queue size, or on this thread alone if it's 0.
+    private static void compileAll(List<String> sources, int queueBatches) {
+        for (String source : sources) {
+            code.reset();
+            if (queueBatches == 0) {
+                new Compiler(code, new Tokenizer(source)).compileClass();
+            } else {
+                try (TokenPipeline pipeline = new TokenPipeline(new Tokenizer(source), queueBatches)) {
+                    new Compiler(code, pipeline).compileClass();
+                }
+            }
+            vm.reset();
+            code.writeTo(vm);
+        }
+    }
+}
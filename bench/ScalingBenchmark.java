@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This shows how compile time and allocation scale with the size of the source. Starting from the CorpusGenerator's
+ * default settings, it changes one setting at a time and times lexing, parsing and code generation of the whole
+ * corpus in memory. If the compiler scales linearly, tokens/s stays about the same down each table.
+ */
+public class ScalingBenchmark {
+
+    private static final BenchmarkHarness harness = new BenchmarkHarness(500, 1500);
+    private static final long SEED = 1;
+
+    private static final VmCode code = new VmCode();
+    private static final VmEmitter vm = new VmEmitter();
+
+    public static void main(String[] args) throws Exception {
+        //Warm up on the default corpus first, so the first table isn't timing the JIT.
+        List<String> warmup = new CorpusGenerator().seed(SEED).classes(50).generate();
+        for (int i = 0; i < 50; i++) {
+            compileAll(warmup);
+        }
+
+        run("--classes", 25, 50, 100, 200, 400);
+        run("--subroutines", 1, 10, 100);
+        run("--statements", 10, 100, 1000);
+        run("--depth", 2, 8, 32, 128, 512);
+        run("--locals", 8, 100, 1000, 5000);
+        run("--string", 10, 100, 1000, 10000);
+    }
+
+    //Times the default corpus with the flag set to each value.
+    private static void run(String flag, int... values) throws Exception {
+        System.out.println(flag);
+        for (int value : values) {
+            CorpusGenerator generator = new CorpusGenerator().seed(SEED).classes(50).set(flag, value);
+            List<String> sources = generator.generate();
+            long tokenCount = 0;
+            for (String source : sources) {
+                tokenCount += tokenize(source).size();
+            }
+            harness.run("  " + flag.substring(2) + "=" + value, tokenCount, sources.size(), () -> compileAll(sources));
+        }
+    }
+
+    private static void compileAll(List<String> sources) {
+        for (String source : sources) {
+            code.reset();
+            new Compiler(code, new Tokenizer(source)).compileClass();
+            vm.reset();
+            code.writeTo(vm);
+        }
+    }
+
+    private static List<Token> tokenize(String source) {
+        List<Token> tokens = new ArrayList<>();
+        new Tokenizer(source).forEachRemaining(tokens::add);
+        return tokens;
+    }
+}
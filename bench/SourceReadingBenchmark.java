@@ -0,0 +1,115 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * This benchmarks reading and tokenizing jack files. It compares reading each file line by line with a Scanner, as the
+ * compiler first did, with reading the whole file into a String, and with the pooled and memory-mapped buffers of
+ * SourceReader. Pass a directory of jack files to use it, otherwise synthetic classes are written to a temp directory.
+ * Each reader is timed in its own JVM, so the tokenizer is only ever compiled for one kind of source.
+ */
+public class SourceReadingBenchmark {
+
+    private static final int SYNTHETIC_CLASS_COUNT = 2000;
+    private static final int WARMUP_ITERATIONS = 10;
+    private static final int ITERATIONS = 20;
+    private static final String READER_FLAG = "--reader";
+    private static final String[] READERS = {"scanner", "string", "source-reader"};
+
+    private static final SourceReader sourceReader = new SourceReader();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length >= 3 && args[0].equals(READER_FLAG)) {
+            time(args[1], Path.of(args[2]));
+            return;
+        }
+
+        Path directory;
+        Path syntheticDirectory = null;
+        if (args.length > 0) {
+            directory = Path.of(args[0]);
+        } else {
+            syntheticDirectory = Files.createTempDirectory("jack-reading");
+            BenchmarkSources.writeSynthetic(syntheticDirectory, SYNTHETIC_CLASS_COUNT);
+            directory = syntheticDirectory;
+        }
+
+        for (String reader : READERS) {
+            List<String> command = new ArrayList<>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(SourceReadingBenchmark.class.getName());
+            command.add(READER_FLAG);
+            command.add(reader);
+            command.add(directory.toString());
+            new ProcessBuilder(command).inheritIO().start().waitFor();
+        }
+
+        if (syntheticDirectory != null) {
+            BenchmarkSources.deleteDirectory(syntheticDirectory);
+        }
+    }
+
+    //Reads and tokenizes every file in the directory with the reader, and prints the average time it took.
+    private static void time(String reader, Path directory) throws IOException {
+        File[] files = directory.toFile().listFiles((file) -> file.getName().endsWith(JackCompiler.IN_EXTENSION));
+        long byteCount = 0;
+        for (File file : files) {
+            byteCount += file.length();
+        }
+
+        long tokenCount = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            tokenCount = tokenizeAll(reader, files);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            tokenizeAll(reader, files);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / ITERATIONS;
+        System.out.printf("%-14s %d files (%d tokens) in %.2f ms: %.1f MB/s%n", reader, files.length, tokenCount,
+                seconds * 1000, byteCount / seconds / 1e6);
+    }
+
+    private static long tokenizeAll(String reader, File[] files) throws IOException {
+        long tokenCount = 0;
+        for (File file : files) {
+            Tokenizer tokenizer = new Tokenizer(load(reader, file));
+            while (tokenizer.hasNext()) {
+                tokenizer.next();
+                tokenCount++;
+            }
+        }
+        return tokenCount;
+    }
+
+    private static CharSequence load(String reader, File file) throws IOException {
+        switch (reader) {
+            case "scanner":
+                return readWithScanner(file);
+            case "string":
+                return new String(Files.readAllBytes(file.toPath()));
+            case "source-reader":
+                sourceReader.read(file.toPath());
+                return sourceReader.getSource();
+            default:
+                throw new IllegalArgumentException("Unknown reader: " + reader);
+        }
+    }
+
+    //The compiler's first reader, which read each line with a Scanner.
+    private static CharSequence readWithScanner(File file) throws IOException {
+        StringBuilder source = new StringBuilder();
+        try (Scanner reader = new Scanner(file)) {
+            while (reader.hasNext()) {
+                source.append(reader.nextLine()).append('\n');
+            }
+        }
+        return source;
+    }
+}
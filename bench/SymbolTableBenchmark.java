@@ -0,0 +1,92 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This benchmarks the symbol table with subroutines that have hundreds of locals. The first table times the symbol
+ * table on its own: each run declares the locals of ten subroutines and looks each one up four times, falling back to
+ * the class scope like the compiler does, and the tokens/s column counts those lookups. The second table times
+ * parsing and code generation of generated classes with that many locals per function, on tokens read ahead of time.
+ */
+public class SymbolTableBenchmark {
+
+    private static final BenchmarkHarness harness = new BenchmarkHarness(2000, 3000);
+    private static final int[] LOCAL_COUNTS = {10, 100, 300, 1000};
+    private static final int SUBROUTINES = 10;
+    private static final int LOOKUPS_PER_LOCAL = 4;
+    private static final int FIELDS = 20;
+
+    private static final VmCode code = new VmCode();
+    private static final VmEmitter vm = new VmEmitter();
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("symbol table");
+        for (int localCount : LOCAL_COUNTS) {
+            List<String> locals = names("v", localCount);
+            List<String> fields = names("f", FIELDS);
+            long lookups = (long) SUBROUTINES * localCount * LOOKUPS_PER_LOCAL;
+            harness.run("  locals=" + localCount, lookups, 1, () -> declareAndLookUp(locals, fields));
+        }
+
+        System.out.println("parse and code generation");
+        for (int localCount : LOCAL_COUNTS) {
+            List<String> sources = new CorpusGenerator().classes(50).identifierCount(localCount).generate();
+            List<List<Token>> tokenizedSources = new ArrayList<>();
+            long tokenCount = 0;
+            for (String source : sources) {
+                List<Token> tokens = new ArrayList<>();
+                new Tokenizer(source).forEachRemaining(tokens::add);
+                tokenizedSources.add(tokens);
+                tokenCount += tokens.size();
+            }
+            harness.run("  locals=" + localCount, tokenCount, sources.size(), () -> compileAll(tokenizedSources));
+        }
+    }
+
+    //Declares the fields once and the locals of each subroutine, then looks up every local.
+    private static void declareAndLookUp(List<String> locals, List<String> fields) {
+        code.reset();
+        SymbolTable classTable = new SymbolTable();
+        for (String field : fields) {
+            classTable.addLine(field, "int", "field");
+        }
+        for (int subroutine = 0; subroutine < SUBROUTINES; subroutine++) {
+            SymbolTable table = new SymbolTable();
+            for (String local : locals) {
+                table.addLine(local, "int", "var");
+            }
+            for (int i = 0; i < LOOKUPS_PER_LOCAL; i++) {
+                for (String local : locals) {
+                    SymbolLine line = table.getLine(local);
+                    if (line == null) {
+                        line = classTable.getLine(local);
+                    }
+                    code.writePush(line.getSegment(), line.getIndex());
+                }
+            }
+        }
+    }
+
+    private static void compileAll(List<List<Token>> tokenizedSources) {
+        for (List<Token> tokens : tokenizedSources) {
+            code.reset();
+            new Compiler(code, tokens.iterator()).compileClass();
+            vm.reset();
+            code.writeTo(vm);
+        }
+    }
+
+    //Returns the given number of names made of letters, like the ones the tokenizer gives the compiler.
+    private static List<String> names(String prefix, int count) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder(prefix);
+            int number = i;
+            do {
+                name.append((char) ('a' + number % 26));
+                number /= 26;
+            } while (number > 0);
+            names.add(name.toString());
+        }
+        return names;
+    }
+}
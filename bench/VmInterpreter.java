@@ -0,0 +1,273 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This runs the vm files of a program the way the vm emulator does, so benchmarks can measure how fast the compiled
+ * code runs. It counts the vm instructions run, and the Hack instructions a translator would run for them using the
+ * estimates in VmCost, which is closer to the time on the Hack computer since a call costs as much as dozens of pushes.
+ *
+ * Only the parts of the OS the benchmark programs use are built in, from BuiltInOs. A call to the OS counts as one
+ * call and return, so the counts show the cost of the program's own code.
+ */
+class VmInterpreter {
+
+    private static final int RAM_SIZE = 32768;
+    private static final int FIRST_STATIC = 16;
+    private static final long MAX_STEPS = 1_000_000_000L;
+
+    private final List<VmInstruction> instructions = new ArrayList<>();
+    private final List<String> classNames = new ArrayList<>();
+    private final Map<String, Integer> functions = new HashMap<>();
+    private final Map<String, Integer> staticBases = new HashMap<>();
+
+    //Filled in when the program is loaded: the address each label jumps to, and the function each call goes to or
+    //-1 for the OS.
+    private int[] targets;
+    private short[] ram;
+    private BuiltInOs os;
+    private long steps = 0;
+    private long hackInstructions = 0;
+
+    //Loads every vm file in the directory.
+    static VmInterpreter load(Path directory) throws IOException {
+        File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(".vm"));
+        if (files == null) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        Arrays.sort(files);
+        VmInterpreter interpreter = new VmInterpreter();
+        int nextStatic = FIRST_STATIC;
+        for (File file : files) {
+            String className = file.getName().substring(0, file.getName().length() - ".vm".length());
+            interpreter.staticBases.put(className, nextStatic);
+            for (String line : Files.readAllLines(file.toPath())) {
+                VmInstruction instruction = VmParser.parseLine(line);
+                if (instruction == null) {
+                    continue;
+                }
+                if (instruction.getCommand() == VmCommand.FUNCTION) {
+                    interpreter.functions.put(instruction.getName(), interpreter.instructions.size());
+                }
+                if (instruction.getSegment() == Segment.STATIC) {
+                    nextStatic = Math.max(nextStatic, interpreter.staticBases.get(className) + instruction.getNumber() + 1);
+                }
+                interpreter.instructions.add(instruction);
+                interpreter.classNames.add(className);
+            }
+        }
+        interpreter.resolveTargets();
+        return interpreter;
+    }
+
+    //Finds the address each label and call jumps to. Labels are local to the function they're in.
+    private void resolveTargets() {
+        targets = new int[instructions.size()];
+        Map<String, Integer> labels = new HashMap<>();
+        String function = null;
+        for (int i = 0; i < instructions.size(); i++) {
+            VmInstruction instruction = instructions.get(i);
+            if (instruction.getCommand() == VmCommand.FUNCTION) {
+                function = instruction.getName();
+            }
+            else if (instruction.getCommand() == VmCommand.LABEL) {
+                labels.put(function + "$" + instruction.getName(), i);
+            }
+        }
+        for (int i = 0; i < instructions.size(); i++) {
+            VmInstruction instruction = instructions.get(i);
+            if (instruction.getCommand() == VmCommand.FUNCTION) {
+                function = instruction.getName();
+            }
+            else if (instruction.getCommand() == VmCommand.GOTO || instruction.getCommand() == VmCommand.IF_GOTO) {
+                Integer target = labels.get(function + "$" + instruction.getName());
+                if (target == null) {
+                    throw new IllegalArgumentException("Unknown label " + instruction.getName() + " in " + function);
+                }
+                targets[i] = target;
+            }
+            else if (instruction.getCommand() == VmCommand.CALL) {
+                targets[i] = functions.getOrDefault(instruction.getName(), -1);
+            }
+        }
+    }
+
+    //Runs the program from Sys.init, or from Main.main if the program doesn't have its own Sys.init.
+    void run() {
+        ram = new short[RAM_SIZE];
+        os = new BuiltInOs(ram);
+        steps = 0;
+        hackInstructions = 0;
+
+        String entryPoint = functions.containsKey("Sys.init") ? "Sys.init" : "Main.main";
+        Integer start = functions.get(entryPoint);
+        if (start == null) {
+            throw new IllegalArgumentException("The program has no " + entryPoint);
+        }
+        ram[0] = 256;
+        int pc = call(start, 0, -1);
+        while (pc >= 0) {
+            if (++steps > MAX_STEPS) {
+                throw new IllegalStateException("The program ran for more than " + MAX_STEPS + " vm instructions");
+            }
+            VmInstruction instruction = instructions.get(pc);
+            hackInstructions += VmCost.hackInstructions(instruction);
+            pc = execute(instruction, pc);
+        }
+    }
+
+    //Runs one instruction and returns the address of the next one, or -1 when the entry point returns.
+    private int execute(VmInstruction instruction, int pc) {
+        switch (instruction.getCommand()) {
+            case PUSH:
+                push(instruction.getSegment() == Segment.CONSTANT ? instruction.getNumber()
+                        : ram[address(instruction.getSegment(), instruction.getNumber(), pc)]);
+                return pc + 1;
+            case POP:
+                int value = pop();
+                ram[address(instruction.getSegment(), instruction.getNumber(), pc)] = (short) value;
+                return pc + 1;
+            case ARITHMETIC:
+                arithmetic(instruction.getArithmeticCommand());
+                return pc + 1;
+            case LABEL:
+                return pc + 1;
+            case GOTO:
+                return targets[pc];
+            case IF_GOTO:
+                return pop() != 0 ? targets[pc] : pc + 1;
+            case FUNCTION:
+                for (int i = 0; i < instruction.getNumber(); i++) {
+                    push(0);
+                }
+                return pc + 1;
+            case CALL:
+                if (targets[pc] < 0) {
+                    callOs(instruction.getName(), instruction.getNumber());
+                    hackInstructions += VmCost.RETURN;
+                    return pc + 1;
+                }
+                return call(targets[pc], instruction.getNumber(), pc + 1);
+            case RETURN:
+                int frame = ram[1];
+                int returnAddress = ram[frame - 5];
+                ram[ram[2]] = (short) pop();
+                ram[0] = (short) (ram[2] + 1);
+                ram[4] = ram[frame - 1];
+                ram[3] = ram[frame - 2];
+                ram[2] = ram[frame - 3];
+                ram[1] = ram[frame - 4];
+                return returnAddress;
+            default:
+                throw new IllegalStateException("Can't run: " + instruction);
+        }
+    }
+
+    //Pushes the frame of a call and returns the address of the function.
+    private int call(int function, int argumentCount, int returnAddress) {
+        push(returnAddress);
+        push(ram[1]);
+        push(ram[2]);
+        push(ram[3]);
+        push(ram[4]);
+        ram[2] = (short) (ram[0] - argumentCount - 5);
+        ram[1] = ram[0];
+        return function;
+    }
+
+    private int address(Segment segment, int index, int pc) {
+        switch (segment) {
+            case LOCAL:
+                return ram[1] + index;
+            case ARGUMENT:
+                return ram[2] + index;
+            case THIS:
+                return (ram[3] & 0xffff) + index;
+            case THAT:
+                return (ram[4] & 0xffff) + index;
+            case POINTER:
+                return 3 + index;
+            case TEMP:
+                return 5 + index;
+            case STATIC:
+                return staticBases.get(classNames.get(pc)) + index;
+            default:
+                throw new IllegalStateException("Can't address the segment: " + segment);
+        }
+    }
+
+    private void arithmetic(ArithmeticCommand command) {
+        int second = command == ArithmeticCommand.NEG || command == ArithmeticCommand.NOT ? 0 : pop();
+        int first = pop();
+        switch (command) {
+            case ADD:
+                push(first + second);
+                break;
+            case SUB:
+                push(first - second);
+                break;
+            case AND:
+                push(first & second);
+                break;
+            case OR:
+                push(first | second);
+                break;
+            case EQ:
+                push(first == second ? -1 : 0);
+                break;
+            case GT:
+                push(first > second ? -1 : 0);
+                break;
+            case LT:
+                push(first < second ? -1 : 0);
+                break;
+            case NEG:
+                push(-first);
+                break;
+            default:
+                push(~first);
+        }
+    }
+
+    //Runs a call to the built in OS, taking its arguments off the stack and pushing its result.
+    private void callOs(String function, int argumentCount) {
+        int[] arguments = new int[argumentCount];
+        for (int i = argumentCount - 1; i >= 0; i--) {
+            arguments[i] = pop();
+        }
+        push(os.call(function, arguments));
+    }
+
+    private void push(int value) {
+        ram[ram[0]] = (short) value;
+        ram[0]++;
+    }
+
+    private int pop() {
+        ram[0]--;
+        return ram[ram[0]];
+    }
+
+    //Getters
+    String getOutput() {
+        return os.getOutput();
+    }
+
+    long getSteps() {
+        return steps;
+    }
+
+    long getHackInstructions() {
+        return hackInstructions;
+    }
+
+    int getInstructionCount() {
+        return instructions.size();
+    }
+}
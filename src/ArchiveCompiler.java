@@ -0,0 +1,132 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * This compiles the jack files in a zip archive straight from the archive and writes every vm file into one output
+ * archive, without extracting anything. Each folder in the archive is compiled as one program, like a folder on disk,
+ * and its vm files are written to the same folder in the output archive. The sources are read into memory and compiled
+ * by an EmbeddedCompiler, and the output archive is only written once every file has compiled, so the only files
+ * touched are the two archives.
+ */
+class ArchiveCompiler {
+
+    static final String ARCHIVE_EXTENSION = ".zip";
+    static final String OUT_ARCHIVE_EXTENSION = ".vm.zip";
+
+    private final File archive;
+    private final File outputArchive;
+    private final EmbeddedCompiler compiler;
+    private int vmFileCount = 0;
+
+    //Makes a compiler for the archive at the options' input path. The output archive is the one given by
+    //--zip-output, or else the input archive's name ending in .vm.zip.
+    ArchiveCompiler(CompilerOptions options) {
+        archive = new File(options.getInputPath());
+        if (!archive.isFile()) {
+            throw new IllegalArgumentException("No archive found at: " + archive);
+        }
+        outputArchive = options.getZipOutputPath() != null ? new File(options.getZipOutputPath())
+                : getOutputArchive(archive);
+        compiler = new EmbeddedCompiler(options);
+    }
+
+    //Returns true if the path is a zip archive to compile.
+    static boolean isArchive(String path) {
+        return path != null && path.toLowerCase().endsWith(ARCHIVE_EXTENSION);
+    }
+
+    //Returns the default output archive for the archive, such as Project.vm.zip for Project.zip.
+    static File getOutputArchive(File archive) {
+        String name = archive.getName();
+        return new File(archive.getAbsoluteFile().getParentFile(),
+                name.substring(0, name.length() - ARCHIVE_EXTENSION.length()) + OUT_ARCHIVE_EXTENSION);
+    }
+
+    //Compiles every jack file in the archive and writes the output archive. Prints an error for each file that fails
+    //and throws the first one, without writing the output archive.
+    void compile() throws IOException {
+        List<String> vmFileNames = new ArrayList<>();
+        List<byte[]> vmFiles = new ArrayList<>();
+        List<EmbeddedCompiler.Diagnostic> diagnostics = new ArrayList<>();
+        for (Map<String, CharSequence> program : readPrograms().values()) {
+            EmbeddedCompiler.Result result = compiler.compile(program);
+            diagnostics.addAll(result.getDiagnostics());
+            for (String vmFileName : result.getVmFileNames()) {
+                vmFileNames.add(vmFileName);
+                vmFiles.add(result.getVmBytes(vmFileName));
+            }
+        }
+
+        if (!diagnostics.isEmpty()) {
+            for (EmbeddedCompiler.Diagnostic diagnostic : diagnostics) {
+                System.err.println("Error compiling " + diagnostic.getSourceName() + ": " + diagnostic.getMessage());
+            }
+            throw new IllegalArgumentException(diagnostics.get(0).getSourceName() + ": "
+                    + diagnostics.get(0).getMessage());
+        }
+
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(outputArchive.toPath()))) {
+            for (int i = 0; i < vmFileNames.size(); i++) {
+                output.putNextEntry(new ZipEntry(vmFileNames.get(i)));
+                output.write(vmFiles.get(i));
+                output.closeEntry();
+            }
+        }
+        vmFileCount = vmFileNames.size();
+    }
+
+    //Reads the jack files of the archive into memory, grouped by the folder they're in and sorted by name.
+    private Map<String, Map<String, CharSequence>> readPrograms() throws IOException {
+        Map<String, CharSequence> sources = new TreeMap<>();
+        try (ZipFile zip = new ZipFile(archive)) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.isDirectory() || !entry.getName().endsWith(JackCompiler.IN_EXTENSION)) {
+                    continue;
+                }
+                try (InputStream input = zip.getInputStream(entry)) {
+                    byte[] bytes = input.readAllBytes();
+                    sources.put(entry.getName(), new AsciiCharSequence(bytes, 0, bytes.length));
+                }
+            }
+        }
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No jack files found in: " + archive);
+        }
+
+        Map<String, Map<String, CharSequence>> programs = new TreeMap<>();
+        for (Map.Entry<String, CharSequence> source : sources.entrySet()) {
+            String name = source.getKey();
+            String folder = name.substring(0, name.lastIndexOf('/') + 1);
+            programs.computeIfAbsent(folder, (key) -> new LinkedHashMap<>()).put(name, source.getValue());
+        }
+        return programs;
+    }
+
+    //Getters
+    File getOutputArchive() {
+        return outputArchive;
+    }
+
+    int getVmFileCount() {
+        return vmFileCount;
+    }
+
+    String getPeepholeReport() {
+        return compiler.getPeepholeReport();
+    }
+
+    String getInlineReport() {
+        return compiler.getInlineReport();
+    }
+}
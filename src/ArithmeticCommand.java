@@ -0,0 +1,32 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This is a vm arithmetic or logical command. Each command's line is encoded once so the emitter can copy it as bytes.
+ */
+enum ArithmeticCommand {
+    ADD("add"),
+    SUB("sub"),
+    NEG("neg"),
+    EQ("eq"),
+    GT("gt"),
+    LT("lt"),
+    AND("and"),
+    OR("or"),
+    NOT("not");
+
+    private final String vmName;
+    private final byte[] line;
+
+    ArithmeticCommand(String vmName) {
+        this.vmName = vmName;
+        this.line = (vmName + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    String getVmName() {
+        return vmName;
+    }
+
+    byte[] getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,40 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This reads part of a byte array as characters, one byte per character, without copying it. The tokenizer only
+ * makes a String for the characters of each token it returns.
+ */
+final class AsciiCharSequence implements CharSequence {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    AsciiCharSequence(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    //The index isn't checked against the length, so the tokenizer's loops only pay for the array's own bounds check.
+    //Callers stay within the length.
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes[offset + index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new AsciiCharSequence(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
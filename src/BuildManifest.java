@@ -0,0 +1,143 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This is the manifest used for incremental compilation. It is stored next to the vm files and records the compiler
+ * version, a content hash of each jack file and a hash of the vm file made from it, so unchanged classes can be skipped.
+ */
+class BuildManifest {
+
+    static final String MANIFEST_NAME = ".jack-manifest";
+    private static final String VERSION_PREFIX = "version\t";
+
+    private final File manifestFile;
+    private final String version;
+    private final Map<String, Entry> entries = new TreeMap<>();
+    private boolean changed = false;
+
+    private BuildManifest(File manifestFile, String version) {
+        this.manifestFile = manifestFile;
+        this.version = version;
+    }
+
+    //Loads the manifest from the directory. If there isn't one, or it was written by a different compiler version or
+    //settings, this returns an empty manifest so every file is compiled.
+    static BuildManifest load(File directory, String version) throws IOException {
+        BuildManifest manifest = new BuildManifest(new File(directory, MANIFEST_NAME), version);
+        if (!manifest.manifestFile.isFile()) {
+            manifest.changed = true;
+            return manifest;
+        }
+
+        List<String> lines = Files.readAllLines(manifest.manifestFile.toPath());
+        if (lines.isEmpty() || !lines.get(0).equals(VERSION_PREFIX + version)) {
+            manifest.changed = true;
+            return manifest;
+        }
+
+        for (String line : lines.subList(1, lines.size())) {
+            String[] columns = line.split("\t");
+            if (columns.length == 3) {
+                manifest.entries.put(columns[0], new Entry(columns[1], columns[2]));
+            }
+        }
+        return manifest;
+    }
+
+    //Returns true if the jack file hasn't changed since it was last compiled and its vm file is still the one that
+    //was written then.
+    boolean isUpToDate(String fileName, String sourceHash, File vmFile) throws IOException {
+        Entry entry = entries.get(fileName);
+        if (entry == null || !entry.sourceHash.equals(sourceHash) || !vmFile.isFile()) {
+            return false;
+        }
+        return entry.vmHash.equals(hash(Files.readAllBytes(vmFile.toPath())));
+    }
+
+    //Records the hashes of a compiled file.
+    void record(String fileName, String sourceHash, String vmHash) {
+        Entry entry = new Entry(sourceHash, vmHash);
+        if (!entry.equals(entries.put(fileName, entry))) {
+            changed = true;
+        }
+    }
+
+    //Drops the entries of jack files that are no longer in the manifest's directory.
+    void removeDeletedSources() {
+        File directory = manifestFile.getParentFile();
+        if (entries.keySet().removeIf(fileName -> !new File(directory, fileName).isFile())) {
+            changed = true;
+        }
+    }
+
+    //Writes the manifest if anything in it changed.
+    void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+        try (FileWriter outputWriter = new FileWriter(manifestFile)) {
+            outputWriter.write(VERSION_PREFIX + version + "\n");
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                outputWriter.write(entry.getKey() + "\t" + entry.getValue().sourceHash + "\t"
+                        + entry.getValue().vmHash + "\n");
+            }
+        }
+        changed = false;
+    }
+
+    //Returns the SHA-256 hash of the bytes as hex.
+    static String hash(byte[] bytes) {
+        return hash(bytes, 0, bytes.length);
+    }
+
+    //Returns the SHA-256 hash of part of the bytes as hex.
+    static String hash(byte[] bytes, int offset, int length) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+        StringBuilder hex = new StringBuilder();
+        digest.update(bytes, offset, length);
+        for (byte hashByte : digest.digest()) {
+            hex.append(Character.forDigit((hashByte >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(hashByte & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * This stores the hashes recorded for one jack file.
+     */
+    private static class Entry {
+        private final String sourceHash;
+        private final String vmHash;
+
+        Entry(String sourceHash, String vmHash) {
+            this.sourceHash = sourceHash;
+            this.vmHash = vmHash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Entry)) {
+                return false;
+            }
+            Entry otherEntry = (Entry) other;
+            return sourceHash.equals(otherEntry.sourceHash) && vmHash.equals(otherEntry.vmHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return sourceHash.hashCode() * 31 + vmHash.hashCode();
+        }
+    }
+}
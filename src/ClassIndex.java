@@ -0,0 +1,207 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This is the index of the class signatures of every jack file in the project. It is built in a first pass, before
+ * any file is compiled, by scanning only the class level declarations of each file, several files at a time. The
+ * compiler then checks each call against it. A file is only scanned again when its size or modified time changes, so
+ * the index can be kept between batches in watch mode and saved to a .jack-index file between incremental runs.
+ *
+ * Files that fail to scan are left out, so the compiler reports their errors when it compiles them. Classes that
+ * aren't in the index, such as the OS classes, aren't checked.
+ */
+class ClassIndex {
+
+    static final String INDEX_NAME = ".jack-index";
+    private static final String VERSION_LINE = "version\t1";
+
+    private static final ThreadLocal<SourceReader> readers = ThreadLocal.withInitial(SourceReader::new);
+
+    //The entry for each jack file by file name, and the signature of each class by class name.
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile Map<String, ClassSignature> classes = new HashMap<>();
+    private boolean changed = false;
+
+    //Brings the index up to date with the given jack files, scanning the new and changed ones on up to the given
+    //number of threads. Files that are no longer given are dropped. Returns the number of files scanned.
+    int update(File[] files, int jobs) {
+        List<File> changedFiles = new ArrayList<>();
+        for (File file : files) {
+            Entry entry = entries.get(file.getName());
+            if (entry == null || entry.lastModified != file.lastModified() || entry.length != file.length()) {
+                changedFiles.add(file);
+            }
+        }
+        List<String> fileNames = Arrays.stream(files).map(File::getName).toList();
+        changed |= entries.keySet().retainAll(fileNames);
+
+        int threads = Math.min(jobs, changedFiles.size());
+        if (threads <= 1) {
+            changedFiles.forEach(this::scan);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (File file : changedFiles) {
+                    tasks.add(pool.submit(() -> scan(file)));
+                }
+                tasks.forEach(ForkJoinTask::join);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        changed |= !changedFiles.isEmpty();
+        indexClasses();
+        return changedFiles.size();
+    }
+
+    //Makes an index of sources held in memory, by name. Sources that fail to scan are left out, like files are.
+    static ClassIndex of(Map<String, ? extends CharSequence> sources) {
+        ClassIndex index = new ClassIndex();
+        for (Map.Entry<String, ? extends CharSequence> source : sources.entrySet()) {
+            ClassSignature signature;
+            try {
+                signature = ClassSignature.scan(new Tokenizer(source.getValue()));
+            } catch (RuntimeException e) {
+                signature = null;
+            }
+            index.entries.put(source.getKey(), new Entry(0, source.getValue().length(), signature));
+        }
+        index.indexClasses();
+        return index;
+    }
+
+    //Updates the signature of each class by class name from the file entries.
+    private void indexClasses() {
+        Map<String, ClassSignature> newClasses = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            if (entry.signature != null) {
+                newClasses.put(entry.signature.getClassName(), entry.signature);
+            }
+        }
+        classes = newClasses;
+    }
+
+    //Scans the class level declarations of one file into its entry.
+    private void scan(File file) {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        ClassSignature signature;
+        try {
+            SourceReader reader = readers.get();
+            reader.read(file.toPath());
+            signature = ClassSignature.scan(new Tokenizer(reader.getSource()));
+        } catch (IOException | RuntimeException e) {
+            signature = null;
+        }
+        entries.put(file.getName(), new Entry(lastModified, length, signature));
+    }
+
+    //Returns the signature of the class, or null if it isn't in the index.
+    ClassSignature getClass(String className) {
+        return classes.get(className);
+    }
+
+    //Returns the number of classes in the index.
+    int size() {
+        return classes.size();
+    }
+
+    //Loads the index saved in the directory. If there isn't one, or it can't be read, this returns an empty index.
+    static ClassIndex load(File directory) throws IOException {
+        ClassIndex index = new ClassIndex();
+        File indexFile = new File(directory, INDEX_NAME);
+        if (!indexFile.isFile()) {
+            return index;
+        }
+        List<String> lines = Files.readAllLines(indexFile.toPath());
+        if (lines.isEmpty() || !lines.get(0).equals(VERSION_LINE)) {
+            return index;
+        }
+
+        try {
+            String fileName = null;
+            Entry entry = null;
+            for (String line : lines.subList(1, lines.size())) {
+                String[] columns = line.split("\t", -1);
+                switch (columns[0]) {
+                    case "file":
+                        fileName = columns[1];
+                        ClassSignature signature = columns[4].isEmpty() ? null : new ClassSignature(columns[4]);
+                        entry = new Entry(Long.parseLong(columns[2]), Long.parseLong(columns[3]), signature);
+                        index.entries.put(fileName, entry);
+                        break;
+                    case "var":
+                        entry.signature.getClassVars().add(
+                                new ClassSignature.ClassVar(columns[1], columns[2], columns[3]));
+                        break;
+                    case "sub":
+                        List<String> parameterTypes = columns[4].isEmpty() ? new ArrayList<>()
+                                : new ArrayList<>(Arrays.asList(columns[4].split(",")));
+                        entry.signature.addSubroutine(
+                                new ClassSignature.Subroutine(columns[1], columns[2], columns[3], parameterTypes));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown index line: " + line);
+                }
+            }
+        } catch (RuntimeException e) {
+            //A damaged index is rebuilt from the sources.
+            return new ClassIndex();
+        }
+        return index;
+    }
+
+    //Writes the index to the directory if anything in it changed.
+    void save(File directory) throws IOException {
+        if (!changed) {
+            return;
+        }
+        try (FileWriter outputWriter = new FileWriter(new File(directory, INDEX_NAME))) {
+            outputWriter.write(VERSION_LINE + "\n");
+            for (Map.Entry<String, Entry> fileEntry : entries.entrySet()) {
+                Entry entry = fileEntry.getValue();
+                ClassSignature signature = entry.signature;
+                outputWriter.write("file\t" + fileEntry.getKey() + "\t" + entry.lastModified + "\t" + entry.length
+                        + "\t" + (signature == null ? "" : signature.getClassName()) + "\n");
+                if (signature == null) {
+                    continue;
+                }
+                for (ClassSignature.ClassVar classVar : signature.getClassVars()) {
+                    outputWriter.write("var\t" + classVar.getKind() + "\t" + classVar.getType() + "\t"
+                            + classVar.getName() + "\n");
+                }
+                for (ClassSignature.Subroutine subroutine : signature.getSubroutines()) {
+                    outputWriter.write("sub\t" + subroutine.getKind() + "\t" + subroutine.getReturnType() + "\t"
+                            + subroutine.getName() + "\t" + String.join(",", subroutine.getParameterTypes()) + "\n");
+                }
+            }
+        }
+        changed = false;
+    }
+
+    /**
+     * This is what the index knows about one jack file. The signature is null if the file couldn't be scanned.
+     */
+    private static class Entry {
+        private final long lastModified;
+        private final long length;
+        private final ClassSignature signature;
+
+        Entry(long lastModified, long length, ClassSignature signature) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.signature = signature;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This holds the class level declarations of one jack class: its class variables and the signature of each of its
+ * subroutines. It is read from the tokens, and the tokenizer skips every subroutine body without tokenizing it, so
+ * it's much cheaper than compiling the class. Once made it isn't changed, so it can be shared by the threads compiling a batch.
+ */
+class ClassSignature {
+
+    private final String className;
+    private final List<ClassVar> classVars = new ArrayList<>();
+    private final Map<String, Subroutine> subroutines = new LinkedHashMap<>();
+
+    ClassSignature(String className) {
+        this.className = className;
+    }
+
+    //Reads the declarations of the class from its tokens. Throws if the class isn't declared the way the compiler
+    //expects.
+    static ClassSignature scan(Tokenizer tokens) {
+        expectKeyword(tokens, "class");
+        ClassSignature signature = new ClassSignature(expectIdentifier(tokens));
+        expectSymbol(tokens, '{');
+
+        while (true) {
+            Token token = next(tokens);
+            if (token.isKeyword("static") || token.isKeyword("field")) {
+                String kind = token.getValue();
+                String type = next(tokens).getValue();
+                signature.classVars.add(new ClassVar(kind, type, expectIdentifier(tokens)));
+                while (next(tokens).isSymbol(',')) {
+                    signature.classVars.add(new ClassVar(kind, type, expectIdentifier(tokens)));
+                }
+            }
+            else if (token.isKeyword("constructor") || token.isKeyword("function") || token.isKeyword("method")) {
+                signature.addSubroutine(scanSubroutine(tokens, token.getValue()));
+            }
+            else if (token.isSymbol('}')) {
+                return signature;
+            }
+            else {
+                throw new IllegalArgumentException("Expected a class variable or subroutine, but found: " + token);
+            }
+        }
+    }
+
+    //Reads the signature of a subroutine after its kind, then skips its body.
+    private static Subroutine scanSubroutine(Tokenizer tokens, String kind) {
+        String returnType = next(tokens).getValue();
+        String name = expectIdentifier(tokens);
+        expectSymbol(tokens, '(');
+        List<String> parameterTypes = new ArrayList<>();
+        Token token = next(tokens);
+        while (!token.isSymbol(')')) {
+            parameterTypes.add(token.getValue());
+            expectIdentifier(tokens);
+            token = next(tokens);
+            if (token.isSymbol(',')) {
+                token = next(tokens);
+            }
+        }
+
+        expectSymbol(tokens, '{');
+        tokens.skipBlock();
+        return new Subroutine(kind, returnType, name, parameterTypes);
+    }
+
+    //Adds a subroutine, and throws if the class already has one with the same name.
+    void addSubroutine(Subroutine subroutine) {
+        if (subroutines.put(subroutine.getName(), subroutine) != null) {
+            throw new IllegalArgumentException("Subroutine declared twice: " + className + "." + subroutine.getName());
+        }
+    }
+
+    private static Token next(Tokenizer tokens) {
+        if (!tokens.hasNext()) {
+            throw new IllegalArgumentException("Unexpected end of file");
+        }
+        return tokens.next();
+    }
+
+    private static void expectKeyword(Tokenizer tokens, String keyword) {
+        Token token = next(tokens);
+        if (!token.isKeyword(keyword)) {
+            throw new IllegalArgumentException("Expected: " + keyword + ", but found: " + token);
+        }
+    }
+
+    private static void expectSymbol(Tokenizer tokens, char symbol) {
+        Token token = next(tokens);
+        if (!token.isSymbol(symbol)) {
+            throw new IllegalArgumentException("Unexpected Symbol. Expected: " + symbol + ", but found: " + token);
+        }
+    }
+
+    private static String expectIdentifier(Tokenizer tokens) {
+        Token token = next(tokens);
+        if (token.getKind() != TokenKind.IDENTIFIER) {
+            throw new IllegalArgumentException("Expected an identifier, but found: " + token);
+        }
+        return token.getValue();
+    }
+
+    //Getters
+    String getClassName() {
+        return className;
+    }
+
+    List<ClassVar> getClassVars() {
+        return classVars;
+    }
+
+    //Returns the subroutine with the given name, or null if the class doesn't declare it.
+    Subroutine getSubroutine(String name) {
+        return subroutines.get(name);
+    }
+
+    Collection<Subroutine> getSubroutines() {
+        return subroutines.values();
+    }
+
+    /**
+     * This is a static or field declared by the class.
+     */
+    static class ClassVar {
+        private final String kind;
+        private final String type;
+        private final String name;
+
+        ClassVar(String kind, String type, String name) {
+            this.kind = kind;
+            this.type = type;
+            this.name = name;
+        }
+
+        String getKind() {
+            return kind;
+        }
+
+        String getType() {
+            return type;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * This is the signature of a constructor, function or method.
+     */
+    static class Subroutine {
+        private final String kind;
+        private final String returnType;
+        private final String name;
+        private final List<String> parameterTypes;
+
+        Subroutine(String kind, String returnType, String name, List<String> parameterTypes) {
+            this.kind = kind;
+            this.returnType = returnType;
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+        }
+
+        String getKind() {
+            return kind;
+        }
+
+        //Returns true if the subroutine is called on an object, which is passed as a hidden first argument.
+        boolean isMethod() {
+            return kind.equals("method");
+        }
+
+        String getReturnType() {
+            return returnType;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        List<String> getParameterTypes() {
+            return parameterTypes;
+        }
+
+        //Returns the number of arguments the vm function takes, counting the object for methods.
+        int getVmArgumentCount() {
+            return isMethod() ? parameterTypes.size() + 1 : parameterTypes.size();
+        }
+    }
+}
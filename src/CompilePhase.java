@@ -0,0 +1,23 @@
+/**
+ * These are the phases each jack file goes through, in order. When tokens are streamed into the compiler, the
+ * tokenizer runs inside the compile phase, so tokenizing is only timed on its own when the tokens are read ahead.
+ */
+enum CompilePhase {
+    READ("read"),
+    TOKENIZE("tokenize"),
+    COMPILE("compile"),
+    OPTIMIZE("optimize"),
+    EMIT("emit"),
+    WRITE("write");
+
+    private final String phaseName;
+
+    CompilePhase(String phaseName) {
+        this.phaseName = phaseName;
+    }
+
+    //Returns the name used in events and the stats summary.
+    String getPhaseName() {
+        return phaseName;
+    }
+}
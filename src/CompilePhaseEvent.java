@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This flight recorder event covers one phase of compiling one jack file.
+ */
+@Name("jack.CompilePhase")
+@Label("Compile Phase")
+@Category("Jack Compiler")
+@StackTrace(false)
+@Description("One phase of compiling a jack file")
+class CompilePhaseEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Phase")
+    String phase;
+}
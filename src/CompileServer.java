@@ -0,0 +1,290 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This serves compile requests over HTTP on the loopback address, so many short jobs can share one warm JVM instead of
+ * starting one each. POST /compile takes a JSON object with the sources by file name and optional flags:
+ *
+ *   {"flags": ["--peephole"], "sources": {"Main.jack": "class Main { ... }"}}
+ *
+ * and answers with the diagnostics and the vm files:
+ *
+ *   {"success": true, "diagnostics": [], "files": {"Main.vm": "function Main.main 0 ..."}}
+ *
+ * All the sources of a request are compiled together as one program by an EmbeddedCompiler. Requests run on a fixed
+ * number of compile threads with a bounded queue. When the queue is full the server answers 503 straight away, and a
+ * request that hasn't finished within the timeout, counting its time in the queue, gets 504. GET /metrics gives the
+ * request counts, queue depth and compile time as text, one metric per line.
+ */
+class CompileServer {
+
+    static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    static final int DEFAULT_QUEUE = 64;
+    static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    static final int MAX_REQUEST_BYTES = 16 * 1024 * 1024;
+
+    //Each set of flags gets its own compiler, which is shared by every request with those flags.
+    private static final int MAX_COMPILERS = 64;
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor compilePool;
+    private final ExecutorService requestPool;
+    private final long timeoutMillis;
+    private final Map<List<String>, EmbeddedCompiler> compilers = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong badRequests = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong sourcesCompiled = new AtomicLong();
+    private final AtomicLong compileNanos = new AtomicLong();
+    private final AtomicLong queueNanos = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+
+    //Makes a server on the loopback address at the given port, or any free port if it's 0. It isn't started yet.
+    CompileServer(int port, int threads, int queueSize, long timeoutMillis) throws IOException {
+        this.timeoutMillis = timeoutMillis;
+        compilePool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), namedThreads("jack-compile"));
+        //Requests wait for their compile on these threads, so there's one for each request that can be running or
+        //queued, and one more to answer the requests that are turned away.
+        requestPool = Executors.newFixedThreadPool(threads + queueSize + 1, namedThreads("jack-http"));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(requestPool);
+        server.createContext("/compile", this::handleCompile);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    //Starts answering requests.
+    void start() {
+        server.start();
+    }
+
+    //Stops the server, letting requests that are running finish for up to the given number of seconds.
+    void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        requestPool.shutdown();
+        compilePool.shutdown();
+    }
+
+    //Returns the port the server is listening on.
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleCompile(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendError(exchange, 405, "Use POST to compile");
+                return;
+            }
+            requests.incrementAndGet();
+
+            EmbeddedCompiler compiler;
+            Map<String, String> sources;
+            try {
+                Map<?, ?> request = asObject(Json.parse(readBody(exchange.getRequestBody())), "The request");
+                compiler = getCompiler(readFlags(request.get("flags")));
+                sources = readSources(request.get("sources"));
+            } catch (IllegalArgumentException e) {
+                badRequests.incrementAndGet();
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+
+            long queuedAt = System.nanoTime();
+            Future<EmbeddedCompiler.Result> result;
+            try {
+                result = compilePool.submit(() -> {
+                    long start = System.nanoTime();
+                    queueNanos.addAndGet(start - queuedAt);
+                    try {
+                        return compiler.compile(sources);
+                    } finally {
+                        compileNanos.addAndGet(System.nanoTime() - start);
+                        sourcesCompiled.addAndGet(sources.size());
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                sendError(exchange, 503, "The server is busy, try again later");
+                return;
+            }
+            maxQueueDepth.accumulateAndGet(compilePool.getQueue().size(), Math::max);
+
+            try {
+                EmbeddedCompiler.Result compiled = result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                (compiled.isSuccess() ? succeeded : failed).incrementAndGet();
+                sendJson(exchange, 200, toJson(compiled));
+            } catch (TimeoutException e) {
+                //A request still in the queue is removed. One that's compiling can't be stopped, but its result is
+                //dropped.
+                result.cancel(true);
+                compilePool.purge();
+                timedOut.incrementAndGet();
+                sendError(exchange, 504, "The compile took longer than " + timeoutMillis + " ms");
+            } catch (ExecutionException e) {
+                failed.incrementAndGet();
+                sendError(exchange, 500, "The compiler failed: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendError(exchange, 503, "The server is stopping");
+            }
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body = getMetrics().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    //Returns the metrics as text, one name and value on each line.
+    String getMetrics() {
+        return "jack_requests_total " + requests.get() + "\n"
+                + "jack_requests_succeeded_total " + succeeded.get() + "\n"
+                + "jack_requests_failed_total " + failed.get() + "\n"
+                + "jack_requests_bad_total " + badRequests.get() + "\n"
+                + "jack_requests_rejected_total " + rejected.get() + "\n"
+                + "jack_requests_timed_out_total " + timedOut.get() + "\n"
+                + "jack_sources_compiled_total " + sourcesCompiled.get() + "\n"
+                + "jack_queue_depth " + compilePool.getQueue().size() + "\n"
+                + "jack_queue_depth_max " + maxQueueDepth.get() + "\n"
+                + "jack_queue_capacity " + (compilePool.getQueue().size()
+                + compilePool.getQueue().remainingCapacity()) + "\n"
+                + "jack_compiles_active " + compilePool.getActiveCount() + "\n"
+                + "jack_compile_threads " + compilePool.getMaximumPoolSize() + "\n"
+                + "jack_compile_seconds_total " + compileNanos.get() / 1e9 + "\n"
+                + "jack_queue_seconds_total " + queueNanos.get() / 1e9 + "\n";
+    }
+
+    //Returns the shared compiler for the flags, making it the first time they're used.
+    private EmbeddedCompiler getCompiler(List<String> flags) {
+        EmbeddedCompiler compiler = compilers.get(flags);
+        if (compiler != null) {
+            return compiler;
+        }
+        compiler = new EmbeddedCompiler(flags.toArray(new String[0]));
+        if (compilers.size() < MAX_COMPILERS) {
+            compilers.putIfAbsent(flags, compiler);
+        }
+        return compiler;
+    }
+
+    private static List<String> readFlags(Object flags) {
+        List<String> flagList = new ArrayList<>();
+        if (flags == null) {
+            return flagList;
+        }
+        if (!(flags instanceof List)) {
+            throw new IllegalArgumentException("flags must be an array of strings");
+        }
+        for (Object flag : (List<?>) flags) {
+            if (!(flag instanceof String)) {
+                throw new IllegalArgumentException("flags must be an array of strings");
+            }
+            flagList.add((String) flag);
+        }
+        return flagList;
+    }
+
+    private static Map<String, String> readSources(Object sources) {
+        Map<?, ?> sourceObject = asObject(sources, "sources");
+        if (sourceObject.isEmpty()) {
+            throw new IllegalArgumentException("sources must have at least one source");
+        }
+        Map<String, String> sourceMap = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> source : sourceObject.entrySet()) {
+            if (!(source.getValue() instanceof String)) {
+                throw new IllegalArgumentException("The source " + source.getKey() + " must be a string");
+            }
+            sourceMap.put((String) source.getKey(), (String) source.getValue());
+        }
+        return sourceMap;
+    }
+
+    private static Map<?, ?> asObject(Object value, String name) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException(name + " must be a JSON object");
+        }
+        return (Map<?, ?>) value;
+    }
+
+    //Reads the request body as UTF-8, up to the size limit.
+    private static String readBody(InputStream body) throws IOException {
+        byte[] bytes = body.readNBytes(MAX_REQUEST_BYTES + 1);
+        if (bytes.length > MAX_REQUEST_BYTES) {
+            throw new IllegalArgumentException("The request is larger than " + MAX_REQUEST_BYTES + " bytes");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //Returns the result as the JSON the server answers with.
+    static String toJson(EmbeddedCompiler.Result result) {
+        StringBuilder json = new StringBuilder("{\"success\": ").append(result.isSuccess()).append(", \"diagnostics\": [");
+        List<EmbeddedCompiler.Diagnostic> diagnostics = result.getDiagnostics();
+        for (int i = 0; i < diagnostics.size(); i++) {
+            EmbeddedCompiler.Diagnostic diagnostic = diagnostics.get(i);
+            json.append(i == 0 ? "" : ", ").append("{\"source\": ").append(Json.quote(diagnostic.getSourceName()))
+                    .append(", \"line\": ").append(diagnostic.getLine())
+                    .append(", \"message\": ").append(Json.quote(String.valueOf(diagnostic.getMessage()))).append('}');
+        }
+        json.append("], \"files\": {");
+        List<String> vmFileNames = result.getVmFileNames();
+        for (int i = 0; i < vmFileNames.size(); i++) {
+            json.append(i == 0 ? "" : ", ").append(Json.quote(vmFileNames.get(i))).append(": ")
+                    .append(Json.quote(result.getVmText(vmFileNames.get(i))));
+        }
+        return json.append("}}").toString();
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\": " + Json.quote(String.valueOf(message)) + "}");
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicLong count = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
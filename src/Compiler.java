@@ -1,54 +1,76 @@
-import java.io.FileWriter;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
 
 /**
- * This is the compiler class, which is used to parse the tokenized xml file into the final output file.
+ * This is the compiler class, which is used to parse the in-memory tokens into the final output file. Each decision
+ * is made on the kind and value of the current token. Each expression is parsed into a tree, with its constant parts
+ * folded, before its vm code is written.
   */
 class Compiler {
-    private FileWriter outputWriter;
-    private Scanner scanner;
-    private String currentInputLine;
-    private String nextToken;
+    private VmCode vm;
+    private Iterator<Token> tokens;
+    private Token currentToken;
+    private Token nextToken;
     private String className;
     private LinkedList<SymbolTable> symbolTables = new LinkedList<>();
-    static Pattern tokenPattern = Pattern.compile("<.*> (.*) </.*>");
-    Integer whileLabelCounter = 0;
-    Integer ifLabelCounter = 0;
+    int whileLabelCounter = 0;
+    int ifLabelCounter = 0;
+    int stringLabelCounter = 0;
+    private int whileDepth = 0;
+    private int tokenCount = 0;
 
-    Compiler(FileWriter outputWriter, Scanner scanner) {
-        this.outputWriter = outputWriter;
-        this.scanner = scanner;
+    private CompilerOptions options;
+
+    //Calls are checked against this if it's set.
+    private ClassIndex classIndex = null;
+
+    //This is only used if string literals are shared.
+    private StringLiteralTable stringLiterals = null;
+
+    Compiler(VmCode vm, Iterator<Token> tokens) {
+        this(vm, tokens, new CompilerOptions());
+    }
+
+    Compiler(VmCode vm, Iterator<Token> tokens, CompilerOptions options) {
+        this.vm = vm;
+        this.tokens = tokens;
+        this.options = options;
+    }
+
+    Compiler(VmCode vm, Iterator<Token> tokens, CompilerOptions options, ClassIndex classIndex) {
+        this(vm, tokens, options);
+        this.classIndex = classIndex;
     }
 
-    //Moves to the next line of input file. If there's a nextToken loaded, place that into
-    //the currentInputLine instead.
+    //Moves to the next token. If there's a nextToken loaded, place that into
+    //the currentToken instead.
     private void advanceToken()
     {
         if(nextToken != null)
         {
-            currentInputLine = nextToken;
+            currentToken = nextToken;
             nextToken = null;
         }
-        else if(scanner.hasNext())
+        else if(tokens.hasNext())
         {
-            currentInputLine = scanner.nextLine();
+            currentToken = tokens.next();
+            tokenCount++;
         }
         else
         {
-            currentInputLine = null;
+            currentToken = null;
         }
     }
 
     //loads the next token into nextToken to be used in look a heads.
     private void loadNextToken()
     {
-        if(scanner.hasNext())
+        if(tokens.hasNext())
         {
-            nextToken = scanner.nextLine();
+            nextToken = tokens.next();
+            tokenCount++;
         }
         else
         {
@@ -56,58 +78,42 @@ class Compiler {
         }
     }
 
-    //Generic write line method
-    private  void writeLine(String line)
-    {
-        try {
-            outputWriter.write(line + "\n");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    //Returns the number of tokens read so far.
+    int getTokenCount() {
+        return tokenCount;
+    }
+
+    //Returns the line of the token being compiled, or 0 if there isn't one. Errors are reported near this line.
+    int getLineNumber() {
+        return currentToken == null ? 0 : currentToken.getLineNumber();
     }
 
+    //Returns the string literal table, or null if strings aren't shared.
+    StringLiteralTable getStringLiterals() {
+        return stringLiterals;
+    }
 
-    //Returns vm for operator.
-    private String getOp()
+    //Returns the operator symbol and advances past it.
+    private char getOp()
     {
-        switch (getTokenAndAdvance()) {
-            case "+":
-                return "add";
-            case "-":
-                return "sub";
-            case "*":
-                return "call Math.multiply 2";
-            case "/":
-                return "call Math.divide 2";
-            case "&amp;":
-                return "and";
-            case "|":
-                return "or";
-            case "&lt;":
-                return "lt";
-            case "&gt;":
-                return "gt";
-            case "=":
-                return "eq";
-            default:
-                throw new IllegalArgumentException("Operator not found. " + currentInputLine);
-        }
+        char operator = currentToken.getValue().charAt(0);
+        advanceToken();
+        return operator;
     }
 
     //This is the first method called to start compiling the jack tokens into vm code for the entire class.
     void compileClass()
     {
-        //Get past tokens first line.
-        advanceToken();
+        //Load the first token.
         advanceToken();
 
-        // advance past the keyword class line
+        // advance past the keyword class
         advanceToken();
 
-        //write identifier classname line
+        //write identifier classname
         className = getTokenAndAdvance();
 
-        // advance past the symbol lne
+        // advance past the symbol {
         advanceToken();
 
         symbolTables.addLast(new SymbolTable());
@@ -117,20 +123,32 @@ class Compiler {
             compileClassVarDec();
         }
 
+        //The hidden statics for shared strings go after the class's own statics.
+        if(options.isShareStrings())
+        {
+            stringLiterals = new StringLiteralTable(className,
+                    symbolTables.getFirst().getVarCount(Segment.STATIC));
+        }
+
         //write any and all subroutine declarations
         while(isSubRoutineDec())
         {
             compileSubroutine();
         }
 
-        validateSymbolAndAdvance("}");
+        validateSymbolAndAdvance('}');
+
+        if(stringLiterals != null)
+        {
+            stringLiterals.writeBuilders(vm);
+        }
 
     }
 
     //Returns true if start of class variable declaration
     private boolean isClassVarDec()
     {
-        return currentInputLine.contains("static") || currentInputLine.contains("field");
+        return currentToken.isKeyword("static") || currentToken.isKeyword("field");
     }
 
     //Writes the class variable declaration to the output.
@@ -154,11 +172,16 @@ class Compiler {
     //Returns true if start of subroutine declaration
     private boolean isSubRoutineDec()
     {
-       return currentInputLine.matches("<keyword> (constructor|function|method) </keyword>");
+       return currentToken.isKeyword("constructor") || currentToken.isKeyword("function")
+               || currentToken.isKeyword("method");
     }
 
     private void compileSubroutine()
     {
+        SubroutineCompileEvent event = new SubroutineCompileEvent();
+        event.begin();
+        int firstInstruction = vm.size();
+
         symbolTables.addLast(new SymbolTable());
         String subroutineType = getTokenAndAdvance();
         boolean isConstructor = subroutineType.equals("constructor");
@@ -173,15 +196,15 @@ class Compiler {
         advanceToken();
 
         //Subroutine name
-        String subroutineName = getSubroutineNameAndAdvance(currentInputLine);
+        String subroutineName = getSubroutineNameAndAdvance(currentToken.getValue());
 
-        validateSymbolAndAdvance("(");
+        validateSymbolAndAdvance('(');
 
         //Parameter list
         compileParameterList();
-        validateSymbolAndAdvance(")");
+        validateSymbolAndAdvance(')');
 
-        validateSymbolAndAdvance("{");
+        validateSymbolAndAdvance('{');
 
         //Record any and all variable declarations to symbol table
         while(isVarDec())
@@ -194,25 +217,30 @@ class Compiler {
         //Compile all the statements in the body.
         compileStatements();
 
-        validateSymbolAndAdvance("}");
+        validateSymbolAndAdvance('}');
 
+        if(event.shouldCommit())
+        {
+            event.subroutine = subroutineName;
+            event.instructions = vm.size() - firstInstruction;
+            event.commit();
+        }
     }
 
     //Writes function f k
     private void writeSubroutineDeclaration(String subroutineName, boolean isMethod, boolean isConstructor) {
-        String functionCall = "function " + subroutineName + " " + symbolTables.getLast().getVarCount("local").toString();
-        writeLine(functionCall);
+        vm.writeFunction(subroutineName, symbolTables.getLast().getVarCount(Segment.LOCAL));
         if(isConstructor)
         {
 
-            writeLine("push constant " + symbolTables.getFirst().getVarCount("this").toString() );
-            writeLine("call Memory.alloc 1");
-            writeLine("pop pointer 0");
+            vm.writePush(Segment.CONSTANT, symbolTables.getFirst().getVarCount(Segment.THIS));
+            vm.writeCall("Memory.alloc", 1);
+            vm.writePop(Segment.POINTER, 0);
         }
         else if(isMethod)
         {
-            writeLine("push argument 0");
-            writeLine("pop pointer 0");
+            vm.writePush(Segment.ARGUMENT, 0);
+            vm.writePop(Segment.POINTER, 0);
         }
     }
 
@@ -221,7 +249,7 @@ class Compiler {
     {
         String kind = "argument";
 
-        if(!currentInputLine.equals("<symbol> ) </symbol>")) {
+        if(!currentToken.isSymbol(')')) {
             //Get type
             String type = getTokenAndAdvance();
             //Get varName
@@ -235,7 +263,7 @@ class Compiler {
     //Checks if start of varDec
     private boolean isVarDec()
     {
-        return currentInputLine.equals("<keyword> var </keyword>");
+        return currentToken.isKeyword("var");
     }
 
     //Write variable declaration to output.
@@ -258,35 +286,35 @@ class Compiler {
         advanceToken();
     }
 
-    //Returns true if the current line is the start of a statement
+    //Returns true if the current token is the start of a statement
     private boolean isStatement()
     {
-        return currentInputLine.matches("<keyword> (let|while|if|do|return) </keyword>");
+        return currentToken.getKind() == TokenKind.KEYWORD;
     }
 
-    //Compiles all statements using appropriate compiler
+    //Compiles all statements using appropriate compiler. Any other keyword ends the statements.
     private void compileStatements()
     {
         while (isStatement())
         {
-            switch (currentInputLine){
-                case "<keyword> do </keyword>":
+            switch (currentToken.getValue()){
+                case "do":
                     compileDo();
                     break;
-                case "<keyword> let </keyword>":
+                case "let":
                     compileLet();
                     break;
-                case "<keyword> while </keyword>":
+                case "while":
                     compileWhile();
                     break;
-                case "<keyword> return </keyword>":
+                case "return":
                     compileReturn();
                     break;
-                case "<keyword> if </keyword>":
+                case "if":
                     compileIf();
                     break;
                 default:
-                    throw new IllegalArgumentException("Not a statement: " + currentInputLine);
+                    return;
             }
         }
     }
@@ -297,10 +325,10 @@ class Compiler {
         //advance past do keyword
         advanceToken();
         //Compile subroutineCall Expression.
-        compileSubroutineCall();
+        parseSubroutineCall().write(vm);
 
         //For void functions, pop the return value off the stack
-        writeLine("pop temp 0");
+        vm.writePop(Segment.TEMP, 0);
         //;
         advanceToken();
     }
@@ -313,79 +341,88 @@ class Compiler {
         //write varName
         String varName = getTokenAndAdvance();
         SymbolLine varLine = getSymbolLine(varName);
-        boolean destIsArray = isArray();
 
-        //If the destination is an array, this writes the code to set
-        //pointer 1 to the current location in the array.
-        if(destIsArray)
+        //If the destination is an array, parse the index of the element.
+        Expression elementIndex = null;
+        if(isArray())
         {
-            setArrayLocation(varLine);
+            //[
+            advanceToken();
+            elementIndex = parseExpression();
+            //]
+            advanceToken();
         }
 
         //advance past symbol =
         advanceToken();
 
+        Expression value = parseExpression();
+
+        //If the destination is an array, this writes the code to set
+        //pointer 1 to the current location in the array.
+        if(elementIndex != null)
+        {
+            setArrayLocation(varLine, elementIndex);
+        }
+
         //write expression code
-        compileExpression();
+        value.write(vm);
 
-        if(destIsArray)
+        if(elementIndex != null)
         {
-            writeLine("pop temp 0");
-            writeLine("pop pointer 1");
-            writeLine("push temp 0");
-            writeLine("pop that 0");
+            vm.writePop(Segment.TEMP, 0);
+            vm.writePop(Segment.POINTER, 1);
+            vm.writePush(Segment.TEMP, 0);
+            vm.writePop(Segment.THAT, 0);
         }
         else
         {
-            writeLine(varLine.getPop());
+            vm.write(varLine.getPop());
         }
         //;
         advanceToken();
     }
 
     //Writes code for setting the array location.
-    private void setArrayLocation(SymbolLine varLine) {
-        //[
-        advanceToken();
-        compileExpression();
-        writeLine(varLine.getPush());
-        //]
-        advanceToken();
-        writeLine("add");
+    private void setArrayLocation(SymbolLine varLine, Expression elementIndex) {
+        elementIndex.write(vm);
+        varLine.getVariable().write(vm);
+        vm.writeArithmetic(ArithmeticCommand.ADD);
     }
 
     //compile a while statement
     private void compileWhile()
     {
-        String whileLabel1 = "WHILE_EXP" + whileLabelCounter.toString();
-        String whileLabel2 = "WHILE_END" + whileLabelCounter.toString();
+        int whileLabel = whileLabelCounter;
         whileLabelCounter++;
         //While keyword
         advanceToken();
-        validateSymbolAndAdvance("(");
+        validateSymbolAndAdvance('(');
 
         //Start label
-        writeLine("label " + whileLabel1);
+        vm.writeLabel("WHILE_EXP", whileLabel);
 
         //Expression to determine if time to exit the while loop.
         compileExpression();
-        writeLine("not");
-        writeLine("if-goto " + whileLabel2);
+        vm.writeArithmetic(ArithmeticCommand.NOT);
+        vm.writeIf("WHILE_END", whileLabel);
 
         //Skip the symbols
-        validateSymbolAndAdvance(")");
-        validateSymbolAndAdvance("{");
+        validateSymbolAndAdvance(')');
+        validateSymbolAndAdvance('{');
 
         //Work to do in the while loop
+        whileDepth++;
         compileStatements();
+        whileDepth--;
 
         //Go back to the beginning of the while loops
-        writeLine("goto " + whileLabel1);
+        vm.writeGoto("WHILE_EXP", whileLabel);
 
         //Exit the loop
-        writeLine("label " + whileLabel2);
+        vm.writeLabel("WHILE_END", whileLabel);
 
-        validateSymbolAndAdvance("}");
+        validateSymbolAndAdvance('}');
 
     }
 
@@ -396,17 +433,17 @@ class Compiler {
         advanceToken();
 
         //Write expression if there is one.
-        if(!currentInputLine.equals("<symbol> ; </symbol>"))
+        if(!currentToken.isSymbol(';'))
         {
             compileExpression();
         }
         else
         {
-            writeLine("push constant 0");
+            vm.writePush(Segment.CONSTANT, 0);
         }
 
         //write return to confirm completion of subroutine.
-        writeLine("return");
+        vm.writeReturn();
 
         //Advance past ;
         advanceToken();
@@ -415,244 +452,305 @@ class Compiler {
     //compile if statement
     private void compileIf()
     {
-        String ifLabel1 = "IF_TRUE" + ifLabelCounter.toString();
-        String ifLabel2 = "IF_FALSE" + ifLabelCounter.toString();
+        int ifLabel = ifLabelCounter;
         ifLabelCounter++;
 
         //Skip keyword if and (
         advanceToken();
-        validateSymbolAndAdvance("(");
+        validateSymbolAndAdvance('(');
 
         compileExpression();
-        writeLine("not");
-        writeLine("if-goto " + ifLabel1);
+        vm.writeArithmetic(ArithmeticCommand.NOT);
+        vm.writeIf("IF_TRUE", ifLabel);
 
         //Skip symbols
-        validateSymbolAndAdvance(")");
-        validateSymbolAndAdvance("{");
+        validateSymbolAndAdvance(')');
+        validateSymbolAndAdvance('{');
 
         //Statement 1
         compileStatements();
 
-        writeLine("goto " + ifLabel2);
-        writeLine("label " + ifLabel1);
+        vm.writeGoto("IF_FALSE", ifLabel);
+        vm.writeLabel("IF_TRUE", ifLabel);
         //Skip symbols
-        validateSymbolAndAdvance("}");
+        validateSymbolAndAdvance('}');
 
-        if(currentInputLine.equals("<keyword> else </keyword>"))
+        if(currentToken.isKeyword("else"))
         {
             //Skip keyword else
             advanceToken();
-            validateSymbolAndAdvance("{");
+            validateSymbolAndAdvance('{');
 
             compileStatements();
 
-            validateSymbolAndAdvance("}");
+            validateSymbolAndAdvance('}');
         }
-        writeLine("label " + ifLabel2);
+        vm.writeLabel("IF_FALSE", ifLabel);
     }
 
     //Checks if start of array expression.
     private boolean isArray()
     {
-        return currentInputLine.equals("<symbol> [ </symbol>");
+        return currentToken.isSymbol('[');
     }
 
-    //Checks if current line is an operator
+    //Checks if current token is an operator
     private boolean isOp()
     {
-        String operator = currentInputLine.replace("<symbol> ","").replace(" </symbol>","");
-        return operator.matches("(\\+|-|\\*|/|&amp;|\\||&lt;|&gt;|=)");
+        if(currentToken.getKind() != TokenKind.SYMBOL)
+            return false;
+
+        switch (currentToken.getValue().charAt(0)) {
+            case '+':
+            case '-':
+            case '*':
+            case '/':
+            case '&':
+            case '|':
+            case '<':
+            case '>':
+            case '=':
+                return true;
+            default:
+                return false;
+        }
     }
 
-    //Compile an expression by compiling the term and then writing all subsequent operators and terms.
+    //Compile an expression by building its tree and then writing the vm code for it.
     private void compileExpression()
     {
-        compileTerm();
-        while(isOp())
-        {
-            //write operator
-            String op = getOp();
-            compileTerm();
-            writeLine(op);
-        }
+        parseExpression().write(vm);
     }
 
-    //Method for dertmining what type of term is in the current line and directing it to write the appropriate vm code
-    private void compileTerm()
+    //Parse an expression by parsing the term and then all subsequent operators and terms. Jack has no operator
+    //precedence, so each operator applies to everything on its left. Strength reduction is done once the whole
+    //expression is parsed, so chains of constants are combined first.
+    private Expression parseExpression()
     {
-        if(currentInputLine.matches("(<integerConstant> (.*) </integerConstant>)"))
-        {
-            writeLine("push constant " + getTokenAndAdvance());
-        }
-        else if(currentInputLine.matches("<keyword> (this|true|false|null) </keyword>"))
-        {
-            writeKeyword();
-        }
-        else if(currentInputLine.matches("(<stringConstant> (.*) </stringConstant>)"))
-        {
-            writeStringConstruction();
-        }
-        else if(currentInputLine.equals("<symbol> ( </symbol>"))
-        {
-            validateSymbolAndAdvance("(");
-
-            compileExpression();
-
-            validateSymbolAndAdvance(")");
-        }
-        else if(currentInputLine.matches("<symbol> (~|-) </symbol>"))
-        {
-            //Write unary op
-            String unaryOp = getUnarySymbol();
-            compileTerm();
-            writeLine(unaryOp);
-        }
-        else if(currentInputLine.startsWith("<identifier>"))
+        Expression expression = parseTerm();
+        while(isOp())
         {
-            compileIdentifierTerm();
+            char op = getOp();
+            expression = Expression.binary(op, expression, parseTerm());
+        }
+        if(options.isStrengthReduce())
+        {
+            expression = expression.reduceStrength(options.getMultiplyBudget());
+        }
+        return expression;
+    }
+
+    //Method for dertmining what type of term is in the current token and parsing it into an expression
+    private Expression parseTerm()
+    {
+        switch (currentToken.getKind()) {
+            case INTEGER_CONSTANT:
+                return Expression.constant(getIntegerConstantAndAdvance());
+            case KEYWORD:
+                return parseKeyword();
+            case STRING_CONSTANT:
+                if(stringLiterals != null)
+                {
+                    return stringLiterals.use(getTokenAndAdvance(), stringLabelCounter++, whileDepth > 0);
+                }
+                return new Expression.StringConstant(getTokenAndAdvance());
+            case SYMBOL:
+                if(currentToken.isSymbol('('))
+                {
+                    validateSymbolAndAdvance('(');
+
+                    Expression expression = parseExpression();
+
+                    validateSymbolAndAdvance(')');
+                    return expression;
+                }
+                else if(currentToken.isSymbol('~') || currentToken.isSymbol('-'))
+                {
+                    ArithmeticCommand unaryOp = getUnarySymbol();
+                    return Expression.unary(unaryOp, parseTerm());
+                }
+                break;
+            case IDENTIFIER:
+                return parseIdentifierTerm();
         }
-
+        throw new IllegalArgumentException("Expected a term, but found: " + currentToken);
     }
 
-    //This compiles the identifier term by determining if its a symbol, array or subroutine.
-    private void compileIdentifierTerm() {
+    //This parses the identifier term by determining if its a symbol, array or subroutine.
+    private Expression parseIdentifierTerm() {
         loadNextToken();
 
-        if(nextToken.matches("<symbol> (\\(|\\.) </symbol>"))
+        if(nextToken != null && (nextToken.isSymbol('(') || nextToken.isSymbol('.')))
         {
-            compileSubroutineCall();
+            return parseSubroutineCall();
         }
-        else
-        {
-            //Write varName or subroutineName
-            String varName = getTokenAndAdvance();
-            SymbolLine symbolLine = getSymbolLine(varName);
 
-            //Checks if this is an array and will compile if it is.
-            if(isArray())
-            {
-                setArrayLocation(symbolLine);
-                writeLine("pop pointer 1");
-                writeLine("push that 0");
-            }
-            else
-            {
-                writeLine(symbolLine.getPush());
-            }
+        //varName
+        String varName = getTokenAndAdvance();
+        Expression.Variable variable = getSymbolLine(varName).getVariable();
+
+        //Checks if this is an array and will parse the index if it is.
+        if(isArray())
+        {
+            //[
+            advanceToken();
+            Expression elementIndex = parseExpression();
+            //]
+            advanceToken();
+            return new Expression.ArrayElement(variable, elementIndex);
         }
+        return variable;
     }
 
-    //Write the keyword vm to output.
-    private void writeKeyword() {
-        String keyword = getTokenAndAdvance();
-        switch (keyword)
+    //Parse the keyword constants this, true, false and null.
+    private Expression parseKeyword() {
+        Token keyword = currentToken;
+        advanceToken();
+        switch (keyword.getValue())
         {
             case "this":
-                writeLine("push pointer 0");
-                break;
+                return new Expression.Variable(Segment.POINTER, 0);
             case "true":
-                writeLine("push constant 0");
-                writeLine("not");
-                break;
+                return Expression.trueConstant();
             case "false":
             case "null":
-                writeLine("push constant 0");
+                return Expression.constant(0);
+            default:
+                throw new IllegalArgumentException("Expected a term, but found: " + keyword);
         }
     }
 
     //Returns unaray ops in their vm code.
-    private String getUnarySymbol()
+    private ArithmeticCommand getUnarySymbol()
     {
         String symbol = getTokenAndAdvance();
         if(symbol.equals("-"))
         {
-            return "neg";
+            return ArithmeticCommand.NEG;
         }
         else
         {
-            return "not";
+            return ArithmeticCommand.NOT;
         }
     }
 
-    //Compiles a subroutine call.
-    private void compileSubroutineCall()
+    //Parses a subroutine call. For methods, the object is pushed as the first argument.
+    private Expression.Call parseSubroutineCall()
     {
-        String callStatement = "call ";
-        Integer argCount = 0;
+        String functionName;
+        List<Expression> arguments = new ArrayList<>();
+        Token callToken = currentToken;
+        String calledClass;
+        String subroutineName;
+        boolean onObject = true;
         //get identifier. This will be a subroutineName, varName or className
         String symbol = getTokenAndAdvance();
 
         //Checks if this is a subroutine called from a variable or class.
-        if(currentInputLine.equals("<symbol> . </symbol>"))
+        if(currentToken.isSymbol('.'))
         {
-            if(isSymbol(symbol))
+            SymbolLine symbolLine = findSymbolLine(symbol);
+            if(symbolLine != null)
             {
-                SymbolLine symbolLine = getSymbolLine(symbol);
-                writeLine(symbolLine.getPush());
+                arguments.add(symbolLine.getVariable());
                 symbol = symbolLine.getType();
-                argCount++;
             }
-            callStatement += symbol;
+            else
+            {
+                onObject = false;
+            }
 
-            //Write symbol .
-            callStatement += getTokenAndAdvance();
+            //Skip symbol .
+            advanceToken();
             //write subroutineName
-            callStatement += getTokenAndAdvance();
+            calledClass = symbol;
+            subroutineName = getTokenAndAdvance();
+            functionName = symbol + "." + subroutineName;
         }
         else
         {
-            callStatement += getSubroutineName(symbol);
-            writeLine("push pointer 0");
-            argCount++;
+            calledClass = className;
+            subroutineName = symbol;
+            functionName = getSubroutineName(symbol);
+            arguments.add(new Expression.Variable(Segment.POINTER, 0));
         }
 
-        validateSymbolAndAdvance("(");
-        argCount += compileExpressionList();
-        validateSymbolAndAdvance(")");
+        validateSymbolAndAdvance('(');
+        parseExpressionList(arguments);
+        validateSymbolAndAdvance(')');
 
-        callStatement += " " + argCount.toString();
-        writeLine(callStatement);
+        if(classIndex != null)
+        {
+            checkCall(calledClass, subroutineName, onObject, arguments.size(), callToken);
+        }
+        return new Expression.Call(functionName, arguments);
     }
 
+    //Checks a call against the class index: the subroutine must exist, methods must be called on an object and
+    //functions and constructors on their class, and the number of arguments must match. Calls to classes that aren't
+    //in the index aren't checked. A call without a class or object is a call on this, and since a function without
+    //parameters just ignores the object, calling one of this class's functions that way is still allowed.
+    private void checkCall(String calledClass, String subroutineName, boolean onObject, int vmArgumentCount,
+                           Token callToken)
+    {
+        ClassSignature signature = classIndex.getClass(calledClass);
+        if(signature == null)
+            return;
 
+        String name = calledClass + "." + subroutineName;
+        ClassSignature.Subroutine subroutine = signature.getSubroutine(subroutineName);
+        if(subroutine == null)
+            throw new IllegalArgumentException("No subroutine found named: " + name + " on line "
+                    + callToken.getLineNumber());
+        if(!subroutine.isMethod() && calledClass.equals(className) && onObject
+                && subroutine.getParameterTypes().isEmpty() && vmArgumentCount == 1)
+            return;
+        if(subroutine.isMethod() != onObject)
+            throw new IllegalArgumentException(name + " is a " + subroutine.getKind() + ", but it is called "
+                    + (onObject ? "on an object" : "on its class") + " on line " + callToken.getLineNumber());
+        if(subroutine.getVmArgumentCount() != vmArgumentCount)
+        {
+            int argumentCount = onObject ? vmArgumentCount - 1 : vmArgumentCount;
+            throw new IllegalArgumentException(name + " takes " + subroutine.getParameterTypes().size()
+                    + " arguments, but it is called with " + argumentCount + " on line "
+                    + callToken.getLineNumber());
+        }
+    }
 
-    //Throws an error if unexpected symbol is in next line
-    private void validateSymbolAndAdvance(String symbol)
+
+
+    //Throws an error if unexpected symbol is in the current token
+    private void validateSymbolAndAdvance(char symbol)
     {
-        if(!currentInputLine.equals("<symbol> " + symbol + " </symbol>"))
-            throw new IllegalArgumentException("Unexpected Symbol. Expected: " + symbol + ", but found: " + currentInputLine);
+        if(currentToken == null || !currentToken.isSymbol(symbol))
+            throw new IllegalArgumentException("Unexpected Symbol. Expected: " + symbol + ", but found: " + currentToken);
         advanceToken();
     }
     
-    //Compiles an expressionList
-    private int compileExpressionList()
+    //Parses an expressionList, adding each expression to the arguments
+    private void parseExpressionList(List<Expression> arguments)
     {
-        int countOfArguments = 0;
-        if(!currentInputLine.equals("<symbol> ) </symbol>"))
+        if(!currentToken.isSymbol(')'))
         {
-            countOfArguments++;
-            compileExpression();
-            //If this is not the end of the list, continue writing commas and expressions
-            //until the current line is a )
-            while(!currentInputLine.equals("<symbol> ) </symbol>"))
+            arguments.add(parseExpression());
+            //If this is not the end of the list, continue parsing commas and expressions
+            //until the current token is a )
+            while(!currentToken.isSymbol(')'))
             {
-                countOfArguments++;
                 //advance past comma
                 advanceToken();
-                compileExpression();
+                arguments.add(parseExpression());
             }
 
         }
-        return countOfArguments;
     }
 
     //Adds comma delimited lists to the symbol table
     private void writeCommaDelimitedList(String type, String kind)
     {
-        while(currentInputLine.contains(","))
+        while(currentToken.isSymbol(','))
         {
-            //advance past the symbol comma line
+            //advance past the symbol comma
             advanceToken();
             //add var to symbol table and advance
             addSymbolToTable(type, kind);
@@ -661,9 +759,9 @@ class Compiler {
 
     //Adds comma delimited lists to the symbol table for parameter lists.
     private void writeCommaDelimitedList(String kind) {
-        while(currentInputLine.contains(","))
+        while(currentToken.isSymbol(','))
         {
-            //write the symbol comma line, the varType, and the var name.
+            //write the symbol comma, the varType, and the var name.
             advanceToken();
             //varType
             String type = getTokenAndAdvance();
@@ -674,7 +772,7 @@ class Compiler {
 
     //Adds a symbol to the symbol table.
     private void addSymbolToTable(String type, String kind) {
-        symbolTables.getLast().addLine(currentInputLine, type, kind);
+        symbolTables.getLast().addLine(currentToken.getValue(), type, kind);
         advanceToken();
     }
 
@@ -683,21 +781,24 @@ class Compiler {
         symbolTables.getLast().addLine("this", className, "argument");
     }
 
-    //Look at line and strip out tags.
-    static String getTokenFromLine(String line) {
-        Matcher tokenMatcher = tokenPattern.matcher(line);
-        //Return token.
-        if (tokenMatcher.find()) {
-            return tokenMatcher.group(1);
+    //Returns the value of the current integer constant. Jack integers must fit in 0 to 32767.
+    private int getIntegerConstantAndAdvance()
+    {
+        String digits = currentToken.getValue();
+        int value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            value = value * 10 + (digits.charAt(i) - '0');
+            if(value > 32767)
+                throw new IllegalArgumentException("Integer constant out of range: " + currentToken);
         }
-
-        return line;
+        advanceToken();
+        return value;
     }
 
-    //Returns the current token.
+    //Returns the value of the current token.
     private String getTokenAndAdvance()
     {
-        String token = getTokenFromLine(currentInputLine);
+        String token = currentToken.getValue();
         advanceToken();
         return token;
     }
@@ -705,67 +806,36 @@ class Compiler {
     //Gets the subroutine name with the class name appended.
     private String getSubroutineName(String subroutineName)
     {
-        String strippedSubroutineName = className + "." + getTokenFromLine(subroutineName);
+        String strippedSubroutineName = className + "." + subroutineName;
         return strippedSubroutineName;
     }
 
     //Gets the subroutine name with the class name appended.
     private String getSubroutineNameAndAdvance(String subroutineName)
     {
-        String strippedSubroutineName = className + "." + getTokenFromLine(subroutineName);
+        String strippedSubroutineName = className + "." + subroutineName;
         advanceToken();
         return strippedSubroutineName;
     }
 
-    //Searches symbolTable for symbolLine
+    //Searches symbolTable for symbolLine, and throws if the symbol isn't declared.
     private SymbolLine getSymbolLine(String varName)
     {
-        SymbolTable table = symbolTables.getLast();
-
-        //Check current scope
-        if(table.hasSymbol(varName))
-            return table.getLine(varName);
-
-        //Check class scope
-        table = symbolTables.getFirst();
-        if(table.hasSymbol(varName))
-            return table.getLine(varName);
-
-        throw new IllegalArgumentException("No symbol found named: " + varName);
+        SymbolLine symbolLine = findSymbolLine(varName);
+        if(symbolLine == null)
+            throw new IllegalArgumentException("No symbol found named: " + varName);
+        return symbolLine;
     }
 
-    //Searches symbolTable for symbolLine
-    private boolean isSymbol(String varName)
+    //Searches the current scope, then the class scope, for symbolLine. Returns null if the symbol isn't declared.
+    private SymbolLine findSymbolLine(String varName)
     {
-        SymbolTable table = symbolTables.getLast();
-
         //Check current scope
-        if(table.hasSymbol(varName))
-            return true;
+        SymbolLine symbolLine = symbolTables.getLast().getLine(varName);
+        if(symbolLine != null)
+            return symbolLine;
 
         //Check class scope
-        table = symbolTables.getFirst();
-        if(table.hasSymbol(varName))
-            return true;
-
-        return false;
-    }
-
-    //Constructs a string if a stringConstant is found.
-    private void writeStringConstruction()
-    {
-        String stringConstant = getTokenAndAdvance();
-        stringConstant = stringConstant.replace("\"", "");
-        Integer stringLen = stringConstant.length();
-        if(stringLen > 0) {
-            writeLine("push constant " + stringLen.toString());
-            writeLine("call String.new 1");
-            for (char character : stringConstant.toCharArray()) {
-                Integer charNum = (int) character;
-                writeLine("push constant " + charNum.toString());
-                writeLine("call String.appendChar 2");
-            }
-        }
+        return symbolTables.getFirst().getLine(varName);
     }
 }
-
@@ -0,0 +1,356 @@
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This stores the command line options for a compile run. Any argument starting with "--" is treated as a flag and
+ * the first remaining argument is used as the input path.
+ */
+class CompilerOptions {
+
+    static final String DEBUG_TOKENS_FLAG = "--debug-tokens";
+    static final String JOBS_FLAG = "--jobs";
+    static final String INCREMENTAL_FLAG = "--incremental";
+    static final String WATCH_FLAG = "--watch";
+    static final String PEEPHOLE_FLAG = "--peephole";
+    static final String DISABLE_RULE_FLAG = "--disable-rule";
+    static final String SHARE_STRINGS_FLAG = "--share-strings";
+    static final String STRENGTH_REDUCE_FLAG = "--strength-reduce";
+    static final String MULTIPLY_BUDGET_FLAG = "--multiply-budget";
+    static final String STATS_FLAG = "--stats";
+    static final String WHOLE_PROGRAM_FLAG = "--whole-program";
+    static final String INLINE_FLAG = "--inline";
+    static final String INLINE_BUDGET_FLAG = "--inline-budget";
+    static final String PIPELINE_FLAG = "--pipeline";
+    static final String PIPELINE_QUEUE_FLAG = "--pipeline-queue";
+    static final String SERVE_FLAG = "--serve";
+    static final String SERVE_THREADS_FLAG = "--serve-threads";
+    static final String SERVE_QUEUE_FLAG = "--serve-queue";
+    static final String SERVE_TIMEOUT_FLAG = "--serve-timeout";
+    static final String ZIP_OUTPUT_FLAG = "--zip-output";
+    static final String RECURSIVE_FLAG = "--recursive";
+    static final String INCLUDE_FLAG = "--include";
+    static final String EXCLUDE_FLAG = "--exclude";
+    static final String ASM_FLAG = "--asm";
+    static final int DEFAULT_MULTIPLY_BUDGET = 24;
+
+    private String inputPath = null;
+    private boolean debugTokens = false;
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private boolean incremental = false;
+    private boolean watch = false;
+    private boolean peephole = false;
+    private Set<PeepholeRule> peepholeRules = EnumSet.allOf(PeepholeRule.class);
+    private boolean shareStrings = false;
+    private boolean strengthReduce = false;
+    private int multiplyBudget = DEFAULT_MULTIPLY_BUDGET;
+    private boolean stats = false;
+    private boolean wholeProgram = false;
+    private boolean inline = false;
+    private int inlineBudget = Inliner.DEFAULT_BUDGET;
+    private boolean pipeline = false;
+    private int pipelineQueue = TokenPipeline.DEFAULT_QUEUE_BATCHES;
+    private int servePort = -1;
+    private int serveThreads = CompileServer.DEFAULT_THREADS;
+    private int serveQueue = CompileServer.DEFAULT_QUEUE;
+    private long serveTimeoutMillis = CompileServer.DEFAULT_TIMEOUT_MILLIS;
+    private String zipOutputPath = null;
+    private boolean recursive = false;
+    private List<String> includeGlobs = new ArrayList<>();
+    private List<String> excludeGlobs = new ArrayList<>();
+    private boolean asm = false;
+
+    //Parses the command line arguments into the options.
+    static CompilerOptions parse(String[] args)
+    {
+        CompilerOptions options = new CompilerOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals(DEBUG_TOKENS_FLAG)) {
+                options.debugTokens = true;
+            }
+            else if (arg.equals(INCREMENTAL_FLAG)) {
+                options.incremental = true;
+            }
+            else if (arg.equals(WATCH_FLAG)) {
+                options.watch = true;
+                options.inputPath = getValue(args, ++i, arg);
+            }
+            else if (arg.equals(PEEPHOLE_FLAG)) {
+                options.peephole = true;
+            }
+            else if (arg.equals(DISABLE_RULE_FLAG)) {
+                options.peepholeRules.remove(PeepholeRule.fromRuleName(getValue(args, ++i, arg)));
+            }
+            else if (arg.equals(SHARE_STRINGS_FLAG)) {
+                options.shareStrings = true;
+            }
+            else if (arg.equals(STRENGTH_REDUCE_FLAG)) {
+                options.strengthReduce = true;
+            }
+            else if (arg.equals(MULTIPLY_BUDGET_FLAG)) {
+                options.multiplyBudget = parseNonNegativeInt(arg, getValue(args, ++i, arg));
+            }
+            else if (arg.equals(WHOLE_PROGRAM_FLAG)) {
+                options.wholeProgram = true;
+            }
+            else if (arg.equals(INLINE_FLAG)) {
+                options.inline = true;
+            }
+            else if (arg.equals(INLINE_BUDGET_FLAG)) {
+                options.inlineBudget = parsePositiveInt(arg, getValue(args, ++i, arg));
+            }
+            else if (arg.equals(PIPELINE_FLAG)) {
+                options.pipeline = true;
+            }
+            else if (arg.equals(PIPELINE_QUEUE_FLAG)) {
+                options.pipelineQueue = parsePositiveInt(arg, getValue(args, ++i, arg));
+            }
+            else if (arg.equals(SERVE_FLAG)) {
+                options.servePort = parseNonNegativeInt(arg, getValue(args, ++i, arg));
+            }
+            else if (arg.equals(SERVE_THREADS_FLAG)) {
+                options.serveThreads = parsePositiveInt(arg, getValue(args, ++i, arg));
+            }
+            else if (arg.equals(SERVE_QUEUE_FLAG)) {
+                options.serveQueue = parsePositiveInt(arg, getValue(args, ++i, arg));
+            }
+            else if (arg.equals(SERVE_TIMEOUT_FLAG)) {
+                options.serveTimeoutMillis = parsePositiveInt(arg, getValue(args, ++i, arg));
+            }
+            else if (arg.equals(ZIP_OUTPUT_FLAG)) {
+                options.zipOutputPath = getValue(args, ++i, arg);
+            }
+            else if (arg.equals(RECURSIVE_FLAG)) {
+                options.recursive = true;
+            }
+            else if (arg.equals(INCLUDE_FLAG)) {
+                options.includeGlobs.add(getValue(args, ++i, arg));
+            }
+            else if (arg.equals(EXCLUDE_FLAG)) {
+                options.excludeGlobs.add(getValue(args, ++i, arg));
+            }
+            else if (arg.equals(ASM_FLAG)) {
+                options.asm = true;
+            }
+            else if (arg.equals(STATS_FLAG)) {
+                options.stats = true;
+            }
+            else if (arg.equals(JOBS_FLAG)) {
+                options.jobs = parsePositiveInt(arg, getValue(args, ++i, arg));
+            }
+            else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            else if (options.inputPath == null) {
+                options.inputPath = arg;
+            }
+        }
+        if (options.watch && options.recursive) {
+            throw new IllegalArgumentException(WATCH_FLAG + " only watches one folder, so it can't be used with "
+                    + RECURSIVE_FLAG);
+        }
+        if (!options.recursive && (!options.includeGlobs.isEmpty() || !options.excludeGlobs.isEmpty())) {
+            throw new IllegalArgumentException(INCLUDE_FLAG + " and " + EXCLUDE_FLAG + " need " + RECURSIVE_FLAG);
+        }
+        if (options.asm && (options.watch || options.incremental)) {
+            throw new IllegalArgumentException(ASM_FLAG + " writes the whole program each time, so it can't be used with "
+                    + WATCH_FLAG + " or " + INCREMENTAL_FLAG);
+        }
+        return options;
+    }
+
+    //Returns the value following a flag, or throws if the flag is the last argument.
+    private static String getValue(String[] args, int index, String flag)
+    {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for option: " + flag);
+        }
+        return args[index];
+    }
+
+    //Parses the value of a flag that must be a number greater than 0.
+    private static int parsePositiveInt(String flag, String value)
+    {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            //Falls through to the error below.
+        }
+        throw new IllegalArgumentException("Expected a number greater than 0 for " + flag + ", but found: " + value);
+    }
+
+    //Parses the value of a flag that must be a number of at least 0.
+    private static int parseNonNegativeInt(String flag, String value)
+    {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            //Falls through to the error below.
+        }
+        throw new IllegalArgumentException("Expected a number of at least 0 for " + flag + ", but found: " + value);
+    }
+
+    //Getters
+    String getInputPath() {
+        return inputPath;
+    }
+
+    //Returns true if the token xml files should be written next to the output for debugging.
+    boolean isDebugTokens() {
+        return debugTokens;
+    }
+
+    //Returns the number of files compiled at the same time.
+    int getJobs() {
+        return jobs;
+    }
+
+    //Returns true if unchanged files should be skipped using the build manifest.
+    boolean isIncremental() {
+        return incremental;
+    }
+
+    //Returns true if the compiler should stay running and recompile jack files as they change.
+    boolean isWatch() {
+        return watch;
+    }
+
+    //Returns true if the peephole optimizer should run on the vm code before it's written.
+    boolean isPeephole() {
+        return peephole;
+    }
+
+    //Returns the peephole rules that haven't been switched off.
+    Set<PeepholeRule> getPeepholeRules() {
+        return peepholeRules;
+    }
+
+    //Returns true if each string literal in a class should be built once and reused.
+    boolean isShareStrings() {
+        return shareStrings;
+    }
+
+    //Returns true if multiplications and divisions by constants should be replaced by cheaper code.
+    boolean isStrengthReduce() {
+        return strengthReduce;
+    }
+
+    //Returns the most instructions a multiplication by a constant may add over calling Math.multiply.
+    int getMultiplyBudget() {
+        return multiplyBudget;
+    }
+
+    //Returns true if a summary of the time and sizes for each file should be printed after compiling.
+    boolean isStats() {
+        return stats;
+    }
+
+    //Returns true if every file should be compiled before any is written, so functions that the program can't call
+    //can be left out.
+    boolean isWholeProgram() {
+        return wholeProgram;
+    }
+
+    //Returns true if calls to small functions that make no calls should be replaced by their body.
+    boolean isInline() {
+        return inline;
+    }
+
+    //Returns the most vm instructions a function's body may have to be inlined.
+    int getInlineBudget() {
+        return inlineBudget;
+    }
+
+    //Returns true if each file should be tokenized on its own thread while it's compiled.
+    boolean isPipeline() {
+        return pipeline;
+    }
+
+    //Returns the most batches of tokens the lexing thread may get ahead of the compiler.
+    int getPipelineQueue() {
+        return pipelineQueue;
+    }
+
+    //Returns true if the compiler should run as a compile server instead of compiling a path.
+    boolean isServe() {
+        return servePort >= 0;
+    }
+
+    //Returns the port the compile server listens on, or 0 for any free port.
+    int getServePort() {
+        return servePort;
+    }
+
+    //Returns the number of requests the compile server compiles at the same time.
+    int getServeThreads() {
+        return serveThreads;
+    }
+
+    //Returns the number of requests the compile server queues before turning them away.
+    int getServeQueue() {
+        return serveQueue;
+    }
+
+    //Returns how long the compile server gives a request, including its time in the queue.
+    long getServeTimeoutMillis() {
+        return serveTimeoutMillis;
+    }
+
+    //Returns the archive to write the vm files to when compiling an archive, or null to write it next to the input.
+    String getZipOutputPath() {
+        return zipOutputPath;
+    }
+
+    //Returns true if the jack files in every folder below the input folder are compiled too.
+    boolean isRecursive() {
+        return recursive;
+    }
+
+    //Returns the globs a jack file must match one of to be compiled, or an empty list to compile them all.
+    List<String> getIncludeGlobs() {
+        return includeGlobs;
+    }
+
+    //Returns the globs of the jack files and folders that are left out.
+    List<String> getExcludeGlobs() {
+        return excludeGlobs;
+    }
+
+    //Returns true if the program is written as one Hack assembly file instead of a vm file per class.
+    boolean isAsm() {
+        return asm;
+    }
+
+    //Returns the options that change the vm code written for the same source. This is saved in the build manifest, so
+    //changing any of them recompiles every file.
+    String getOutputSettings() {
+        StringBuilder settings = new StringBuilder();
+        if (shareStrings) {
+            settings.append("share-strings ");
+        }
+        if (wholeProgram) {
+            settings.append("whole-program ");
+        }
+        if (inline) {
+            settings.append("inline ").append(inlineBudget).append(' ');
+        }
+        if (strengthReduce) {
+            settings.append("strength-reduce ").append(multiplyBudget).append(' ');
+        }
+        if (peephole) {
+            settings.append("peephole");
+            for (PeepholeRule rule : peepholeRules) {
+                settings.append(' ').append(rule.getRuleName());
+            }
+        }
+        return settings.toString().trim();
+    }
+}
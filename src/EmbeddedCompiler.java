@@ -0,0 +1,235 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This compiles jack source held in memory, for programs that run the compiler inside their own JVM, such as a build
+ * server. It doesn't read or write files, prompt on the console or exit, and errors come back as diagnostics in the
+ * result instead of being thrown. Each call compiles on the calling thread with its own compiler state, so one
+ * instance can be used by many threads at once.
+ *
+ * Like the rest of the compiler it's in the default package, so it can only be used by code in the default package or
+ * through reflection. The options are the same flags the command line takes, except those about files. --jobs is
+ * ignored, since each call compiles on the calling thread.
+ */
+public final class EmbeddedCompiler {
+
+    private final CompilerOptions options;
+    private final PeepholeOptimizer peepholeOptimizer;
+    private final Inliner inliner;
+
+    //Each thread reuses its own text buffer for every file it writes.
+    private static final ThreadLocal<VmEmitter> emitters = ThreadLocal.withInitial(VmEmitter::new);
+
+    //Makes a compiler with the given command line flags, such as --peephole. Throws if a flag is unknown or is about
+    //files, which the embedded compiler doesn't use.
+    public EmbeddedCompiler(String... flags) {
+        this(CompilerOptions.parse(flags));
+        if (options.getInputPath() != null) {
+            throw new IllegalArgumentException("The embedded compiler doesn't take a path: " + options.getInputPath());
+        }
+    }
+
+    //Makes a compiler with options already parsed. The input path isn't used.
+    EmbeddedCompiler(CompilerOptions options) {
+        this.options = options;
+        if (options.isWatch() || options.isIncremental() || options.isDebugTokens() || options.isStats()
+                || options.isAsm()) {
+            throw new IllegalArgumentException("The embedded compiler doesn't use files, so it can't take "
+                    + CompilerOptions.WATCH_FLAG + ", " + CompilerOptions.INCREMENTAL_FLAG + ", "
+                    + CompilerOptions.DEBUG_TOKENS_FLAG + ", " + CompilerOptions.STATS_FLAG + " or "
+                    + CompilerOptions.ASM_FLAG);
+        }
+        peepholeOptimizer = options.isPeephole() ? new PeepholeOptimizer(options.getPeepholeRules()) : null;
+        inliner = options.isInline() ? new Inliner(options.getInlineBudget()) : null;
+    }
+
+    //Compiles one class. The name is used for its diagnostics and vm file, such as Main.jack for Main.vm.
+    public Result compile(String name, CharSequence source) {
+        return compile(Collections.singletonMap(name, source));
+    }
+
+    //Compiles the sources by name, and keeps the text of each vm file in the result.
+    public Result compile(Map<String, ? extends CharSequence> sources) {
+        Map<String, byte[]> vmFiles = new LinkedHashMap<>();
+        Result result = compile(sources, (vmFileName) -> new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                vmFiles.put(vmFileName, toByteArray());
+            }
+        });
+        return new Result(result.diagnostics, vmFiles);
+    }
+
+    //Compiles the sources by name, writing each vm file to a stream opened from the sink and closing it. The sources
+    //are compiled as one program: calls are checked against the classes in the batch, and with --whole-program
+    //nothing is written unless every class compiles.
+    public Result compile(Map<String, ? extends CharSequence> sources, OutputSink sink) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        ClassIndex classIndex = ClassIndex.of(sources);
+        List<String> names = new ArrayList<>();
+        List<VmCode> codes = new ArrayList<>();
+        for (Map.Entry<String, ? extends CharSequence> source : sources.entrySet()) {
+            VmCode code = compileClass(source.getKey(), source.getValue(), classIndex, diagnostics);
+            if (code != null) {
+                names.add(source.getKey());
+                codes.add(code);
+            }
+        }
+
+        if (options.isWholeProgram()) {
+            if (!diagnostics.isEmpty()) {
+                return new Result(diagnostics, null);
+            }
+            if (inliner != null) {
+                inliner.inline(codes);
+            }
+            new VmProgram(codes).removeUnreachable();
+        }
+
+        VmEmitter vm = emitters.get();
+        for (int i = 0; i < codes.size(); i++) {
+            vm.reset();
+            codes.get(i).writeTo(vm);
+            try (OutputStream stream = sink.open(getVmFileName(names.get(i)))) {
+                vm.writeTo(stream);
+            } catch (IOException | RuntimeException e) {
+                diagnostics.add(new Diagnostic(names.get(i), 0, "Couldn't write the vm code: " + e.getMessage()));
+            }
+        }
+        return new Result(diagnostics, null);
+    }
+
+    //Compiles one class, returning its code, or null after adding a diagnostic if it failed.
+    private VmCode compileClass(String name, CharSequence source, ClassIndex classIndex,
+                                List<Diagnostic> diagnostics) {
+        VmCode code = new VmCode();
+        Tokenizer tokenizer = new Tokenizer(source);
+        TokenPipeline pipeline = options.isPipeline()
+                ? new TokenPipeline(tokenizer, options.getPipelineQueue()) : null;
+        Compiler compiler = new Compiler(code, pipeline != null ? pipeline : tokenizer, options, classIndex);
+        try {
+            compiler.compileClass();
+        } catch (RuntimeException e) {
+            diagnostics.add(new Diagnostic(name, compiler.getLineNumber(), e.getMessage()));
+            return null;
+        } catch (StackOverflowError e) {
+            diagnostics.add(new Diagnostic(name, compiler.getLineNumber(), "Nested too deeply to compile"));
+            return null;
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
+            }
+        }
+
+        if (inliner != null && !options.isWholeProgram()) {
+            inliner.inline(code);
+        }
+        if (peepholeOptimizer != null) {
+            peepholeOptimizer.optimize(code);
+        }
+        return code;
+    }
+
+    //Returns the peephole report, or null if the optimizer isn't on.
+    String getPeepholeReport() {
+        return peepholeOptimizer == null ? null : peepholeOptimizer.getReport();
+    }
+
+    //Returns how many calls were inlined, or null if inlining isn't on.
+    String getInlineReport() {
+        return inliner == null ? null : inliner.getReport();
+    }
+
+    //Returns the vm file name for a source name, such as Main.vm for Main.jack.
+    static String getVmFileName(String name) {
+        String baseName = name.endsWith(JackCompiler.IN_EXTENSION)
+                ? name.substring(0, name.length() - JackCompiler.IN_EXTENSION.length()) : name;
+        return baseName + JackCompiler.OUT_EXTENSION;
+    }
+
+    /**
+     * This opens the stream each vm file is written to. The compiler closes the stream after writing the file.
+     */
+    public interface OutputSink {
+        OutputStream open(String vmFileName) throws IOException;
+    }
+
+    /**
+     * This is an error found compiling one source, with the line it was found near, or 0 if it isn't known.
+     */
+    public static final class Diagnostic {
+        private final String sourceName;
+        private final int line;
+        private final String message;
+
+        Diagnostic(String sourceName, int line, String message) {
+            this.sourceName = sourceName;
+            this.line = line;
+            this.message = message;
+        }
+
+        public String getSourceName() {
+            return sourceName;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return sourceName + ":" + line + ": " + message;
+        }
+    }
+
+    /**
+     * This is what a compile produced: the diagnostics, and the text of each vm file by file name unless the files
+     * were written to a sink.
+     */
+    public static final class Result {
+        private final List<Diagnostic> diagnostics;
+        private final Map<String, byte[]> vmFiles;
+
+        Result(List<Diagnostic> diagnostics, Map<String, byte[]> vmFiles) {
+            this.diagnostics = Collections.unmodifiableList(diagnostics);
+            this.vmFiles = vmFiles == null ? Collections.emptyMap() : Collections.unmodifiableMap(vmFiles);
+        }
+
+        //Returns true if every source compiled.
+        public boolean isSuccess() {
+            return diagnostics.isEmpty();
+        }
+
+        public List<Diagnostic> getDiagnostics() {
+            return diagnostics;
+        }
+
+        //Returns the vm file names, in the order of the sources.
+        public List<String> getVmFileNames() {
+            return new ArrayList<>(vmFiles.keySet());
+        }
+
+        //Returns the vm code written for the file as ASCII bytes, or null if there isn't one.
+        public byte[] getVmBytes(String vmFileName) {
+            byte[] bytes = vmFiles.get(vmFileName);
+            return bytes == null ? null : bytes.clone();
+        }
+
+        //Returns the vm code written for the file as text, or null if there isn't one.
+        public String getVmText(String vmFileName) {
+            byte[] bytes = vmFiles.get(vmFileName);
+            return bytes == null ? null : new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,494 @@
+import java.util.List;
+
+/**
+ * This is a node in the tree built for each expression before any vm code is written for it. The factory methods fold
+ * constant subexpressions as they build the tree, using Jack's 16-bit wraparound arithmetic, so only the folded
+ * result is written.
+ */
+abstract class Expression {
+
+    //Writes the vm code that leaves the value of this expression on the stack.
+    abstract void write(VmCode vm);
+
+    //Returns true if the value is known at compile time.
+    boolean isConstant() {
+        return false;
+    }
+
+    //Returns the value of a constant expression.
+    int getValue() {
+        throw new IllegalStateException("Not a constant expression.");
+    }
+
+    //Returns true if writing the expression could do more than leave its value on the stack, such as calling a
+    //subroutine or allocating a string.
+    boolean hasSideEffects() {
+        return false;
+    }
+
+    //Returns the expression with multiplications and divisions by constants replaced by cheaper code. A multiplication
+    //is only turned into additions if it takes at most budget more instructions than calling Math.multiply.
+    Expression reduceStrength(int budget) {
+        return this;
+    }
+
+    //Returns an integer constant, or the value of true, false or null.
+    static Expression constant(int value) {
+        return new Constant(value, false);
+    }
+
+    //Returns the constant for the keyword true, which is written as not 0 like before.
+    static Expression trueConstant() {
+        return new Constant(-1, true);
+    }
+
+    //Returns the expression for a unary operator, folding it if the operand is a constant.
+    static Expression unary(ArithmeticCommand command, Expression operand) {
+        if (operand.isConstant()) {
+            int value = operand.getValue();
+            return constant(command == ArithmeticCommand.NEG ? wrap(-value) : wrap(~value));
+        }
+        return new Unary(command, operand);
+    }
+
+    //Returns the expression for a binary operator. Two constants are folded into one. A chain like (x + 2) - 3, where
+    //both operators add or subtract, or both are the same *, & or |, also has its constants combined.
+    static Expression binary(char operator, Expression left, Expression right) {
+        if (left.isConstant() && right.isConstant() && canFold(operator, left.getValue(), right.getValue())) {
+            return constant(fold(operator, left.getValue(), right.getValue()));
+        }
+
+        if (right.isConstant() && left instanceof Binary && ((Binary) left).right.isConstant()) {
+            Binary inner = (Binary) left;
+            int innerValue = inner.right.getValue();
+            int value = right.getValue();
+            if (isAdditive(operator) && isAdditive(inner.operator)) {
+                int sum = wrap((inner.operator == '-' ? -innerValue : innerValue) + (operator == '-' ? -value : value));
+                return addConstant(inner.left, sum);
+            }
+            if (operator == inner.operator && (operator == '*' || operator == '&' || operator == '|')) {
+                return new Binary(operator, inner.left, constant(fold(operator, innerValue, value)));
+            }
+        }
+        return new Binary(operator, left, right);
+    }
+
+    //Returns the expression plus the constant, written as a subtraction if the constant is negative.
+    private static Expression addConstant(Expression expression, int value) {
+        if (value == 0) {
+            return expression;
+        }
+        if (value < 0 && value != Short.MIN_VALUE) {
+            return new Binary('-', expression, constant(-value));
+        }
+        return new Binary('+', expression, constant(value));
+    }
+
+    private static boolean isAdditive(char operator) {
+        return operator == '+' || operator == '-';
+    }
+
+    //Division is left to Math.divide at run time when it would divide by 0 or overflow.
+    private static boolean canFold(char operator, int left, int right) {
+        return operator != '/' || (right != 0 && left != Short.MIN_VALUE && right != Short.MIN_VALUE);
+    }
+
+    //Applies the operator to two 16-bit values. Comparisons return -1 for true and 0 for false.
+    private static int fold(char operator, int left, int right) {
+        switch (operator) {
+            case '+':
+                return wrap(left + right);
+            case '-':
+                return wrap(left - right);
+            case '*':
+                return wrap(left * right);
+            case '/':
+                return wrap(left / right);
+            case '&':
+                return left & right;
+            case '|':
+                return left | right;
+            case '<':
+                return left < right ? -1 : 0;
+            case '>':
+                return left > right ? -1 : 0;
+            case '=':
+                return left == right ? -1 : 0;
+            default:
+                throw new IllegalArgumentException("Operator not found. " + operator);
+        }
+    }
+
+    //Wraps the value to a signed 16-bit integer like the Hack platform.
+    private static int wrap(int value) {
+        return (short) value;
+    }
+
+    /**
+     * This is a value known at compile time.
+     */
+    static class Constant extends Expression {
+        private final int value;
+        private final boolean isTrueKeyword;
+
+        Constant(int value, boolean isTrueKeyword) {
+            this.value = value;
+            this.isTrueKeyword = isTrueKeyword;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+
+        @Override
+        int getValue() {
+            return value;
+        }
+
+        //The vm can only push 0 to 32767, so negative values are pushed as positive and negated.
+        @Override
+        void write(VmCode vm) {
+            if (isTrueKeyword) {
+                vm.writePush(Segment.CONSTANT, 0);
+                vm.writeArithmetic(ArithmeticCommand.NOT);
+            } else if (value >= 0) {
+                vm.writePush(Segment.CONSTANT, value);
+            } else if (value != Short.MIN_VALUE) {
+                vm.writePush(Segment.CONSTANT, -value);
+                vm.writeArithmetic(ArithmeticCommand.NEG);
+            } else {
+                vm.writePush(Segment.CONSTANT, Short.MAX_VALUE);
+                vm.writeArithmetic(ArithmeticCommand.NEG);
+                vm.writePush(Segment.CONSTANT, 1);
+                vm.writeArithmetic(ArithmeticCommand.SUB);
+            }
+        }
+    }
+
+    /**
+     * This is a string constant, which is built with String.new and String.appendChar.
+     */
+    static class StringConstant extends Expression {
+        private final String text;
+
+        StringConstant(String text) {
+            this.text = text;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return true;
+        }
+
+        //Returns the number of instructions written to build the text.
+        static int instructionCount(String text) {
+            return text.isEmpty() ? 0 : 2 + 2 * text.length();
+        }
+
+        @Override
+        void write(VmCode vm) {
+            int stringLen = text.length();
+            if (stringLen > 0) {
+                vm.writePush(Segment.CONSTANT, stringLen);
+                vm.writeCall("String.new", 1);
+                for (int i = 0; i < stringLen; i++) {
+                    vm.writePush(Segment.CONSTANT, text.charAt(i));
+                    vm.writeCall("String.appendChar", 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * This is a string literal that is built once and kept in a hidden static. The first time it's used, the static
+     * is 0 (null), so the class's generated function for the literal is called to build it.
+     */
+    static class SharedString extends Expression {
+        private final int staticIndex;
+        private final String builderName;
+        private final int readyLabel;
+
+        SharedString(int staticIndex, String builderName, int readyLabel) {
+            this.staticIndex = staticIndex;
+            this.builderName = builderName;
+            this.readyLabel = readyLabel;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return true;
+        }
+
+        @Override
+        void write(VmCode vm) {
+            vm.writePush(Segment.STATIC, staticIndex);
+            vm.writeIf(StringLiteralTable.READY_LABEL, readyLabel);
+            vm.writeCall(builderName, 0);
+            vm.writePop(Segment.STATIC, staticIndex);
+            vm.writeLabel(StringLiteralTable.READY_LABEL, readyLabel);
+            vm.writePush(Segment.STATIC, staticIndex);
+        }
+    }
+
+    /**
+     * This is a variable, or the current object when the segment is pointer 0.
+     */
+    static class Variable extends Expression {
+        private final VmInstruction push;
+
+        Variable(Segment segment, int index) {
+            this.push = VmInstruction.push(segment, index);
+        }
+
+        @Override
+        void write(VmCode vm) {
+            vm.write(push);
+        }
+    }
+
+    /**
+     * This is an element of an array variable.
+     */
+    static class ArrayElement extends Expression {
+        private final Variable array;
+        private final Expression elementIndex;
+
+        ArrayElement(Variable array, Expression elementIndex) {
+            this.array = array;
+            this.elementIndex = elementIndex;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return elementIndex.hasSideEffects();
+        }
+
+        @Override
+        void write(VmCode vm) {
+            elementIndex.write(vm);
+            array.write(vm);
+            vm.writeArithmetic(ArithmeticCommand.ADD);
+            vm.writePop(Segment.POINTER, 1);
+            vm.writePush(Segment.THAT, 0);
+        }
+    }
+
+    /**
+     * This is a unary operator applied to an expression that isn't constant.
+     */
+    static class Unary extends Expression {
+        private final ArithmeticCommand command;
+        private final Expression operand;
+
+        Unary(ArithmeticCommand command, Expression operand) {
+            this.command = command;
+            this.operand = operand;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return operand.hasSideEffects();
+        }
+
+        @Override
+        void write(VmCode vm) {
+            operand.write(vm);
+            vm.writeArithmetic(command);
+        }
+    }
+
+    /**
+     * This is a binary operator applied to two expressions.
+     */
+    static class Binary extends Expression {
+        private final char operator;
+        private final Expression left;
+        private final Expression right;
+
+        Binary(char operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return left.hasSideEffects() || right.hasSideEffects();
+        }
+
+        //Constants have already been folded, so at most one side is a constant. Multiplication is commutative, so a
+        //constant on the left is treated the same as one on the right. A multiplication over the budget still keeps
+        //its reduced operands.
+        @Override
+        Expression reduceStrength(int budget) {
+            Expression reducedLeft = left.reduceStrength(budget);
+            Expression reducedRight = right.reduceStrength(budget);
+            Expression reduced = reducedLeft == left && reducedRight == right ? this
+                    : new Binary(operator, reducedLeft, reducedRight);
+            if (operator == '*' && reducedLeft.isConstant()) {
+                return ConstantMultiply.create(reducedRight, reducedLeft.getValue(), budget, reduced);
+            }
+            if (operator == '*' && reducedRight.isConstant()) {
+                return ConstantMultiply.create(reducedLeft, reducedRight.getValue(), budget, reduced);
+            }
+            if (operator == '/' && reducedRight.isConstant()) {
+                if (reducedRight.getValue() == 1) {
+                    return reducedLeft;
+                }
+                if (reducedRight.getValue() == -1) {
+                    return new Unary(ArithmeticCommand.NEG, reducedLeft);
+                }
+            }
+            return reduced;
+        }
+
+        @Override
+        void write(VmCode vm) {
+            left.write(vm);
+            right.write(vm);
+            switch (operator) {
+                case '+':
+                    vm.writeArithmetic(ArithmeticCommand.ADD);
+                    break;
+                case '-':
+                    vm.writeArithmetic(ArithmeticCommand.SUB);
+                    break;
+                case '*':
+                    vm.writeCall("Math.multiply", 2);
+                    break;
+                case '/':
+                    vm.writeCall("Math.divide", 2);
+                    break;
+                case '&':
+                    vm.writeArithmetic(ArithmeticCommand.AND);
+                    break;
+                case '|':
+                    vm.writeArithmetic(ArithmeticCommand.OR);
+                    break;
+                case '<':
+                    vm.writeArithmetic(ArithmeticCommand.LT);
+                    break;
+                case '>':
+                    vm.writeArithmetic(ArithmeticCommand.GT);
+                    break;
+                case '=':
+                    vm.writeArithmetic(ArithmeticCommand.EQ);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Operator not found. " + operator);
+            }
+        }
+    }
+
+    /**
+     * This is a multiplication by a constant, written with additions instead of a call to Math.multiply. The vm has no
+     * way to copy the top of the stack, so the value is copied through temp 1 and temp 2. Nothing else is written
+     * while they are in use, since the operand is written first.
+     */
+    static class ConstantMultiply extends Expression {
+        private final Expression operand;
+        private final int factor;
+
+        private ConstantMultiply(Expression operand, int factor) {
+            this.operand = operand;
+            this.factor = factor;
+        }
+
+        //Returns the cheapest way to multiply the operand by the factor, or the multiplication if the additions would
+        //go over the budget.
+        static Expression create(Expression operand, int factor, int budget, Expression multiplication) {
+            if (factor == 0 && !operand.hasSideEffects()) {
+                return constant(0);
+            }
+            if (factor == 1) {
+                return operand;
+            }
+            if (factor == -1) {
+                return new Unary(ArithmeticCommand.NEG, operand);
+            }
+            if (factor != 0 && (factor == Short.MIN_VALUE || instructionCount(factor) - 2 > budget)) {
+                return multiplication;
+            }
+            return new ConstantMultiply(operand, factor);
+        }
+
+        //Returns the number of instructions written after the operand, where a call to Math.multiply takes 2.
+        static int instructionCount(int factor) {
+            if (factor == 0) {
+                return 2;
+            }
+            int magnitude = Math.abs(factor);
+            int doublings = 31 - Integer.numberOfLeadingZeros(magnitude);
+            int count = 4 * doublings + 2 * (Integer.bitCount(magnitude) - 1);
+            return factor < 0 ? count + 1 : count;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return operand.hasSideEffects();
+        }
+
+        //The factor is 0 only if the operand has side effects, so it is still written and then dropped. Otherwise the
+        //bits of the factor are worked through from the top, doubling the result for each one and adding the operand
+        //for each bit that is set. If any bits are added, the operand is kept in temp 1, which also serves as the copy
+        //for the first doubling.
+        @Override
+        void write(VmCode vm) {
+            operand.write(vm);
+            if (factor == 0) {
+                vm.writePop(Segment.TEMP, 0);
+                vm.writePush(Segment.CONSTANT, 0);
+                return;
+            }
+
+            int magnitude = Math.abs(factor);
+            boolean powerOfTwo = Integer.bitCount(magnitude) == 1;
+            int topBit = 31 - Integer.numberOfLeadingZeros(magnitude);
+            for (int bit = topBit - 1; bit >= 0; bit--) {
+                int copy = !powerOfTwo && bit == topBit - 1 ? 1 : 2;
+                vm.writePop(Segment.TEMP, copy);
+                vm.writePush(Segment.TEMP, copy);
+                vm.writePush(Segment.TEMP, copy);
+                vm.writeArithmetic(ArithmeticCommand.ADD);
+                if (!powerOfTwo && (magnitude & (1 << bit)) != 0) {
+                    vm.writePush(Segment.TEMP, 1);
+                    vm.writeArithmetic(ArithmeticCommand.ADD);
+                }
+            }
+            if (factor < 0) {
+                vm.writeArithmetic(ArithmeticCommand.NEG);
+            }
+        }
+    }
+
+    /**
+     * This is a subroutine call. For methods, the object is the first argument.
+     */
+    static class Call extends Expression {
+        private final String functionName;
+        private final List<Expression> arguments;
+
+        Call(String functionName, List<Expression> arguments) {
+            this.functionName = functionName;
+            this.arguments = arguments;
+        }
+
+        String getFunctionName() {
+            return functionName;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return true;
+        }
+
+        @Override
+        void write(VmCode vm) {
+            for (Expression argument : arguments) {
+                argument.write(vm);
+            }
+            vm.writeCall(functionName, arguments.size());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This flight recorder event covers compiling one jack file from reading it to writing its vm file.
+ */
+@Name("jack.FileCompile")
+@Label("File Compile")
+@Category("Jack Compiler")
+@StackTrace(false)
+@Description("Compiling one jack file end to end")
+class FileCompileEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Up To Date")
+    @Description("The file was skipped because it hadn't changed since the last incremental build")
+    boolean upToDate;
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("VM Instructions")
+    int instructions;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+}
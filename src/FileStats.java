@@ -0,0 +1,162 @@
+/**
+ * This records how long each phase of compiling one jack file took and how much it read and wrote. Each phase is also
+ * sent to the flight recorder as a CompilePhaseEvent, and the whole file as a FileCompileEvent when it's finished.
+ * Only the thread compiling the file uses it.
+ */
+class FileStats {
+
+    static final String HEADER = "file\tstatus\twall_us\tread_us\ttokenize_us\tcompile_us\toptimize_us\temit_us"
+            + "\twrite_us\ttokens\tvm_instructions\tbytes_read\tbytes_written";
+
+    private final String fileName;
+    private final long[] phaseNanos = new long[CompilePhase.values().length];
+    private final FileCompileEvent fileEvent = new FileCompileEvent();
+    private long startNanos;
+    private long wallNanos;
+    private boolean upToDate = false;
+    private int tokenCount;
+    private int instructionCount;
+    private long bytesRead;
+    private long bytesWritten;
+
+    //These belong to the phase that is running.
+    private CompilePhase phase;
+    private long phaseStartNanos;
+    private CompilePhaseEvent phaseEvent;
+
+    FileStats(String fileName) {
+        this.fileName = fileName;
+    }
+
+    //Starts the clock for the whole file.
+    void start() {
+        fileEvent.begin();
+        startNanos = System.nanoTime();
+    }
+
+    //Starts timing the given phase.
+    void startPhase(CompilePhase phase) {
+        this.phase = phase;
+        phaseEvent = new CompilePhaseEvent();
+        phaseEvent.begin();
+        phaseStartNanos = System.nanoTime();
+    }
+
+    //Stops timing the phase that was started last.
+    void endPhase() {
+        phaseNanos[phase.ordinal()] += System.nanoTime() - phaseStartNanos;
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.file = fileName;
+            phaseEvent.phase = phase.getPhaseName();
+            phaseEvent.commit();
+        }
+    }
+
+    //Adds time spent in a phase on another thread, such as tokenizing in a pipeline, to the phase's time.
+    void addPhaseNanos(CompilePhase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    //Stops the clock for the file until it's resumed. Whole program builds pause each file between compiling it and
+    //writing it, while the other files are compiled.
+    void pause() {
+        wallNanos += System.nanoTime() - startNanos;
+    }
+
+    //Starts the clock again after a pause.
+    void resume() {
+        startNanos = System.nanoTime();
+    }
+
+    //Stops the clock for the whole file.
+    void finish() {
+        pause();
+        if (fileEvent.shouldCommit()) {
+            fileEvent.file = fileName;
+            fileEvent.upToDate = upToDate;
+            fileEvent.tokens = tokenCount;
+            fileEvent.instructions = instructionCount;
+            fileEvent.bytesRead = bytesRead;
+            fileEvent.bytesWritten = bytesWritten;
+            fileEvent.commit();
+        }
+    }
+
+    //Setters
+    void setUpToDate() {
+        upToDate = true;
+    }
+
+    void setTokenCount(int tokenCount) {
+        this.tokenCount = tokenCount;
+    }
+
+    void setInstructionCount(int instructionCount) {
+        this.instructionCount = instructionCount;
+    }
+
+    void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    void setBytesWritten(long bytesWritten) {
+        this.bytesWritten = bytesWritten;
+    }
+
+    //Returns one tab separated line of the stats summary, matching HEADER.
+    String toLine() {
+        StringBuilder line = new StringBuilder(fileName).append('\t').append(upToDate ? "up-to-date" : "compiled")
+                .append('\t').append(wallNanos / 1000);
+        for (long nanos : phaseNanos) {
+            line.append('\t').append(nanos / 1000);
+        }
+        return line.append('\t').append(tokenCount).append('\t').append(instructionCount)
+                .append('\t').append(bytesRead).append('\t').append(bytesWritten).toString();
+    }
+
+    //Returns the line for the class index pre-pass, which scanned the given number of files before compiling.
+    static String indexLine(int scannedFileCount, long indexNanos) {
+        StringBuilder line = new StringBuilder("index\t").append(scannedFileCount).append(" scanned\t")
+                .append(indexNanos / 1000);
+        for (int i = 0; i < CompilePhase.values().length + 4; i++) {
+            line.append("\t0");
+        }
+        return line.toString();
+    }
+
+    //Returns the line for finding the jack files of a source tree, which found the given number of files.
+    static String discoveryLine(int foundFileCount, long discoveryNanos) {
+        StringBuilder line = new StringBuilder("discovery\t").append(foundFileCount).append(" found\t")
+                .append(discoveryNanos / 1000);
+        for (int i = 0; i < CompilePhase.values().length + 4; i++) {
+            line.append("\t0");
+        }
+        return line.toString();
+    }
+
+    //Returns the line adding up every file's stats. The wall time is the time for the whole batch, since files may
+    //have been compiled at the same time.
+    static String totalLine(FileStats[] allStats, long batchNanos) {
+        long[] totalPhaseNanos = new long[CompilePhase.values().length];
+        long tokens = 0;
+        long instructions = 0;
+        long read = 0;
+        long written = 0;
+        for (FileStats stats : allStats) {
+            for (int i = 0; i < totalPhaseNanos.length; i++) {
+                totalPhaseNanos[i] += stats.phaseNanos[i];
+            }
+            tokens += stats.tokenCount;
+            instructions += stats.instructionCount;
+            read += stats.bytesRead;
+            written += stats.bytesWritten;
+        }
+        StringBuilder line = new StringBuilder("total\t").append(allStats.length).append(" files\t")
+                .append(batchNanos / 1000);
+        for (long nanos : totalPhaseNanos) {
+            line.append('\t').append(nanos / 1000);
+        }
+        return line.append('\t').append(tokens).append('\t').append(instructions)
+                .append('\t').append(read).append('\t').append(written).toString();
+    }
+}
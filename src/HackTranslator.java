@@ -0,0 +1,554 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * This translates vm code straight to Hack assembly, so a program can be built without writing vm files and reading
+ * them back in a separate vm translator. It looks ahead over the instructions of each subroutine and writes one
+ * shorter sequence for the common runs of instructions the compiler writes:
+ *
+ * A push followed by add, sub, and, or, a comparison, a pop, if-goto or return loads the pushed value into D and uses
+ * it from there instead of pushing it onto the stack and popping it straight back off. Adding or subtracting 1 and
+ * comparing with 0 work on the top of the stack in place.
+ *
+ * A comparison followed by if-goto, or by not and if-goto, jumps on the result of the subtraction instead of pushing
+ * true or false and testing it.
+ *
+ * Calls and returns jump to one shared copy of the code that saves and restores the caller's frame, which the bootstrap
+ * writes once per program, so each call takes 10 instructions of the program and each return 2.
+ *
+ * Like the course's vm translator, comparisons subtract the two values, so gt and lt are wrong when the difference
+ * doesn't fit in 16 bits. R13 to R15 are used as scratch registers.
+ */
+class HackTranslator {
+
+    static final String ASM_EXTENSION = ".asm";
+
+    //The number of instructions the Hack computer's ROM holds.
+    static final int ROM_SIZE = 32768;
+
+    //Pointer segment entries up to this far from the base are reached by stepping the address one at a time.
+    private static final int MAX_ADDRESS_STEPS = 4;
+
+    private static final String CALL_ROUTINE = "$CALL";
+    private static final String RETURN_ROUTINE = "$RETURN";
+    private static final String RETURN_D_ROUTINE = "$RETURN_D";
+    private static final String HALT = "$HALT";
+
+    private final StringBuilder asm = new StringBuilder();
+    private int instructionCount = 0;
+
+    //These belong to the class and function being translated.
+    private String className;
+    private String functionName;
+    private int labelCount;
+
+    //Writes the code that sets up the stack and calls the entry point, and the shared code that calls and returns
+    //from functions. This comes first in the program.
+    void writeBootstrap(String entryPoint) {
+        functionName = "$BOOT";
+        instruction("@256");
+        instruction("D=A");
+        instruction("@SP");
+        instruction("M=D");
+        instruction("@R14");
+        instruction("M=0");
+        instruction("@" + entryPoint);
+        instruction("D=A");
+        instruction("@R13");
+        instruction("M=D");
+        instruction("@" + HALT);
+        instruction("D=A");
+        instruction("@" + CALL_ROUTINE);
+        instruction("0;JMP");
+        label(HALT);
+        instruction("@" + HALT);
+        instruction("0;JMP");
+        writeCallRoutine();
+        writeReturnRoutine();
+    }
+
+    //Writes the shared code of a call. It expects the return address in D, the function's address in R13 and the
+    //number of arguments in R14. It pushes the caller's frame, points ARG at the arguments and LCL at the new frame,
+    //and jumps to the function.
+    private void writeCallRoutine() {
+        label(CALL_ROUTINE);
+        instruction("@SP");
+        instruction("A=M");
+        instruction("M=D");
+        for (String pointer : new String[] {"LCL", "ARG", "THIS", "THAT"}) {
+            instruction("@" + pointer);
+            instruction("D=M");
+            instruction("@SP");
+            instruction("AM=M+1");
+            instruction("M=D");
+        }
+        instruction("@SP");
+        instruction("MD=M+1");
+        instruction("@LCL");
+        instruction("M=D");
+        instruction("@R14");
+        instruction("D=D-M");
+        instruction("@5");
+        instruction("D=D-A");
+        instruction("@ARG");
+        instruction("M=D");
+        instruction("@R13");
+        instruction("A=M");
+        instruction("0;JMP");
+    }
+
+    //Writes the shared code of a return. The return value is popped off the stack, or is already in D when jumping to
+    //the second entry. The return address is read before the value is stored, since with no arguments they're in the
+    //same place.
+    private void writeReturnRoutine() {
+        label(RETURN_ROUTINE);
+        instruction("@SP");
+        instruction("AM=M-1");
+        instruction("D=M");
+        label(RETURN_D_ROUTINE);
+        instruction("@R15");
+        instruction("M=D");
+        instruction("@LCL");
+        instruction("D=M");
+        instruction("@R13");
+        instruction("M=D");
+        instruction("@5");
+        instruction("A=D-A");
+        instruction("D=M");
+        instruction("@R14");
+        instruction("M=D");
+        instruction("@R15");
+        instruction("D=M");
+        instruction("@ARG");
+        instruction("A=M");
+        instruction("M=D");
+        instruction("@ARG");
+        instruction("D=M+1");
+        instruction("@SP");
+        instruction("M=D");
+        for (String pointer : new String[] {"THAT", "THIS", "ARG", "LCL"}) {
+            instruction("@R13");
+            instruction("AM=M-1");
+            instruction("D=M");
+            instruction("@" + pointer);
+            instruction("M=D");
+        }
+        instruction("@R14");
+        instruction("A=M");
+        instruction("0;JMP");
+    }
+
+    //Translates the code of one class. The class name names its static variables, as it does for a vm file.
+    void translate(String className, List<VmInstruction> instructions) {
+        this.className = className;
+        functionName = className;
+        labelCount = 0;
+        int i = 0;
+        while (i < instructions.size()) {
+            i = translateAt(instructions, i);
+        }
+    }
+
+    //Translates the instruction at the index along with any that follow it in one of the shorter sequences, and
+    //returns the index of the next instruction to translate.
+    private int translateAt(List<VmInstruction> instructions, int index) {
+        VmInstruction instruction = instructions.get(index);
+        VmInstruction next = index + 1 < instructions.size() ? instructions.get(index + 1) : null;
+        switch (instruction.getCommand()) {
+            case PUSH:
+                if (next == null) {
+                    writePush(instruction);
+                    return index + 1;
+                }
+                switch (next.getCommand()) {
+                    case ARITHMETIC:
+                        if (isComparison(next.getArithmeticCommand())) {
+                            return writeComparison(instructions, index + 1, instruction);
+                        }
+                        if (next.getArithmeticCommand() != ArithmeticCommand.NEG
+                                && next.getArithmeticCommand() != ArithmeticCommand.NOT) {
+                            writeBinary(next.getArithmeticCommand(), instruction);
+                            return index + 2;
+                        }
+                        break;
+                    case POP:
+                        writeStore(next.getSegment(), next.getNumber(), instruction);
+                        return index + 2;
+                    case IF_GOTO:
+                        writeLoad(instruction);
+                        writeJump(next, "D;JNE");
+                        return index + 2;
+                    case RETURN:
+                        writeLoad(instruction);
+                        instruction("@" + RETURN_D_ROUTINE);
+                        instruction("0;JMP");
+                        return index + 2;
+                    default:
+                        break;
+                }
+                writePush(instruction);
+                return index + 1;
+            case POP:
+                writeStore(instruction.getSegment(), instruction.getNumber(), null);
+                return index + 1;
+            case ARITHMETIC:
+                ArithmeticCommand command = instruction.getArithmeticCommand();
+                if (isComparison(command)) {
+                    return writeComparison(instructions, index, null);
+                }
+                if (command == ArithmeticCommand.NOT && next != null && next.getCommand() == VmCommand.IF_GOTO) {
+                    //not x is true unless x is -1.
+                    instruction("@SP");
+                    instruction("AM=M-1");
+                    instruction("D=M+1");
+                    writeJump(next, "D;JNE");
+                    return index + 2;
+                }
+                if (command == ArithmeticCommand.NEG || command == ArithmeticCommand.NOT) {
+                    instruction("@SP");
+                    instruction("A=M-1");
+                    instruction(command == ArithmeticCommand.NEG ? "M=-M" : "M=!M");
+                } else {
+                    writeBinary(command, null);
+                }
+                return index + 1;
+            case LABEL:
+                label(functionName + "$" + instruction.getLabel());
+                return index + 1;
+            case GOTO:
+                writeJump(instruction, "0;JMP");
+                return index + 1;
+            case IF_GOTO:
+                instruction("@SP");
+                instruction("AM=M-1");
+                instruction("D=M");
+                writeJump(instruction, "D;JNE");
+                return index + 1;
+            case CALL:
+                writeCall(instruction.getName(), instruction.getNumber());
+                return index + 1;
+            case FUNCTION:
+                writeFunction(instruction.getName(), instruction.getNumber());
+                return index + 1;
+            case RETURN:
+                instruction("@" + RETURN_ROUTINE);
+                instruction("0;JMP");
+                return index + 1;
+            default:
+                throw new IllegalArgumentException("Can't translate: " + instruction);
+        }
+    }
+
+    //Writes add, sub, and or or. With an operand, the operand is the pushed second value, so it is loaded into D
+    //instead. Otherwise both values are on the stack.
+    private void writeBinary(ArithmeticCommand command, VmInstruction operand) {
+        if (operand != null && operand.getSegment() == Segment.CONSTANT) {
+            int constant = operand.getNumber();
+            if (constant == 0 && command != ArithmeticCommand.AND) {
+                return;
+            }
+            if (constant == 1 && (command == ArithmeticCommand.ADD || command == ArithmeticCommand.SUB)) {
+                instruction("@SP");
+                instruction("A=M-1");
+                instruction(command == ArithmeticCommand.ADD ? "M=M+1" : "M=M-1");
+                return;
+            }
+        }
+        if (operand == null) {
+            instruction("@SP");
+            instruction("AM=M-1");
+            instruction("D=M");
+            instruction("A=A-1");
+        } else {
+            writeLoad(operand);
+            instruction("@SP");
+            instruction("A=M-1");
+        }
+        switch (command) {
+            case ADD:
+                instruction("M=D+M");
+                break;
+            case SUB:
+                instruction("M=M-D");
+                break;
+            case AND:
+                instruction("M=D&M");
+                break;
+            case OR:
+                instruction("M=D|M");
+                break;
+            default:
+                throw new IllegalArgumentException("Not a binary command: " + command.getVmName());
+        }
+    }
+
+    //Writes the comparison at the index, with the pushed second value as the operand if there is one. If it's followed
+    //by if-goto, or by not and if-goto, it jumps on the comparison and those are translated too. Returns the index of
+    //the next instruction to translate.
+    private int writeComparison(List<VmInstruction> instructions, int index, VmInstruction operand) {
+        ArithmeticCommand command = instructions.get(index).getArithmeticCommand();
+
+        //Leaves D holding the first value minus the second, and A pointing at the first value.
+        if (operand == null) {
+            instruction("@SP");
+            instruction("AM=M-1");
+            instruction("D=M");
+            instruction("A=A-1");
+            instruction("D=M-D");
+        } else if (operand.isPush(Segment.CONSTANT, 0)) {
+            instruction("@SP");
+            instruction("A=M-1");
+            instruction("D=M");
+        } else {
+            writeLoad(operand);
+            instruction("@SP");
+            instruction("A=M-1");
+            instruction("D=M-D");
+        }
+
+        VmInstruction next = index + 1 < instructions.size() ? instructions.get(index + 1) : null;
+        VmInstruction afterNext = index + 2 < instructions.size() ? instructions.get(index + 2) : null;
+        if (next != null && next.getCommand() == VmCommand.IF_GOTO) {
+            instruction("@SP");
+            instruction("M=M-1");
+            writeJump(next, "D;" + getJump(command, false));
+            return index + 2;
+        }
+        if (next != null && next.isArithmetic(ArithmeticCommand.NOT) && afterNext != null
+                && afterNext.getCommand() == VmCommand.IF_GOTO) {
+            instruction("@SP");
+            instruction("M=M-1");
+            writeJump(afterNext, "D;" + getJump(command, true));
+            return index + 3;
+        }
+
+        String trueLabel = functionName + "$cmp." + labelCount++;
+        instruction("M=-1");
+        instruction("@" + trueLabel);
+        instruction("D;" + getJump(command, false));
+        instruction("@SP");
+        instruction("A=M-1");
+        instruction("M=0");
+        label(trueLabel);
+        return index + 1;
+    }
+
+    //Writes a push of the instruction's value.
+    private void writePush(VmInstruction push) {
+        if (push.getSegment() == Segment.CONSTANT && push.getNumber() >= -1 && push.getNumber() <= 1) {
+            instruction("@SP");
+            instruction("AM=M+1");
+            instruction("A=A-1");
+            instruction("M=" + push.getNumber());
+            return;
+        }
+        writeLoad(push);
+        instruction("@SP");
+        instruction("AM=M+1");
+        instruction("A=A-1");
+        instruction("M=D");
+    }
+
+    //Loads the value a push would push into D, or pops the top of the stack into D if there isn't a push.
+    private void writeLoad(VmInstruction push) {
+        if (push == null) {
+            instruction("@SP");
+            instruction("AM=M-1");
+            instruction("D=M");
+            return;
+        }
+        int index = push.getNumber();
+        switch (push.getSegment()) {
+            case CONSTANT:
+                if (index >= -1 && index <= 1) {
+                    instruction("D=" + index);
+                } else if (index < 0) {
+                    instruction("@" + -index);
+                    instruction("D=-A");
+                } else {
+                    instruction("@" + index);
+                    instruction("D=A");
+                }
+                return;
+            case LOCAL:
+            case ARGUMENT:
+            case THIS:
+            case THAT:
+                if (index <= 1) {
+                    instruction("@" + getBase(push.getSegment()));
+                    instruction(index == 0 ? "A=M" : "A=M+1");
+                } else {
+                    instruction("@" + index);
+                    instruction("D=A");
+                    instruction("@" + getBase(push.getSegment()));
+                    instruction("A=D+M");
+                }
+                instruction("D=M");
+                return;
+            default:
+                instruction("@" + getFixedAddress(push.getSegment(), index));
+                instruction("D=M");
+        }
+    }
+
+    //Stores the value of the push, or the value popped off the stack if there isn't a push, in the segment entry.
+    private void writeStore(Segment segment, int index, VmInstruction push) {
+        if (segment == Segment.CONSTANT) {
+            throw new IllegalArgumentException("Can't pop to the constant segment");
+        }
+        boolean hasBase = getBase(segment) != null;
+        if (hasBase && index > MAX_ADDRESS_STEPS) {
+            instruction("@" + index);
+            instruction("D=A");
+            instruction("@" + getBase(segment));
+            instruction("D=D+M");
+            instruction("@R13");
+            instruction("M=D");
+            writeLoad(push);
+            instruction("@R13");
+            instruction("A=M");
+            instruction("M=D");
+            return;
+        }
+        writeLoad(push);
+        if (hasBase) {
+            instruction("@" + getBase(segment));
+            instruction(index == 0 ? "A=M" : "A=M+1");
+            for (int i = 1; i < index; i++) {
+                instruction("A=A+1");
+            }
+        } else {
+            instruction("@" + getFixedAddress(segment, index));
+        }
+        instruction("M=D");
+    }
+
+    //Writes a jump to the label of the goto or if-goto, taken on the given condition.
+    private void writeJump(VmInstruction jump, String condition) {
+        instruction("@" + functionName + "$" + jump.getLabel());
+        instruction(condition);
+    }
+
+    //Writes a call through the shared call code.
+    private void writeCall(String function, int argCount) {
+        String returnLabel = functionName + "$ret." + labelCount++;
+        if (argCount <= 1) {
+            instruction("@R14");
+            instruction("M=" + argCount);
+        } else {
+            instruction("@" + argCount);
+            instruction("D=A");
+            instruction("@R14");
+            instruction("M=D");
+        }
+        instruction("@" + function);
+        instruction("D=A");
+        instruction("@R13");
+        instruction("M=D");
+        instruction("@" + returnLabel);
+        instruction("D=A");
+        instruction("@" + CALL_ROUTINE);
+        instruction("0;JMP");
+        label(returnLabel);
+    }
+
+    //Writes the function's label and sets its locals to 0.
+    private void writeFunction(String name, int localCount) {
+        functionName = name;
+        labelCount = 0;
+        label(name);
+        if (localCount == 0) {
+            return;
+        }
+        instruction("@SP");
+        instruction("A=M");
+        instruction("M=0");
+        for (int i = 1; i < localCount; i++) {
+            instruction("A=A+1");
+            instruction("M=0");
+        }
+        instruction("D=A+1");
+        instruction("@SP");
+        instruction("M=D");
+    }
+
+    //Returns the register holding the segment's base address, or null if the segment is at a fixed address.
+    private static String getBase(Segment segment) {
+        switch (segment) {
+            case LOCAL:
+                return "LCL";
+            case ARGUMENT:
+                return "ARG";
+            case THIS:
+                return "THIS";
+            case THAT:
+                return "THAT";
+            default:
+                return null;
+        }
+    }
+
+    //Returns the symbol of an entry in the pointer, temp or static segment.
+    private String getFixedAddress(Segment segment, int index) {
+        switch (segment) {
+            case POINTER:
+                return index == 0 ? "THIS" : "THAT";
+            case TEMP:
+                return "R" + (5 + index);
+            case STATIC:
+                return className + "." + index;
+            default:
+                throw new IllegalArgumentException("Not a fixed segment: " + segment.getVmName());
+        }
+    }
+
+    //Returns the jump that is taken when the first value minus the second makes the comparison true, or false if
+    //negated.
+    private static String getJump(ArithmeticCommand command, boolean negated) {
+        switch (command) {
+            case EQ:
+                return negated ? "JNE" : "JEQ";
+            case GT:
+                return negated ? "JLE" : "JGT";
+            default:
+                return negated ? "JGE" : "JLT";
+        }
+    }
+
+    private static boolean isComparison(ArithmeticCommand command) {
+        return command == ArithmeticCommand.EQ || command == ArithmeticCommand.GT || command == ArithmeticCommand.LT;
+    }
+
+    private void instruction(String instruction) {
+        asm.append(instruction).append('\n');
+        instructionCount++;
+    }
+
+    private void label(String label) {
+        asm.append('(').append(label).append(")\n");
+    }
+
+    //Adds the translation of another translator after this one's.
+    void append(HackTranslator other) {
+        asm.append(other.asm);
+        instructionCount += other.instructionCount;
+    }
+
+    //Writes the assembly to the file.
+    void writeTo(Path file) throws IOException {
+        Files.write(file, asm.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    //Returns the number of Hack instructions written, leaving out labels.
+    int getInstructionCount() {
+        return instructionCount;
+    }
+
+    @Override
+    public String toString() {
+        return asm.toString();
+    }
+}
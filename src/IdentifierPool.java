@@ -0,0 +1,67 @@
+/**
+ * This gives each distinct identifier in a file one String. The tokenizer looks identifiers up straight from the
+ * source characters, so an identifier that was seen before doesn't allocate a new String, and every use of a name
+ * shares the same instance with its hash already computed, which makes the symbol table lookups cheap.
+ */
+class IdentifierPool {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    //Open addressing table. The capacity is always a power of two and kept at most half full.
+    private String[] identifiers = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int count = 0;
+
+    //Returns the pooled String for the characters from start to end, adding it if it's new. The hash must be the
+    //String hash of those characters.
+    String intern(CharSequence source, int start, int end, int hash) {
+        int mask = identifiers.length - 1;
+        int slot = hash & mask;
+        while (identifiers[slot] != null) {
+            if (hashes[slot] == hash && matches(identifiers[slot], source, start, end)) {
+                return identifiers[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String identifier = source.subSequence(start, end).toString();
+        identifiers[slot] = identifier;
+        hashes[slot] = hash;
+        if (++count * 2 > identifiers.length) {
+            grow();
+        }
+        return identifier;
+    }
+
+    //Returns true if the identifier has the same characters as the source from start to end.
+    private static boolean matches(String identifier, CharSequence source, int start, int end) {
+        if (identifier.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < identifier.length(); i++) {
+            if (identifier.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Doubles the table and puts every identifier back in.
+    private void grow() {
+        String[] oldIdentifiers = identifiers;
+        int[] oldHashes = hashes;
+        identifiers = new String[oldIdentifiers.length * 2];
+        hashes = new int[oldIdentifiers.length * 2];
+        int mask = identifiers.length - 1;
+        for (int i = 0; i < oldIdentifiers.length; i++) {
+            if (oldIdentifiers[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (identifiers[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                identifiers[slot] = oldIdentifiers[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+}
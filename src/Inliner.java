@@ -0,0 +1,323 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This replaces calls to small leaf functions, such as getters and setters, with the body of the function. A leaf
+ * function makes no calls, so it can't be recursive, and its body must fit in the budget of vm instructions.
+ *
+ * The inlined body uses new locals of the caller for the callee's arguments and locals, which are cleared to 0 like
+ * the vm does on a call, and the caller's local count grows to make room. Calls in the same function run one after
+ * another, so they share the same new locals. Labels get a prefix for each call so they stay unique in the caller.
+ * A method that only uses this for its fields reads and writes them through that instead, since the caller doesn't
+ * keep anything in that across a call. Other functions that change this or that have the caller's pointer saved and
+ * put back around the body. Functions from other classes that use statics aren't inlined, since statics belong to the
+ * class whose vm file they are in.
+ *
+ * The inliner can be shared by the threads compiling a batch, and it counts what it did for the report.
+ */
+class Inliner {
+
+    static final int DEFAULT_BUDGET = 12;
+    private static final String RETURN_LABEL = "INLINE_RETURN";
+
+    private final int budget;
+    private final AtomicLong inlinedCalls = new AtomicLong();
+    private final AtomicLong hackInstructionsSaved = new AtomicLong();
+    private final Set<String> inlinedFunctions = ConcurrentHashMap.newKeySet();
+
+    Inliner(int budget) {
+        this.budget = budget;
+    }
+
+    //Inlines calls between the functions of one class.
+    void inline(VmCode code) {
+        inline(List.of(code));
+    }
+
+    //Inlines calls between the functions of the given classes, within a class and across classes.
+    void inline(List<VmCode> classes) {
+        Map<String, Callee> callees = new HashMap<>();
+        for (Map.Entry<String, VmProgram.Function> entry : VmProgram.findFunctions(classes).entrySet()) {
+            Callee callee = Callee.analyze(entry.getValue(), budget);
+            if (callee != null) {
+                callees.put(entry.getKey(), callee);
+            }
+        }
+        if (callees.isEmpty()) {
+            return;
+        }
+        for (VmCode code : classes) {
+            inlineCalls(code, callees);
+        }
+    }
+
+    //Rewrites one class, replacing each call to a callee that can be inlined there.
+    private void inlineCalls(VmCode code, Map<String, Callee> callees) {
+        List<VmInstruction> instructions = code.getInstructions();
+        List<VmInstruction> result = new ArrayList<>(instructions.size());
+        int functionIndex = -1;
+        int extraLocals = 0;
+        int callCount = 0;
+        for (VmInstruction instruction : instructions) {
+            if (instruction.getCommand() == VmCommand.FUNCTION) {
+                addLocals(result, functionIndex, extraLocals);
+                functionIndex = result.size();
+                extraLocals = 0;
+                callCount = 0;
+            }
+            else if (instruction.getCommand() == VmCommand.CALL && functionIndex >= 0) {
+                Callee callee = callees.get(instruction.getName());
+                if (callee != null && callee.canInlineInto(code, instruction.getNumber())) {
+                    int firstLocal = result.get(functionIndex).getNumber();
+                    int inlineStart = result.size();
+                    extraLocals = Math.max(extraLocals,
+                            callee.writeInlined(result, firstLocal, instruction.getNumber(), callCount++));
+                    inlinedCalls.incrementAndGet();
+                    inlinedFunctions.add(instruction.getName());
+                    hackInstructionsSaved.addAndGet(VmCost.CALL + callee.getHackInstructions()
+                            - VmCost.hackInstructions(result, inlineStart, result.size()));
+                    continue;
+                }
+            }
+            result.add(instruction);
+        }
+        addLocals(result, functionIndex, extraLocals);
+
+        instructions.clear();
+        instructions.addAll(result);
+    }
+
+    //Adds the locals the inlined calls need to the function instruction at the index.
+    private static void addLocals(List<VmInstruction> result, int functionIndex, int extraLocals) {
+        if (functionIndex >= 0 && extraLocals > 0) {
+            VmInstruction function = result.get(functionIndex);
+            result.set(functionIndex, VmInstruction.function(function.getName(), function.getNumber() + extraLocals));
+        }
+    }
+
+    //Returns how many calls were inlined and the Hack instructions they save.
+    String getReport() {
+        long calls = inlinedCalls.get();
+        String report = "Inlined " + calls + " calls to " + inlinedFunctions.size() + " functions (budget "
+                + budget + " vm instructions).\n";
+        if (calls > 0) {
+            report += "  Each inlined call runs about " + hackInstructionsSaved.get() / calls
+                    + " fewer Hack instructions than the call it replaced.\n";
+        }
+        return report;
+    }
+
+    /**
+     * This is a leaf function that is small enough to inline, with what its body needs from each call site.
+     */
+    private static class Callee {
+        private final VmCode code;
+        private final int localCount;
+        private final List<VmInstruction> body;
+        private final int argumentCount;
+        private final boolean usesStatics;
+        private final boolean fieldsThroughThat;
+        private final boolean savesThis;
+        private final boolean savesThat;
+        private final int hackInstructions;
+
+        private Callee(VmProgram.Function function, List<VmInstruction> body, int argumentCount, boolean usesStatics,
+                       boolean fieldsThroughThat, boolean savesThis, boolean savesThat) {
+            List<VmInstruction> instructions = function.getCode().getInstructions();
+            this.code = function.getCode();
+            this.localCount = instructions.get(function.getStart()).getNumber();
+            this.body = body;
+            this.argumentCount = argumentCount;
+            this.usesStatics = usesStatics;
+            this.fieldsThroughThat = fieldsThroughThat;
+            this.savesThis = savesThis;
+            this.savesThat = savesThat;
+            this.hackInstructions = VmCost.hackInstructions(instructions, function.getStart(), function.getEnd());
+        }
+
+        //Returns the callee if the function can be inlined, or null if it makes calls, is over the budget or doesn't
+        //end with a return.
+        static Callee analyze(VmProgram.Function function, int budget) {
+            List<VmInstruction> body = new ArrayList<>(function.getCode().getInstructions()
+                    .subList(function.getStart() + 1, function.getEnd()));
+            if (body.isEmpty() || body.size() > budget
+                    || body.get(body.size() - 1).getCommand() != VmCommand.RETURN) {
+                return null;
+            }
+
+            int argumentCount = 0;
+            boolean usesStatics = false;
+            boolean setsThis = false;
+            boolean usesThat = false;
+            for (int i = 0; i < body.size(); i++) {
+                VmInstruction instruction = body.get(i);
+                if (instruction.getCommand() == VmCommand.CALL) {
+                    return null;
+                }
+                Segment segment = instruction.getSegment();
+                if (segment == Segment.ARGUMENT) {
+                    argumentCount = Math.max(argumentCount, instruction.getNumber() + 1);
+                }
+                usesStatics |= segment == Segment.STATIC;
+                usesThat |= segment == Segment.THAT || instruction.isPush(Segment.POINTER, 1)
+                        || instruction.isPop(Segment.POINTER, 1);
+                setsThis |= i > 1 && instruction.isPop(Segment.POINTER, 0);
+            }
+
+            //A method sets this from its first argument before anything else.
+            boolean isMethod = body.size() > 2 && body.get(0).isPush(Segment.ARGUMENT, 0)
+                    && body.get(1).isPop(Segment.POINTER, 0);
+            boolean fieldsThroughThat = isMethod && !setsThis && !usesThat;
+            boolean savesThis = !fieldsThroughThat && (setsThis || isMethod || containsPop(body, Segment.POINTER, 0));
+            boolean savesThat = !fieldsThroughThat && containsPop(body, Segment.POINTER, 1);
+            return new Callee(function, body, argumentCount, usesStatics, fieldsThroughThat, savesThis, savesThat);
+        }
+
+        private static boolean containsPop(List<VmInstruction> body, Segment segment, int index) {
+            for (VmInstruction instruction : body) {
+                if (instruction.isPop(segment, index)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        //Returns true if a call with the given number of arguments in the given class can be replaced by the body.
+        boolean canInlineInto(VmCode callerCode, int callArgumentCount) {
+            return callArgumentCount >= argumentCount && (callerCode == code || !usesStatics);
+        }
+
+        //Returns the estimated Hack instructions the function runs, from its function instruction to its return.
+        int getHackInstructions() {
+            return hackInstructions;
+        }
+
+        //Writes the body in place of a call whose arguments are on the stack. The callee's arguments and locals use
+        //the caller's locals from firstLocal on. Returns how many locals were used.
+        int writeInlined(List<VmInstruction> result, int firstLocal, int callArgumentCount, int callNumber) {
+            int firstCalleeLocal = firstLocal + callArgumentCount;
+            int nextLocal = firstCalleeLocal + localCount;
+            int savedThis = savesThis ? nextLocal++ : -1;
+            int savedThat = savesThat ? nextLocal++ : -1;
+            List<VmInstruction> inlined = new ArrayList<>();
+
+            if (savedThis >= 0) {
+                inlined.add(VmInstruction.push(Segment.POINTER, 0));
+                inlined.add(VmInstruction.pop(Segment.LOCAL, savedThis));
+            }
+            if (savedThat >= 0) {
+                inlined.add(VmInstruction.push(Segment.POINTER, 1));
+                inlined.add(VmInstruction.pop(Segment.LOCAL, savedThat));
+            }
+            for (int i = callArgumentCount - 1; i >= 0; i--) {
+                inlined.add(VmInstruction.pop(Segment.LOCAL, firstLocal + i));
+            }
+            for (int i = 0; i < localCount; i++) {
+                inlined.add(VmInstruction.push(Segment.CONSTANT, 0));
+                inlined.add(VmInstruction.pop(Segment.LOCAL, firstCalleeLocal + i));
+            }
+
+            String labelPrefix = "INLINE" + callNumber + "_";
+            boolean returnsEarly = false;
+            for (int i = fieldsThroughThat ? 2 : 0; i < body.size(); i++) {
+                VmInstruction instruction = body.get(i);
+                switch (instruction.getCommand()) {
+                    case RETURN:
+                        if (i < body.size() - 1) {
+                            inlined.add(VmInstruction.goTo(RETURN_LABEL, callNumber));
+                            returnsEarly = true;
+                        }
+                        break;
+                    case PUSH:
+                    case POP:
+                        writeAccess(inlined, instruction, firstLocal, firstCalleeLocal);
+                        break;
+                    case LABEL:
+                        inlined.add(VmInstruction.label(labelPrefix + instruction.getName(), instruction.getNumber()));
+                        break;
+                    case GOTO:
+                        inlined.add(VmInstruction.goTo(labelPrefix + instruction.getName(), instruction.getNumber()));
+                        break;
+                    case IF_GOTO:
+                        inlined.add(VmInstruction.ifGoTo(labelPrefix + instruction.getName(),
+                                instruction.getNumber()));
+                        break;
+                    default:
+                        inlined.add(instruction);
+                }
+            }
+            if (returnsEarly) {
+                inlined.add(VmInstruction.label(RETURN_LABEL, callNumber));
+            }
+
+            //The return value stays on the stack while the caller's pointers are put back.
+            if (savedThat >= 0) {
+                inlined.add(VmInstruction.push(Segment.LOCAL, savedThat));
+                inlined.add(VmInstruction.pop(Segment.POINTER, 1));
+            }
+            if (savedThis >= 0) {
+                inlined.add(VmInstruction.push(Segment.LOCAL, savedThis));
+                inlined.add(VmInstruction.pop(Segment.POINTER, 0));
+            }
+
+            removeStoreAndLoad(inlined);
+            result.addAll(inlined);
+            return nextLocal - firstLocal;
+        }
+
+        //Writes a push or pop of the body with its arguments and locals moved to the caller's new locals.
+        private void writeAccess(List<VmInstruction> inlined, VmInstruction instruction, int firstLocal,
+                                 int firstCalleeLocal) {
+            boolean isPush = instruction.getCommand() == VmCommand.PUSH;
+            Segment segment = instruction.getSegment();
+            int index = instruction.getNumber();
+            if (segment == Segment.ARGUMENT) {
+                segment = Segment.LOCAL;
+                index += firstLocal;
+            }
+            else if (segment == Segment.LOCAL) {
+                index += firstCalleeLocal;
+            }
+            else if (fieldsThroughThat && segment == Segment.POINTER) {
+                //Only push pointer 0 gets here, which is the object the method was called on.
+                segment = Segment.LOCAL;
+                index = firstLocal;
+            }
+            else if (fieldsThroughThat && segment == Segment.THIS) {
+                inlined.add(VmInstruction.push(Segment.LOCAL, firstLocal));
+                inlined.add(VmInstruction.pop(Segment.POINTER, 1));
+                segment = Segment.THAT;
+            }
+            inlined.add(isPush ? VmInstruction.push(segment, index) : VmInstruction.pop(segment, index));
+        }
+
+        //Removes a pop into a local followed right away by a push of it, when nothing else in the inlined code uses
+        //that local. Every inlined call sets its locals before reading them, so the value isn't needed later.
+        private static void removeStoreAndLoad(List<VmInstruction> inlined) {
+            for (int i = 0; i + 1 < inlined.size(); i++) {
+                VmInstruction store = inlined.get(i);
+                if (store.getCommand() == VmCommand.POP && store.getSegment() == Segment.LOCAL
+                        && inlined.get(i + 1).isPush(Segment.LOCAL, store.getNumber())
+                        && countUses(inlined, store.getNumber()) == 2) {
+                    inlined.subList(i, i + 2).clear();
+                    i = Math.max(i - 2, -1);
+                }
+            }
+        }
+
+        private static int countUses(List<VmInstruction> inlined, int local) {
+            int uses = 0;
+            for (VmInstruction instruction : inlined) {
+                if (instruction.isPush(Segment.LOCAL, local) || instruction.isPop(Segment.LOCAL, local)) {
+                    uses++;
+                }
+            }
+            return uses;
+        }
+    }
+}
@@ -1,7 +1,17 @@
 import java.io.*;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
 
 
 /**
@@ -14,18 +24,68 @@ class JackCompiler {
 
     //This is only used if the input arg points to a directory.
     private File[] inputFiles = null;
-    private List<File> tmpFiles = new ArrayList<>();
-    private List<File> tokenOutputFiles = new ArrayList<>();
-    private List<File> outputFiles = new ArrayList<>();
+    private CompilerOptions options;
+    private Set<File> tokenOutputFiles = new LinkedHashSet<>();
+    private Set<File> outputFiles = new LinkedHashSet<>();
+
+    //With --recursive, the jack files of every folder below the input folder. Each folder is compiled as its own
+    //batch, with its own class index and manifest.
+    private SourceTree sourceTree = null;
+    private File batchDirectory = null;
+    private String treeProgramReport = null;
+
+    //These are filled in per file while compiling a batch, at the same index as the file in the batch.
+    private File[] batchFiles;
+    private File[] vmFiles;
+    private File[] tokenFiles;
+    private String[] sourceHashes;
+    private String[] vmHashes;
+    private FileStats[] fileStats;
+    private long batchNanos;
+    private BuildManifest manifest = null;
+    private PeepholeOptimizer peepholeOptimizer = null;
+    private Inliner inliner = null;
+    private StringLiteralStats stringLiteralStats = null;
+    private VmProgram program = null;
+
+    //In whole program and assembly builds, each file's code is kept here after it's compiled until every file has been
+    //compiled.
+    private VmCode[] programCodes;
+    private HackTranslator[] translations;
+    private StringBuilder assemblyReport = null;
+    private ClassIndex classIndex = null;
+    private int indexedFileCount;
+    private long indexNanos;
+
+    //Each compiling thread keeps its own source reader, vm code and text buffer and reuses them for every file it
+    //compiles.
+    private static final ThreadLocal<SourceReader> readers = ThreadLocal.withInitial(SourceReader::new);
+    private static final ThreadLocal<VmCode> codes = ThreadLocal.withInitial(VmCode::new);
+    private static final ThreadLocal<VmEmitter> emitters = ThreadLocal.withInitial(VmEmitter::new);
+
+    //Change this whenever the vm code generated for the same source changes, so incremental builds recompile.
+    final static String COMPILER_VERSION = "4";
     final static String IN_EXTENSION = ".jack";
-    final static String TMP_EXTENSION = ".tmp";
     final static String TOUT_EXTENSION = "T.xml";
     final static String OUT_EXTENSION = ".vm";
+    final static String SYS_INIT = "Sys.init";
+    final static String MAIN_MAIN = "Main.main";
 
     //This constructor parses the argument provided as input and tries to create the inputFiles
     //if possible. inputFiles will include input files that end with the .jack extension. If the path is to a jack file,
-    //the array will be of size 1, otherwise, it will contain all .jack files in the directory.
-    private JackCompiler(String args) {
+    //the array will be of size 1, otherwise, it will contain all .jack files in the directory, or with --recursive in
+    //the directory and every directory below it.
+    private JackCompiler(String args, CompilerOptions options) {
+        this.options = options;
+        if (options.isPeephole()) {
+            peepholeOptimizer = new PeepholeOptimizer(options.getPeepholeRules());
+        }
+        if (options.isInline()) {
+            inliner = new Inliner(options.getInlineBudget());
+        }
+        if (options.isShareStrings()) {
+            stringLiteralStats = new StringLiteralStats();
+        }
         if (args != null) {
             File fileFromPath = new File(args);
 
@@ -36,8 +96,18 @@ class JackCompiler {
                 fileNameAndPath = fileFromPath.getAbsolutePath();
 
                 //Find inputFile(s)
-                if (fileFromPath.isDirectory()) {
-                    inputFiles = fileFromPath.listFiles((file) -> file.getName().endsWith(IN_EXTENSION));
+                if (fileFromPath.isDirectory() && options.isRecursive()) {
+                    sourceTree = SourceTree.discover(fileFromPath.getAbsoluteFile(), options.getIncludeGlobs(),
+                            options.getExcludeGlobs(), options.getJobs());
+                    inputFiles = sourceTree.getFiles();
+                } else if (fileFromPath.isDirectory()) {
+                    inputFiles = fileFromPath.listFiles(
+                            (file) -> file.isFile() && file.getName().endsWith(IN_EXTENSION));
+
+                    //Sort so files are always compiled and reported in the same order.
+                    if (inputFiles != null) {
+                        Arrays.sort(inputFiles, Comparator.comparing(File::getName));
+                    }
                 } else if (fileFromPath.getName().endsWith(IN_EXTENSION)) {
                     inputFiles = new File[1];
                     inputFiles[0] = fileFromPath;
@@ -49,10 +119,10 @@ class JackCompiler {
     //Create the JackCompiler. If given an argument that points to usable files, this will return that.
     //otherwise it will ask the user to enter appropriate info in order to find the input to be used and wrapped in the
     //JackCompiler object.
-    static JackCompiler createJackCompiler(String arg) {
+    static JackCompiler createJackCompiler(CompilerOptions options) {
 
         //Build assembly converter from args.
-        JackCompiler jackCompiler = new JackCompiler(arg);
+        JackCompiler jackCompiler = new JackCompiler(options.getInputPath(), options);
 
 
         //Try to find files at provided path. If none exist, print an error and let them try again  or type Quit to exit.
@@ -73,7 +143,7 @@ class JackCompiler {
                 }
 
                 //Try to create it based on the new user input.
-                jackCompiler = new JackCompiler(newInput);
+                jackCompiler = new JackCompiler(newInput, options);
 
             }
         }
@@ -81,113 +151,468 @@ class JackCompiler {
     }
 
 
-    //This reads in the input files and strips the comments, writing the output to a tmp file.
-    void createTmpFileNoComments() {
-
-            //Create a reader and writer to read the input file and write a tmp file
-            for (File inputFile : inputFiles) {
-                File outputFile = createFile(inputFile, IN_EXTENSION, TMP_EXTENSION, tmpFiles);
-                try (FileWriter outputWriter = new FileWriter(outputFile)) {
-                //For each line, check if it's a symbol, variable, or computation.
-                try (Scanner reader = new Scanner(inputFile)) {
-
-                    boolean inBulkComment = false;
-
-                    while (reader.hasNext()) {
-                        String line = reader.nextLine();
-
-                        if(!inBulkComment) {
-                            //Bulk comment starts in this line.
-                            if(line.contains("/*") && !line.contains("*/"))
-                            {
-                                inBulkComment = true;
-                            }
-                            //This strips extra whitespace and comments.
-                            line = stripCommentsAndLineBreaks(line);
-
-                            if(line != null && line.length() > 0)
-                            {
-                                //Write the remaining Jack code to a tmp file.
-                                outputWriter.write(line + "\n");
-                            }
-                        }
-                        else if(line.contains("*/"))
-                        {
-                            inBulkComment = false;
-                        }
-                    }
-                }
-                } catch (IOException e) {
-                    e.printStackTrace();
+    //This compiles each input file end to end.
+    void createOutput() {
+        if (options.isAsm()) {
+            assemblyReport = new StringBuilder();
+        }
+        if (sourceTree != null) {
+            compileTree();
+        } else {
+            compileBatch(inputFiles);
+        }
+    }
+
+    //This compiles each folder of the source tree as its own batch, since each folder is a program of its own, and
+    //writes each vm file next to its jack file. Every folder is compiled even if one fails, then the first failure is
+    //re-thrown. The stats of every folder are kept together for the report.
+    private void compileTree() {
+        List<FileStats> treeStats = new ArrayList<>();
+        StringBuilder programReports = new StringBuilder();
+        int treeIndexedFileCount = 0;
+        long treeIndexNanos = 0;
+        RuntimeException firstFailure = null;
+        long treeStart = System.nanoTime();
+        for (Map.Entry<File, File[]> folder : sourceTree.getFolders().entrySet()) {
+            batchDirectory = folder.getKey();
+            classIndex = null;
+            program = null;
+            try {
+                compileBatch(folder.getValue());
+            } catch (RuntimeException e) {
+                if (firstFailure == null) {
+                    firstFailure = e;
                 }
             }
+            treeStats.addAll(Arrays.asList(fileStats));
+            treeIndexedFileCount += indexedFileCount;
+            treeIndexNanos += indexNanos;
+            if (program != null) {
+                programReports.append(sourceTree.getRelativeName(folder.getKey())).append(": ")
+                        .append(program.getReport());
+            }
+        }
+        batchNanos = System.nanoTime() - treeStart;
+        batchDirectory = null;
+        fileStats = treeStats.toArray(new FileStats[0]);
+        indexedFileCount = treeIndexedFileCount;
+        indexNanos = treeIndexNanos;
+        treeProgramReport = programReports.length() > 0 ? programReports.toString() : null;
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
     }
 
-    //This reads in the tmp files and converts them to the token xml output.
-    void createTokenOutput() {
-        //Create a reader and writer to read the input file and write a tmp tokenized file
-        for (File tmpFile : tmpFiles) {
-            File outputFile = createFile(tmpFile, TMP_EXTENSION, TOUT_EXTENSION, tokenOutputFiles);
-            try (FileWriter outputWriter = new FileWriter(outputFile)) {
-                outputWriter.write("<tokens>\n");
-                try (Scanner reader = new Scanner(tmpFile)) {
+    //This compiles the given jack files end to end. Files are independent, so with more than one job they are compiled
+    //at the same time on a fork join pool. Errors are collected per file and reported in the order of the files.
+    void compileBatch(File[] files) {
+        batchFiles = files;
+        vmFiles = new File[batchFiles.length];
+        tokenFiles = new File[batchFiles.length];
+        sourceHashes = new String[batchFiles.length];
+        vmHashes = new String[batchFiles.length];
+        fileStats = new FileStats[batchFiles.length];
+        programCodes = options.isWholeProgram() || options.isAsm() ? new VmCode[batchFiles.length] : null;
+        for (int i = 0; i < batchFiles.length; i++) {
+            fileStats[i] = new FileStats(getDisplayName(batchFiles[i]));
+            if (!options.isAsm()) {
+                vmFiles[i] = createFile(batchFiles[i], IN_EXTENSION, OUT_EXTENSION, outputFiles);
+            }
+            if (options.isDebugTokens()) {
+                tokenFiles[i] = createFile(batchFiles[i], IN_EXTENSION, TOUT_EXTENSION, tokenOutputFiles);
+            }
+        }
+
+        if (options.isAsm()) {
+            outputFiles.add(getAssemblyFile());
+        }
+
+        if (options.isIncremental()) {
+            try {
+                manifest = BuildManifest.load(getSourceDirectory(), getManifestVersion());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        updateClassIndex();
 
-                    while (reader.hasNext()) {
-                        String line = reader.nextLine();
-                        int charNum = 0;
-                        Tokenizer tokenizer = new Tokenizer(outputWriter, line, charNum);
-                        tokenizer.writeTokenToTokenOutput();
+        long batchStart = System.nanoTime();
+        try {
+            reportFailures(runOnEachFile(this::compileFileAndCatch));
+
+            //In whole program builds every file has been compiled but none written yet, so calls can be inlined
+            //across classes and functions that can't be called can be removed before the files are written. Assembly
+            //builds write every file's code into one program.
+            if (programCodes != null) {
+                if (options.isWholeProgram()) {
+                    if (inliner != null) {
+                        inliner.inline(Arrays.asList(programCodes));
                     }
+                    program = new VmProgram(Arrays.asList(programCodes));
+                    program.removeUnreachable();
                 }
-                outputWriter.write("</tokens>\n");
-            } catch (IOException e) {
-                e.printStackTrace();
+                if (options.isAsm()) {
+                    writeAssembly();
+                } else {
+                    reportFailures(runOnEachFile(this::writeFileAndCatch));
+                }
+            }
+            batchNanos = System.nanoTime() - batchStart;
+        } finally {
+            //The files that compiled are saved even when another one failed, so the next build can skip them.
+            if (manifest != null) {
+                saveManifest();
             }
         }
     }
 
-    //This reads in the token files and converts them to the final vm output.
-    void createFinalOutput() {
-        //Create a reader and writer to read the token file and write a vm file
-        for (File tokenFile : tokenOutputFiles) {
-            File outputFile = createFile(tokenFile, TOUT_EXTENSION, OUT_EXTENSION, outputFiles);
-            try (FileWriter outputWriter = new FileWriter(outputFile)) {
-                try (Scanner reader = new Scanner(tokenFile)) {
-                    Compiler compiler = new Compiler(outputWriter, reader);
-                    compiler.compileClass();
+    //Scans the class signatures of the jack files in the source directory that are new or changed since the index
+    //was last updated, so calls can be checked against every class in the project. Incremental builds keep the index
+    //in a file between runs.
+    private void updateClassIndex() {
+        long indexStart = System.nanoTime();
+        try {
+            if (classIndex == null) {
+                classIndex = options.isIncremental() ? ClassIndex.load(getSourceDirectory()) : new ClassIndex();
+            }
+            File[] projectFiles = getSourceDirectory().listFiles(
+                    (file) -> file.isFile() && file.getName().endsWith(IN_EXTENSION));
+            indexedFileCount = classIndex.update(projectFiles == null ? new File[0] : projectFiles, options.getJobs());
+            if (options.isIncremental()) {
+                classIndex.save(getSourceDirectory());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        indexNanos = System.nanoTime() - indexStart;
+    }
+
+    //Runs the task on the index of each file in the batch and returns the exception each one hit. Files are
+    //independent, so with more than one job they are run at the same time on a fork join pool.
+    private RuntimeException[] runOnEachFile(IntFunction<RuntimeException> task) {
+        RuntimeException[] failures = new RuntimeException[batchFiles.length];
+        int jobs = Math.min(options.getJobs(), batchFiles.length);
+        if (jobs <= 1) {
+            for (int i = 0; i < batchFiles.length; i++) {
+                failures[i] = task.apply(i);
+            }
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(jobs);
+            try {
+                List<ForkJoinTask<RuntimeException>> tasks = new ArrayList<>();
+                for (int i = 0; i < batchFiles.length; i++) {
+                    int fileIndex = i;
+                    tasks.add(pool.submit(() -> task.apply(fileIndex)));
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+                for (int i = 0; i < tasks.size(); i++) {
+                    failures[i] = tasks.get(i).join();
+                }
+            } finally {
+                pool.shutdown();
             }
         }
+        return failures;
     }
 
-    //Create file with correct extension and add to respective list.
-    private File createFile(File inputFile, String inputExtension, String outputExtension, List<File> targetArray)
-    {
-        String fileName = inputFile.getAbsolutePath();
-        String tmpFileName = fileName.replace(inputExtension, outputExtension);
-        File newTmpFile = new File(tmpFileName);
-        targetArray.add(newTmpFile);
-        return newTmpFile;
+    //Compiles one file and returns the exception it hit, or null if it compiled. In whole program builds the file
+    //isn't written yet, so its stats are paused instead of finished.
+    private RuntimeException compileFileAndCatch(int fileIndex) {
+        FileStats stats = fileStats[fileIndex];
+        stats.start();
+        boolean compiled = false;
+        try {
+            compileFile(fileIndex, stats);
+            compiled = true;
+            return null;
+        } catch (IOException e) {
+            return new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            return e;
+        } finally {
+            if (compiled && programCodes != null) {
+                stats.pause();
+            } else {
+                stats.finish();
+            }
+        }
     }
 
-    //This strips in line comments
-    private static String stripCommentsAndLineBreaks(String line) {
+    //Writes one file of a whole program build and returns the exception it hit, or null if it was written.
+    private RuntimeException writeFileAndCatch(int fileIndex) {
+        FileStats stats = fileStats[fileIndex];
+        stats.resume();
+        try {
+            writeFile(fileIndex, programCodes[fileIndex], stats);
+            return null;
+        } catch (IOException e) {
+            return new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            return e;
+        } finally {
+            stats.finish();
+        }
+    }
 
-        //If there's only white space on a line, return null.
-        if(line.matches("[\\s]"))
+    //Translates the code of one file of an assembly build to Hack assembly and returns the exception it hit, or null
+    //if it was translated.
+    private RuntimeException translateFileAndCatch(int fileIndex) {
+        FileStats stats = fileStats[fileIndex];
+        stats.resume();
+        try {
+            VmCode code = programCodes[fileIndex];
+            stats.setInstructionCount(code.size());
+            stats.startPhase(CompilePhase.EMIT);
+            translations[fileIndex] = new HackTranslator();
+            translations[fileIndex].translate(getClassName(batchFiles[fileIndex]), code.getInstructions());
+            stats.endPhase();
             return null;
+        } catch (RuntimeException e) {
+            return e;
+        } finally {
+            stats.finish();
+        }
+    }
+
+    //Writes the program as one Hack assembly file named after the source directory, such as Pong/Pong.asm. Each
+    //file's code is translated straight from its instructions, at the same time on the fork join pool with more than
+    //one job. The vm files in the directory that weren't compiled from this batch, such as the OS, are read and
+    //translated too. The bootstrap calls Sys.init, or Main.main if the program doesn't have the OS.
+    private void writeAssembly() {
+        translations = new HackTranslator[batchFiles.length];
+        reportFailures(runOnEachFile(this::translateFileAndCatch));
+
+        Set<String> classNames = new LinkedHashSet<>();
+        for (File file : batchFiles) {
+            classNames.add(getClassName(file));
+        }
+        File directory = getSourceDirectory();
+        File[] vmLibraryFiles = directory.listFiles((file) -> file.isFile() && file.getName().endsWith(OUT_EXTENSION)
+                && !classNames.contains(getClassName(file)));
+        Arrays.sort(vmLibraryFiles, Comparator.comparing(File::getName));
+
+        try {
+            boolean hasSysInit = false;
+            HackTranslator libraries = new HackTranslator();
+            for (File vmFile : vmLibraryFiles) {
+                VmCode code = VmParser.parse(vmFile.toPath());
+                hasSysInit |= hasFunction(code, SYS_INIT);
+                libraries.translate(getClassName(vmFile), code.getInstructions());
+            }
+            for (VmCode code : programCodes) {
+                hasSysInit |= hasFunction(code, SYS_INIT);
+            }
+
+            HackTranslator assembly = new HackTranslator();
+            assembly.writeBootstrap(hasSysInit ? SYS_INIT : MAIN_MAIN);
+            for (HackTranslator translation : translations) {
+                assembly.append(translation);
+            }
+            assembly.append(libraries);
+            File asmFile = getAssemblyFile();
+            assembly.writeTo(asmFile.toPath());
+
+            assemblyReport.append("Wrote ").append(assembly.getInstructionCount()).append(" Hack instructions to ")
+                    .append(asmFile.getName());
+            if (vmLibraryFiles.length > 0) {
+                assemblyReport.append(", with ").append(vmLibraryFiles.length).append(" vm files");
+            }
+            if (assembly.getInstructionCount() > HackTranslator.ROM_SIZE) {
+                assemblyReport.append(", more than the ").append(HackTranslator.ROM_SIZE)
+                        .append(" the Hack ROM holds");
+            }
+            assemblyReport.append(".\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        translations = null;
+    }
+
+    //Returns the assembly file of the batch, named after its directory.
+    private File getAssemblyFile() {
+        File directory = getSourceDirectory();
+        return new File(directory, directory.getName() + HackTranslator.ASM_EXTENSION);
+    }
+
+    //Returns true if the code has the function.
+    private static boolean hasFunction(VmCode code, String functionName) {
+        for (VmInstruction instruction : code.getInstructions()) {
+            if (instruction.getCommand() == VmCommand.FUNCTION && instruction.getName().equals(functionName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Returns the class name of a jack or vm file, which is its file name without the extension.
+    private static String getClassName(File file) {
+        String name = file.getName();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+
+    //Strips the comments, tokenizes and compiles one file. The source and tokens are passed in memory,
+    //so only the final vm file (and the token xml file when debugging) is written to disk. When compiling
+    //incrementally, files that haven't changed since the last run are skipped and unchanged vm files aren't rewritten.
+    //Whole program builds never skip a file, since which of its functions are kept depends on the other files, and
+    //they keep the code to be written after every file is compiled. Each phase is timed in the file's stats.
+    private void compileFile(int fileIndex, FileStats stats) throws IOException {
+        SourceReader reader = readers.get();
+        stats.startPhase(CompilePhase.READ);
+        reader.read(batchFiles[fileIndex].toPath());
+        stats.setBytesRead(reader.size());
+        if (manifest != null) {
+            sourceHashes[fileIndex] = reader.hash();
+            if (programCodes == null && manifest.isUpToDate(batchFiles[fileIndex].getName(), sourceHashes[fileIndex], vmFiles[fileIndex])) {
+                stats.endPhase();
+                stats.setUpToDate();
+                return;
+            }
+        }
+        stats.endPhase();
+
+        //One tokenizer strips the comments and tokenizes the whole file, reading the characters from the buffer.
+        //The tokens are read ahead when they are written for debugging or when tokenizing is timed on its own. In a
+        //pipeline they are tokenized on another thread while they're compiled instead, and the time that thread
+        //spent tokenizing is counted in the tokenize phase.
+        Iterator<Token> tokens = new Tokenizer(reader.getSource());
+        TokenPipeline pipeline = null;
+        if (tokenFiles[fileIndex] != null || (options.isStats() && !options.isPipeline())) {
+            stats.startPhase(CompilePhase.TOKENIZE);
+            List<Token> tokenList = new ArrayList<>();
+            tokens.forEachRemaining(tokenList::add);
+            stats.endPhase();
+            if (tokenFiles[fileIndex] != null) {
+                writeTokenOutput(tokenFiles[fileIndex], tokenList);
+            }
+            tokens = tokenList.iterator();
+        }
+        else if (options.isPipeline()) {
+            pipeline = new TokenPipeline((Tokenizer) tokens, options.getPipelineQueue());
+            tokens = pipeline;
+        }
 
-        //Remove comments
-        String[] splitLine = line.split("//|/\\*|\\*/");
+        //Compile the vm code into this thread's reusable code, optimize it, then write it as text to the vm file.
+        VmCode code = programCodes != null ? new VmCode() : codes.get();
+        code.reset();
+        stats.startPhase(CompilePhase.COMPILE);
+        Compiler compiler = new Compiler(code, tokens, options, classIndex);
+        try {
+            compiler.compileClass();
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
+                stats.addPhaseNanos(CompilePhase.TOKENIZE, pipeline.getTokenizeNanos());
+            }
+        }
+        stats.endPhase();
+        stats.setTokenCount(compiler.getTokenCount());
+        if (stringLiteralStats != null) {
+            stringLiteralStats.add(compiler.getStringLiterals());
+        }
+        if (inliner != null && !options.isWholeProgram()) {
+            stats.startPhase(CompilePhase.OPTIMIZE);
+            inliner.inline(code);
+            stats.endPhase();
+        }
+        if (peepholeOptimizer != null) {
+            stats.startPhase(CompilePhase.OPTIMIZE);
+            peepholeOptimizer.optimize(code);
+            stats.endPhase();
+        }
 
-        //If there's anything left, return it. Otherwise, return null.
-        if (splitLine.length > 0) {
-            return splitLine[0];
+        if (programCodes != null) {
+            programCodes[fileIndex] = code;
+            return;
+        }
+        writeFile(fileIndex, code, stats);
+    }
+
+    //Writes the code of one file as text to its vm file, unless the file already holds the same text.
+    private void writeFile(int fileIndex, VmCode code, FileStats stats) throws IOException {
+        stats.setInstructionCount(code.size());
+        VmEmitter vm = emitters.get();
+        vm.reset();
+        stats.startPhase(CompilePhase.EMIT);
+        code.writeTo(vm);
+        stats.endPhase();
+
+        //The hash is only kept once the vm file holds the code, so a file that fails isn't recorded in the manifest.
+        stats.startPhase(CompilePhase.WRITE);
+        if (manifest != null) {
+            String vmHash = vm.hash();
+            if (vmFiles[fileIndex].isFile() && vm.contentEquals(Files.readAllBytes(vmFiles[fileIndex].toPath()))) {
+                vmHashes[fileIndex] = vmHash;
+                stats.endPhase();
+                return;
+            }
+            vm.writeTo(vmFiles[fileIndex].toPath());
+            vmHashes[fileIndex] = vmHash;
         } else {
-            return null;
+            vm.writeTo(vmFiles[fileIndex].toPath());
         }
+        stats.endPhase();
+        stats.setBytesWritten(vm.size());
+    }
+
+    //Returns the version saved in the manifest, which includes any options that change the vm code.
+    private String getManifestVersion() {
+        String outputSettings = options.getOutputSettings();
+        return outputSettings.isEmpty() ? COMPILER_VERSION : COMPILER_VERSION + " " + outputSettings;
+    }
+
+    //Records the hashes of each file that was written in the manifest, drops the files that were deleted, and saves
+    //it.
+    private void saveManifest() {
+        for (int i = 0; i < batchFiles.length; i++) {
+            if (vmHashes[i] != null) {
+                manifest.record(batchFiles[i].getName(), sourceHashes[i], vmHashes[i]);
+            }
+        }
+        manifest.removeDeletedSources();
+        try {
+            manifest.save();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Prints an error for each file that failed in input order, then re-throws the first one.
+    private void reportFailures(RuntimeException[] failures) {
+        RuntimeException firstFailure = null;
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] != null) {
+                System.err.println("Error compiling " + getDisplayName(batchFiles[i]) + ": "
+                        + failures[i].getMessage());
+                if (firstFailure == null) {
+                    firstFailure = failures[i];
+                }
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+    }
+
+    //Writes the tokens to the token xml output. This is only used for debugging.
+    private static void writeTokenOutput(File outputFile, List<Token> tokens) throws IOException {
+        try (FileWriter outputWriter = new FileWriter(outputFile)) {
+            outputWriter.write("<tokens>\n");
+            for (Token token : tokens) {
+                outputWriter.write(token.toXml() + "\n");
+            }
+            outputWriter.write("</tokens>\n");
+        }
+    }
+
+    //Create file with correct extension and add to respective list. Only the file name's extension is replaced, so
+    //folders with the extension in their name are left alone.
+    private File createFile(File inputFile, String inputExtension, String outputExtension, Set<File> targetArray)
+    {
+        String fileName = inputFile.getName();
+        String newFileName = fileName.substring(0, fileName.length() - inputExtension.length()) + outputExtension;
+        File newFile = new File(inputFile.getAbsoluteFile().getParentFile(), newFileName);
+        targetArray.add(newFile);
+        return newFile;
     }
 
     //Delete the output file upon error.
@@ -196,16 +621,71 @@ class JackCompiler {
         outputFiles.forEach(File::delete);
     }
 
-    //Delete the token output file upon error.
-    void deleteTokenOutputFiles() {
+    //Returns the directory holding the jack files, which in a source tree is the folder being compiled.
+    File getSourceDirectory() {
+        if (batchDirectory != null) {
+            return batchDirectory;
+        }
+        File fileFromPath = new File(fileNameAndPath);
+        return fileFromPath.isDirectory() ? fileFromPath : fileFromPath.getParentFile();
+    }
+
+    //Returns the peephole report, or null if the optimizer isn't on.
+    String getPeepholeReport() {
+        return peepholeOptimizer == null ? null : peepholeOptimizer.getReport();
+    }
+
+    //Returns how many calls were inlined, or null if inlining isn't on.
+    String getInlineReport() {
+        return inliner == null ? null : inliner.getReport();
+    }
+
+    //Returns what the whole program build removed, or null if this isn't a whole program build.
+    String getWholeProgramReport() {
+        if (sourceTree != null) {
+            return treeProgramReport;
+        }
+        return program == null ? null : program.getReport();
+    }
 
-        tokenOutputFiles.forEach(File::delete);
+    //Returns how long finding the jack files of the source tree took apart from compiling them, or null if this
+    //isn't a source tree.
+    String getTreeReport() {
+        if (sourceTree == null) {
+            return null;
+        }
+        return String.format("Found %d jack files in %d folders in %.1f ms, and compiled them in %.1f ms.%n",
+                inputFiles.length, sourceTree.getFolders().size(), sourceTree.getDiscoveryNanos() / 1_000_000.0,
+                batchNanos / 1_000_000.0);
     }
 
-    //Delete the temporary file once the process is done or if there's an error.
-    void deleteTmpFiles() {
+    //Returns what the assembly build wrote, or null if this isn't an assembly build.
+    String getAssemblyReport() {
+        return assemblyReport == null ? null : assemblyReport.toString();
+    }
 
-        tmpFiles.forEach(File::delete);
+    //Returns the shared string statistics, or null if strings aren't shared.
+    String getStringLiteralReport() {
+        return stringLiteralStats == null ? null : stringLiteralStats.getReport();
+    }
+
+    //Returns the stats summary of the last batch as tab separated lines, with a header line first and a total line
+    //last. Times are in microseconds.
+    String getStatsReport() {
+        StringBuilder report = new StringBuilder(FileStats.HEADER).append('\n');
+        if (sourceTree != null) {
+            report.append(FileStats.discoveryLine(inputFiles.length, sourceTree.getDiscoveryNanos())).append('\n');
+        }
+        report.append(FileStats.indexLine(indexedFileCount, indexNanos)).append('\n');
+        for (FileStats stats : fileStats) {
+            report.append(stats.toLine()).append('\n');
+        }
+        return report.append(FileStats.totalLine(fileStats, batchNanos)).append('\n').toString();
+    }
+
+    //Returns the name a file is reported by, which in a source tree is its path from the input folder.
+    private String getDisplayName(File file) {
+        return sourceTree == null ? file.getName() : sourceTree.getRelativeName(file);
     }
 
     //Getters
@@ -213,9 +693,18 @@ class JackCompiler {
         return fileNameAndPath;
     }
 
-    private File[] getInputFiles() {
+    File[] getInputFiles() {
         return inputFiles;
     }
 
+    boolean isWholeProgram() {
+        return options.isWholeProgram();
+    }
+
+    //Returns true if the path given was one jack file rather than a folder.
+    boolean isSingleFile() {
+        return fileNameAndPath != null && !new File(fileNameAndPath).isDirectory();
+    }
+
 
 }
@@ -1,41 +1,116 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * This is the driver class. It starts the program and calls the main methods necessary for stripping
- * comments, creating tokenized files of the jack files and then creating final output vm translations of each jack file.
+ * comments, tokenizing the jack files and then creating final output vm translations of each jack file.
  */
 public class JackCompilerMain {
 
 
     public static void main(String[] args) {
-        String fileName = null;
-        //Use file name from args if provided.
-        if(args.length > 0)
-        {
-            fileName = args[0];
+        CompilerOptions options = CompilerOptions.parse(args);
+
+        //In server mode, compile the sources sent in requests until the process is stopped.
+        if (options.isServe()) {
+            serve(options);
+            return;
         }
 
-        //Create a VirtualMachineTranslator to store the input and output file info.
-        JackCompiler jackCompiler =
-                JackCompiler.createJackCompiler(fileName);
+        //A zip archive is compiled in memory into another archive, without extracting it.
+        if (ArchiveCompiler.isArchive(options.getInputPath())) {
+            compileArchive(options);
+            return;
+        }
 
-        //Read through each input file and create a temp file without comments.
-        jackCompiler.createTmpFileNoComments();
+        //Create a JackCompiler to store the input and output file info.
+        JackCompiler jackCompiler =
+                JackCompiler.createJackCompiler(options);
 
+        //In watch mode, keep running and recompile files as they change.
+        if (options.isWatch()) {
+            watch(jackCompiler);
+            return;
+        }
 
         try {
-            //Reads the temp file(s), tokenizes each line and writes a vm file for each jack file
-            jackCompiler.createTokenOutput();
-            jackCompiler.createFinalOutput();
+            //Strips comments, tokenizes and compiles each jack file in memory and writes a vm file for each one.
+            jackCompiler.createOutput();
         }
         //If the code catches any exception. It will delete the output file and then re-throw the exception.
         catch (Exception anyException)
         {
-            jackCompiler.deleteTmpFiles();
-            jackCompiler.deleteTokenOutputFiles();
             jackCompiler.deleteOutputFiles();
             throw anyException;
         }
-        jackCompiler.deleteTokenOutputFiles();
-        jackCompiler.deleteTmpFiles();
         System.out.println("Output File Complete.");
+        if (jackCompiler.getPeepholeReport() != null) {
+            System.out.print(jackCompiler.getPeepholeReport());
+        }
+        if (jackCompiler.getInlineReport() != null) {
+            System.out.print(jackCompiler.getInlineReport());
+        }
+        if (jackCompiler.getStringLiteralReport() != null) {
+            System.out.print(jackCompiler.getStringLiteralReport());
+        }
+        if (jackCompiler.getWholeProgramReport() != null) {
+            System.out.print(jackCompiler.getWholeProgramReport());
+        }
+        if (jackCompiler.getAssemblyReport() != null) {
+            System.out.print(jackCompiler.getAssemblyReport());
+        }
+        if (jackCompiler.getTreeReport() != null) {
+            System.out.print(jackCompiler.getTreeReport());
+        }
+        if (options.isStats()) {
+            System.out.print(jackCompiler.getStatsReport());
+        }
+    }
+
+    //Compiles the jack files in the archive into an archive of vm files.
+    private static void compileArchive(CompilerOptions options) {
+        ArchiveCompiler archiveCompiler = new ArchiveCompiler(options);
+        try {
+            archiveCompiler.compile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println("Output File Complete.");
+        System.out.println("Wrote " + archiveCompiler.getVmFileCount() + " vm files to "
+                + archiveCompiler.getOutputArchive());
+        if (archiveCompiler.getPeepholeReport() != null) {
+            System.out.print(archiveCompiler.getPeepholeReport());
+        }
+        if (archiveCompiler.getInlineReport() != null) {
+            System.out.print(archiveCompiler.getInlineReport());
+        }
+    }
+
+    //Runs the compile server until the process is stopped.
+    private static void serve(CompilerOptions options) {
+        try {
+            CompileServer server = new CompileServer(options.getServePort(), options.getServeThreads(),
+                    options.getServeQueue(), options.getServeTimeoutMillis());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            server.start();
+            System.out.println("Serving compile requests on http://127.0.0.1:" + server.getPort()
+                    + "/compile. Press Ctrl+C to stop.");
+            Thread.currentThread().join();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //Runs the compiler in watch mode until the process is stopped.
+    private static void watch(JackCompiler jackCompiler) {
+        try {
+            new WatchCompiler(jackCompiler).run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
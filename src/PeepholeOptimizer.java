@@ -0,0 +1,58 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This runs the enabled peephole rules over the vm code of a class after it's generated and before it's written. Every
+ * rule is tried at every instruction until none of them match anywhere. The optimizer can be shared by the threads
+ * compiling a batch, and it counts the instructions each rule removed for the report.
+ */
+class PeepholeOptimizer {
+
+    private final PeepholeRule[] rules;
+    private final AtomicLongArray removedByRule = new AtomicLongArray(PeepholeRule.values().length);
+    private final AtomicLong instructionsBefore = new AtomicLong();
+
+    PeepholeOptimizer(Set<PeepholeRule> enabledRules) {
+        this.rules = enabledRules.toArray(new PeepholeRule[0]);
+    }
+
+    //Rewrites the code in place.
+    void optimize(VmCode code) {
+        List<VmInstruction> instructions = code.getInstructions();
+        long[] removed = new long[removedByRule.length()];
+        instructionsBefore.addAndGet(instructions.size());
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < instructions.size(); i++) {
+                for (PeepholeRule rule : rules) {
+                    int sizeBefore = instructions.size();
+                    if (i < sizeBefore && rule.apply(instructions, i)) {
+                        removed[rule.ordinal()] += sizeBefore - instructions.size();
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < removed.length; i++) {
+            removedByRule.addAndGet(i, removed[i]);
+        }
+    }
+
+    //Returns the number of instructions removed by each rule so far.
+    String getReport() {
+        long totalRemoved = 0;
+        StringBuilder ruleLines = new StringBuilder();
+        for (PeepholeRule rule : rules) {
+            long removed = removedByRule.get(rule.ordinal());
+            totalRemoved += removed;
+            ruleLines.append("  ").append(rule.getRuleName()).append(": ").append(removed).append('\n');
+        }
+        return "Peephole optimizer removed " + totalRemoved + " of " + instructionsBefore.get()
+                + " instructions:\n" + ruleLines;
+    }
+}
@@ -0,0 +1,313 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is the registry of peephole rules. Each rule looks at the instructions starting at one index and rewrites them
+ * in place if they match its pattern. A rule only returns true when it removed at least one instruction, so the
+ * optimizer always finishes. The rules are tried in the order they are listed here.
+ */
+enum PeepholeRule {
+
+    //not; not does nothing.
+    DOUBLE_NOT("double-not") {
+        @Override
+        boolean apply(List<VmInstruction> code, int index) {
+            return removePair(code, index, ArithmeticCommand.NOT);
+        }
+    },
+
+    //neg; neg does nothing.
+    DOUBLE_NEG("double-neg") {
+        @Override
+        boolean apply(List<VmInstruction> code, int index) {
+            return removePair(code, index, ArithmeticCommand.NEG);
+        }
+    },
+
+    //An if-goto on a constant, such as the condition of while (true), either always jumps or never does.
+    CONSTANT_CONDITION("constant-condition") {
+        @Override
+        boolean apply(List<VmInstruction> code, int index) {
+            int length = constantLength(code, index);
+            if (length == 0 || index + length >= code.size()
+                    || code.get(index + length).getCommand() != VmCommand.IF_GOTO) {
+                return false;
+            }
+            VmInstruction jump = code.get(index + length);
+            List<VmInstruction> condition = code.subList(index, index + length + 1);
+            boolean alwaysJumps = constantValue(code, index) != 0;
+            condition.clear();
+            if (alwaysJumps) {
+                condition.add(VmInstruction.goTo(jump.getName(), jump.getNumber()));
+            }
+            return true;
+        }
+    },
+
+    //A goto to a label that follows it straight away, like the goto at the end of an if without an else.
+    JUMP_TO_NEXT("jump-to-next") {
+        @Override
+        boolean apply(List<VmInstruction> code, int index) {
+            VmInstruction jump = code.get(index);
+            if (jump.getCommand() != VmCommand.GOTO) {
+                return false;
+            }
+            for (int i = index + 1; i < code.size() && code.get(i).getCommand() == VmCommand.LABEL; i++) {
+                if (code.get(i).hasSameLabel(jump)) {
+                    code.remove(index);
+                    return true;
+                }
+            }
+            return false;
+        }
+    },
+
+    //Nothing after a goto or return runs until the next label or function.
+    UNREACHABLE_CODE("unreachable-code") {
+        @Override
+        boolean apply(List<VmInstruction> code, int index) {
+            VmCommand command = code.get(index).getCommand();
+            if (command != VmCommand.GOTO && command != VmCommand.RETURN) {
+                return false;
+            }
+            int end = index + 1;
+            while (end < code.size() && code.get(end).getCommand() != VmCommand.LABEL
+                    && code.get(end).getCommand() != VmCommand.FUNCTION) {
+                end++;
+            }
+            if (end == index + 1) {
+                return false;
+            }
+            code.subList(index + 1, end).clear();
+            return true;
+        }
+    },
+
+    //An if statement writes not; if-goto TRUE; then; goto FALSE; label TRUE; else; label FALSE. Swapping the two
+    //blocks lets the condition jump straight to the then block, so the not isn't needed. This is only done when the
+    //else block has code in it, and only TRUE's own if-goto jumps to it. Any int is a condition in jack, and not of a
+    //value other than 0 or -1 is still true, so the condition has to be one that is always true or false.
+    NEGATED_IF("negated-if") {
+        @Override
+        boolean apply(List<VmInstruction> code, int index) {
+            if (index + 1 >= code.size() || !code.get(index).isArithmetic(ArithmeticCommand.NOT)
+                    || code.get(index + 1).getCommand() != VmCommand.IF_GOTO || !isBoolean(code, index - 1)) {
+                return false;
+            }
+            VmInstruction condition = code.get(index + 1);
+            int end = functionEnd(code, index);
+            int elseLabel = findLabel(code, condition, index + 2, end);
+            if (elseLabel < 0 || elseLabel - 1 <= index + 1
+                    || code.get(elseLabel - 1).getCommand() != VmCommand.GOTO) {
+                return false;
+            }
+            VmInstruction skipElse = code.get(elseLabel - 1);
+            int endLabel = findLabel(code, skipElse, elseLabel + 1, end);
+            if (endLabel < 0 || !hasCode(code, elseLabel + 1, endLabel)
+                    || countReferences(code, condition, functionStart(code, index), end) != 2) {
+                return false;
+            }
+
+            List<VmInstruction> swapped = new ArrayList<>(endLabel - index - 1);
+            swapped.add(condition);
+            swapped.addAll(code.subList(elseLabel + 1, endLabel));
+            swapped.add(skipElse);
+            swapped.add(code.get(elseLabel));
+            swapped.addAll(code.subList(index + 2, elseLabel - 1));
+            List<VmInstruction> statement = code.subList(index, endLabel);
+            statement.clear();
+            statement.addAll(swapped);
+            return true;
+        }
+    },
+
+    //pop X; push X leaves the same value on the stack, so it can go if nothing else in the function reads X. This is
+    //only done for local and argument, since they belong to the function's own frame.
+    STORE_LOAD("store-load") {
+        @Override
+        boolean apply(List<VmInstruction> code, int index) {
+            if (index + 1 >= code.size()) {
+                return false;
+            }
+            VmInstruction store = code.get(index);
+            Segment segment = store.getSegment();
+            if (store.getCommand() != VmCommand.POP || (segment != Segment.LOCAL && segment != Segment.ARGUMENT)
+                    || !code.get(index + 1).isPush(segment, store.getNumber())) {
+                return false;
+            }
+            int end = functionEnd(code, index);
+            for (int i = functionStart(code, index); i < end; i++) {
+                if (i != index + 1 && code.get(i).isPush(segment, store.getNumber())) {
+                    return false;
+                }
+            }
+            code.subList(index, index + 2).clear();
+            return true;
+        }
+    };
+
+    private final String ruleName;
+
+    PeepholeRule(String ruleName) {
+        this.ruleName = ruleName;
+    }
+
+    //Rewrites the instructions starting at the index if they match. Returns true if any were removed.
+    abstract boolean apply(List<VmInstruction> code, int index);
+
+    //Returns the name used for the rule on the command line and in the report.
+    String getRuleName() {
+        return ruleName;
+    }
+
+    //Returns the rule with the given name.
+    static PeepholeRule fromRuleName(String ruleName) {
+        for (PeepholeRule rule : values()) {
+            if (rule.ruleName.equals(ruleName)) {
+                return rule;
+            }
+        }
+        throw new IllegalArgumentException("Unknown peephole rule: " + ruleName);
+    }
+
+    //Removes two of the same arithmetic command in a row.
+    private static boolean removePair(List<VmInstruction> code, int index, ArithmeticCommand command) {
+        if (index + 1 < code.size() && code.get(index).isArithmetic(command)
+                && code.get(index + 1).isArithmetic(command)) {
+            code.subList(index, index + 2).clear();
+            return true;
+        }
+        return false;
+    }
+
+    //Returns the number of instructions in a constant at the index: push constant k, optionally followed by not or
+    //neg. Returns 0 if there isn't one.
+    private static int constantLength(List<VmInstruction> code, int index) {
+        VmInstruction push = code.get(index);
+        if (push.getCommand() != VmCommand.PUSH || push.getSegment() != Segment.CONSTANT) {
+            return 0;
+        }
+        if (index + 1 < code.size() && (code.get(index + 1).isArithmetic(ArithmeticCommand.NOT)
+                || code.get(index + 1).isArithmetic(ArithmeticCommand.NEG))) {
+            return 2;
+        }
+        return 1;
+    }
+
+    //Returns the value of the constant at the index.
+    private static int constantValue(List<VmInstruction> code, int index) {
+        int value = code.get(index).getNumber();
+        if (constantLength(code, index) == 2) {
+            value = code.get(index + 1).isArithmetic(ArithmeticCommand.NOT) ? ~value : -value;
+        }
+        return (short) value;
+    }
+
+    //Returns true if the value the instruction at the index leaves on the stack is always true (-1) or false (0): a
+    //comparison, the constants true and false, or not, and and or of those.
+    private static boolean isBoolean(List<VmInstruction> code, int index) {
+        if (index < 0) {
+            return false;
+        }
+        VmInstruction instruction = code.get(index);
+        if (instruction.isPush(Segment.CONSTANT, 0)) {
+            return true;
+        }
+        if (instruction.getCommand() != VmCommand.ARITHMETIC) {
+            return false;
+        }
+        switch (instruction.getArithmeticCommand()) {
+            case EQ:
+            case GT:
+            case LT:
+                return true;
+            case NOT:
+                return isBoolean(code, index - 1);
+            case NEG:
+                return index > 0 && code.get(index - 1).isPush(Segment.CONSTANT, 1);
+            case AND:
+            case OR:
+                int right = operandStart(code, index - 1);
+                return right > 0 && isBoolean(code, index - 1) && isBoolean(code, right - 1);
+            default:
+                return false;
+        }
+    }
+
+    //Returns the index where the instructions that leave the value at the end index on the stack start, or -1 if
+    //they aren't all pushes, arithmetic and calls.
+    private static int operandStart(List<VmInstruction> code, int end) {
+        int needed = 1;
+        for (int i = end; i >= 0; i--) {
+            VmInstruction instruction = code.get(i);
+            switch (instruction.getCommand()) {
+                case PUSH:
+                    needed--;
+                    break;
+                case ARITHMETIC:
+                    ArithmeticCommand command = instruction.getArithmeticCommand();
+                    if (command != ArithmeticCommand.NEG && command != ArithmeticCommand.NOT) {
+                        needed++;
+                    }
+                    break;
+                case CALL:
+                    needed += instruction.getNumber() - 1;
+                    break;
+                default:
+                    return -1;
+            }
+            if (needed == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //Returns the index of the label the jump goes to, searching from start up to end, or -1 if it isn't there.
+    private static int findLabel(List<VmInstruction> code, VmInstruction jump, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (code.get(i).getCommand() == VmCommand.LABEL && code.get(i).hasSameLabel(jump)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //Returns the number of labels and jumps for the same label between start and end.
+    private static int countReferences(List<VmInstruction> code, VmInstruction label, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (code.get(i).hasSameLabel(label)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //Returns true if there is anything other than labels between start and end.
+    private static boolean hasCode(List<VmInstruction> code, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (code.get(i).getCommand() != VmCommand.LABEL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Returns the index of the function instruction the index is in.
+    private static int functionStart(List<VmInstruction> code, int index) {
+        while (index > 0 && code.get(index).getCommand() != VmCommand.FUNCTION) {
+            index--;
+        }
+        return index;
+    }
+
+    //Returns the index of the next function instruction after the index, or the end of the code.
+    private static int functionEnd(List<VmInstruction> code, int index) {
+        index++;
+        while (index < code.size() && code.get(index).getCommand() != VmCommand.FUNCTION) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,37 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This is a vm memory segment. The push and pop prefixes are encoded once so the emitter can copy them as bytes.
+ */
+enum Segment {
+    CONSTANT("constant"),
+    ARGUMENT("argument"),
+    LOCAL("local"),
+    STATIC("static"),
+    THIS("this"),
+    THAT("that"),
+    POINTER("pointer"),
+    TEMP("temp");
+
+    private final String vmName;
+    private final byte[] pushPrefix;
+    private final byte[] popPrefix;
+
+    Segment(String vmName) {
+        this.vmName = vmName;
+        this.pushPrefix = ("push " + vmName + " ").getBytes(StandardCharsets.US_ASCII);
+        this.popPrefix = ("pop " + vmName + " ").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    String getVmName() {
+        return vmName;
+    }
+
+    byte[] getPushPrefix() {
+        return pushPrefix;
+    }
+
+    byte[] getPopPrefix() {
+        return popPrefix;
+    }
+}
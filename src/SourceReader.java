@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This reads jack files through a FileChannel. Each compiling thread keeps one reader and reuses its buffers for
+ * every file. Large files are memory-mapped, and smaller files are read into a pooled direct buffer. Either way the
+ * bytes are copied in bulk into a pooled array, which the tokenizer reads as ASCII, since reading a direct buffer one
+ * byte at a time is much slower in the tokenizer's loops.
+ */
+class SourceReader {
+
+    //Files at least this big are memory-mapped instead of read into the pooled buffer.
+    static final int MAP_THRESHOLD = 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private ByteBuffer directBuffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+    private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+    private int size = 0;
+
+    //Reads the whole file, replacing the last file read.
+    void read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to compile: " + path);
+            }
+            ByteBuffer source;
+            if (fileSize >= MAP_THRESHOLD) {
+                source = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            } else {
+                if (directBuffer.capacity() < fileSize) {
+                    directBuffer = ByteBuffer.allocateDirect(Math.max((int) fileSize, directBuffer.capacity() * 2));
+                }
+                directBuffer.clear();
+                directBuffer.limit((int) fileSize);
+                while (directBuffer.hasRemaining() && channel.read(directBuffer) >= 0) {
+                    //Keep reading until the buffer is full or the file ends.
+                }
+                directBuffer.flip();
+                source = directBuffer;
+            }
+
+            size = source.remaining();
+            if (bytes.length < size) {
+                bytes = new byte[Math.max(size, bytes.length * 2)];
+            }
+            source.get(bytes, 0, size);
+        }
+    }
+
+    //Returns the source as characters. ASCII sources are read straight from the pooled array, so they are only valid
+    //until the next file is read. Anything else is decoded with the default charset into a String, like before.
+    CharSequence getSource() {
+        for (int i = 0; i < size; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, 0, size, Charset.defaultCharset());
+            }
+        }
+        return new AsciiCharSequence(bytes, 0, size);
+    }
+
+    //Returns the number of bytes in the last file read.
+    int size() {
+        return size;
+    }
+
+    //Returns the SHA-256 hash of the source bytes as hex.
+    String hash() {
+        return BuildManifest.hash(bytes, 0, size);
+    }
+}
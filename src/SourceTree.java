@@ -0,0 +1,153 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This finds the jack files in a folder and every folder below it. Each folder is listed by its own task on a fork
+ * join pool, which starts a task for each folder it finds, so large trees are walked by several threads at once.
+ * Links to folders aren't followed, so a link can't make the walk go around in circles.
+ *
+ * Include and exclude globs are matched against the path relative to the root folder, such as src/game/Main.jack.
+ * A file is kept if it matches any include glob, or there are none, and no exclude glob. A folder that matches an
+ * exclude glob is skipped with everything in it.
+ */
+class SourceTree {
+
+    private final File root;
+    private final List<PathMatcher> includes = new ArrayList<>();
+    private final List<PathMatcher> excludes = new ArrayList<>();
+
+    //The jack files found in each folder, sorted by name. Only folders with jack files are kept.
+    private final Map<File, File[]> folders = new ConcurrentHashMap<>();
+    private long discoveryNanos;
+
+    private SourceTree(File root, List<String> includeGlobs, List<String> excludeGlobs) {
+        this.root = root;
+        for (String glob : includeGlobs) {
+            includes.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+        for (String glob : excludeGlobs) {
+            excludes.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+    }
+
+    //Finds the jack files in the folder and every folder below it, listing folders on up to the given number of
+    //threads.
+    static SourceTree discover(File root, List<String> includeGlobs, List<String> excludeGlobs, int jobs) {
+        SourceTree tree = new SourceTree(root, includeGlobs, excludeGlobs);
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        try {
+            pool.invoke(tree.new FolderTask(root.toPath()));
+        } finally {
+            pool.shutdown();
+        }
+        tree.discoveryNanos = System.nanoTime() - start;
+        return tree;
+    }
+
+    //Returns true if the path, relative to the root, should be compiled or walked.
+    private boolean isIncluded(Path relativePath, boolean folder) {
+        for (PathMatcher exclude : excludes) {
+            if (exclude.matches(relativePath)) {
+                return false;
+            }
+        }
+        if (folder || includes.isEmpty()) {
+            return true;
+        }
+        for (PathMatcher include : includes) {
+            if (include.matches(relativePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Returns the jack files found in each folder, with the folders in path order.
+    Map<File, File[]> getFolders() {
+        return new TreeMap<>(folders);
+    }
+
+    //Returns every jack file found, in path order.
+    File[] getFiles() {
+        List<File> files = new ArrayList<>();
+        for (File[] folderFiles : getFolders().values()) {
+            files.addAll(Arrays.asList(folderFiles));
+        }
+        return files.toArray(new File[0]);
+    }
+
+    //Returns the path of the file relative to the root, such as game/Main.jack.
+    String getRelativeName(File file) {
+        String name = root.toPath().relativize(file.toPath()).toString();
+        return name.isEmpty() ? "." : name.replace(File.separatorChar, '/');
+    }
+
+    //Getters
+    File getRoot() {
+        return root;
+    }
+
+    long getDiscoveryNanos() {
+        return discoveryNanos;
+    }
+
+    /**
+     * This lists one folder. It keeps the folder's jack files and starts a task for each folder in it.
+     */
+    private class FolderTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path folder;
+
+        FolderTask(Path folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        protected void compute() {
+            List<File> jackFiles = new ArrayList<>();
+            List<FolderTask> subfolderTasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    Path relativePath = root.toPath().relativize(entry);
+                    if (attributes.isDirectory()) {
+                        if (isIncluded(relativePath, true)) {
+                            subfolderTasks.add(new FolderTask(entry));
+                        }
+                    } else if (entry.getFileName().toString().endsWith(JackCompiler.IN_EXTENSION)
+                            && Files.isRegularFile(entry) && isIncluded(relativePath, false)) {
+                        jackFiles.add(entry.toFile());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            if (!jackFiles.isEmpty()) {
+                jackFiles.sort(Comparator.comparing(File::getName));
+                folders.put(folder.toFile(), jackFiles.toArray(new File[0]));
+            }
+            invokeAll(subfolderTasks);
+        }
+    }
+}
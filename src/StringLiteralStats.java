@@ -0,0 +1,34 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This adds up the string literal tables of every class compiled with shared strings for the report. It can be shared
+ * by the threads compiling a batch.
+ */
+class StringLiteralStats {
+
+    private final AtomicLong useCount = new AtomicLong();
+    private final AtomicLong usesInLoops = new AtomicLong();
+    private final AtomicLong literalCount = new AtomicLong();
+    private final AtomicLong unsharedInstructions = new AtomicLong();
+    private final AtomicLong sharedInstructions = new AtomicLong();
+
+    //Adds the literals of one class.
+    void add(StringLiteralTable table) {
+        useCount.addAndGet(table.getUseCount());
+        usesInLoops.addAndGet(table.getUsesInLoops());
+        literalCount.addAndGet(table.getLiteralCount());
+        unsharedInstructions.addAndGet(table.getUnsharedInstructions());
+        sharedInstructions.addAndGet(table.getSharedInstructions());
+    }
+
+    //Returns the instructions and allocations saved so far.
+    String getReport() {
+        return "Shared strings: " + useCount.get() + " uses of " + literalCount.get() + " distinct literals ("
+                + usesInLoops.get() + " inside while loops).\n"
+                + "  vm instructions: " + unsharedInstructions.get() + " before, " + sharedInstructions.get()
+                + " after\n"
+                + "  String.new allocations if every use runs once: " + useCount.get() + " before, "
+                + literalCount.get() + " after. Uses inside loops used to allocate on every iteration, and now"
+                + " allocate at most once.\n";
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This is the table of string literals in one class when strings are shared. Each distinct literal gets a hidden
+ * static after the class's own statics and a generated function that builds it. Every use pushes the static, and
+ * only calls the function to build the string the first time, so a literal in a loop is only allocated once.
+ */
+class StringLiteralTable {
+
+    //Generated names use $, which can't appear in a Jack identifier, so they can't clash with the class's subroutines.
+    static final String BUILDER_PREFIX = "string$";
+    static final String READY_LABEL = "STRING_READY";
+
+    //Each use writes push; if-goto; call; pop; label; push.
+    static final int INSTRUCTIONS_PER_USE = 6;
+
+    private final String className;
+    private final int firstStaticIndex;
+    private final Map<String, Integer> literals = new LinkedHashMap<>();
+    private int useCount = 0;
+    private int usesInLoops = 0;
+    private long unsharedInstructions = 0;
+
+    StringLiteralTable(String className, int firstStaticIndex) {
+        this.className = className;
+        this.firstStaticIndex = firstStaticIndex;
+    }
+
+    //Returns the expression for one use of the literal, adding it to the table if it's new. The empty string is
+    //written the same as before, since nothing is built for it.
+    Expression use(String text, int readyLabel, boolean inLoop) {
+        if (text.isEmpty()) {
+            return new Expression.StringConstant(text);
+        }
+        Integer literalIndex = literals.get(text);
+        if (literalIndex == null) {
+            literalIndex = literals.size();
+            literals.put(text, literalIndex);
+        }
+        useCount++;
+        if (inLoop) {
+            usesInLoops++;
+        }
+        unsharedInstructions += Expression.StringConstant.instructionCount(text);
+        return new Expression.SharedString(firstStaticIndex + literalIndex, getBuilderName(literalIndex), readyLabel);
+    }
+
+    //Writes the function that builds each literal and returns it.
+    void writeBuilders(VmCode vm) {
+        for (Map.Entry<String, Integer> literal : literals.entrySet()) {
+            vm.writeFunction(getBuilderName(literal.getValue()), 0);
+            new Expression.StringConstant(literal.getKey()).write(vm);
+            vm.writeReturn();
+        }
+    }
+
+    private String getBuilderName(int literalIndex) {
+        return className + "." + BUILDER_PREFIX + literalIndex;
+    }
+
+    //Getters for the statistics.
+    int getUseCount() {
+        return useCount;
+    }
+
+    int getUsesInLoops() {
+        return usesInLoops;
+    }
+
+    int getLiteralCount() {
+        return literals.size();
+    }
+
+    //Returns the number of instructions the uses would have been written as without sharing.
+    long getUnsharedInstructions() {
+        return unsharedInstructions;
+    }
+
+    //Returns the number of instructions written for the uses and the builders.
+    long getSharedInstructions() {
+        long instructions = (long) useCount * INSTRUCTIONS_PER_USE;
+        for (String text : literals.keySet()) {
+            instructions += Expression.StringConstant.instructionCount(text) + 2;
+        }
+        return instructions;
+    }
+}
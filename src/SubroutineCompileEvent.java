@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This flight recorder event covers parsing one subroutine and writing its vm code.
+ */
+@Name("jack.SubroutineCompile")
+@Label("Subroutine Compile")
+@Category("Jack Compiler")
+@StackTrace(false)
+@Description("Parsing one subroutine and writing its vm code")
+class SubroutineCompileEvent extends jdk.jfr.Event {
+
+    @Label("Subroutine")
+    String subroutine;
+
+    @Label("VM Instructions")
+    int instructions;
+}
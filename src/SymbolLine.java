@@ -1,14 +1,17 @@
 /**
- * This stores the info for a given symbol line in a symbol table.
+ * This stores the info for a given symbol line in a symbol table. The expression that pushes the variable and the
+ * instruction that pops into it are made the first time they are needed and reused for every later reference.
  */
 public class SymbolLine {
     String type;
-    String kind;
-    Integer index;
+    Segment segment;
+    int index;
+    private Expression.Variable variable;
+    private VmInstruction pop;
 
-    public SymbolLine(String type, String kind, int index) {
+    public SymbolLine(String type, Segment segment, int index) {
         this.type = type;
-        this.kind = kind;
+        this.segment = segment;
         this.index = index;
     }
 
@@ -16,18 +19,32 @@ public class SymbolLine {
         return type;
     }
 
-    @Override
-    public String toString() {
-        return kind + " " + index.toString();
+    public Segment getSegment() {
+        return segment;
+    }
+
+    public int getIndex() {
+        return index;
     }
 
-    public String  getPop()
-    {
-        return "pop " + this.toString();
+    //Returns the expression that pushes this variable.
+    Expression.Variable getVariable() {
+        if (variable == null) {
+            variable = new Expression.Variable(segment, index);
+        }
+        return variable;
     }
 
-    public String  getPush()
-    {
-        return "push " + this.toString();
+    //Returns the instruction that pops the top of the stack into this variable.
+    VmInstruction getPop() {
+        if (pop == null) {
+            pop = VmInstruction.pop(segment, index);
+        }
+        return pop;
+    }
+
+    @Override
+    public String toString() {
+        return segment.getVmName() + " " + index;
     }
 }
@@ -1,36 +1,39 @@
-import java.util.Hashtable;
+import java.util.HashMap;
 
 /**
- * This is a symbol table used for tacking the scope and type of each symbol.
+ * This is a symbol table used for tacking the scope and type of each symbol. Each compiler uses its tables from one
+ * thread, so they aren't synchronized. Identifiers come from the tokenizer's pool, so a lookup usually matches on the
+ * same String without comparing characters.
  */
 class SymbolTable {
-    private Hashtable<String, SymbolLine> table = new Hashtable<>();
-    private Hashtable<String, Integer> indexTracker = new Hashtable<>();
+    private HashMap<String, SymbolLine> table = new HashMap<>();
+
+    //Number of variables of each segment, indexed by the segment's ordinal.
+    private int[] varCounts = new int[Segment.values().length];
 
     //Adds line to symbol table.
     void addLine(String symbol, String type, String kind)
     {
-        symbol = Compiler.getTokenFromLine(symbol);
-        type = Compiler.getTokenFromLine(type);
-        kind = Compiler.getTokenFromLine(kind);
-
         //Change var to local to map to local memory segment in vm.
-        kind = getVmKind(kind);
+        Segment segment = getVmKind(kind);
 
-        table.put(symbol, new SymbolLine(type, kind, getIndex(kind)));
+        table.put(symbol, new SymbolLine(type, segment, varCounts[segment.ordinal()]++));
     }
 
     //Translates jack kind to vm.
-    private String getVmKind(String kind) {
-        if(kind.equals("var"))
-        {
-            kind = "local";
-        }
-        else if(kind.equals("field"))
-        {
-            kind = "this";
+    private Segment getVmKind(String kind) {
+        switch (kind) {
+            case "var":
+                return Segment.LOCAL;
+            case "field":
+                return Segment.THIS;
+            case "static":
+                return Segment.STATIC;
+            case "argument":
+                return Segment.ARGUMENT;
+            default:
+                throw new IllegalArgumentException("Unknown variable kind: " + kind);
         }
-        return kind;
     }
 
     //Checks if symbol in Symbol table.
@@ -39,37 +42,14 @@ class SymbolTable {
         return table.containsKey(symbol);
     }
 
-    //Looks at indexTracker for local var count. Returns 0 if nothing found.
-    public Integer getVarCount(String kind) {
-        if(indexTracker.containsKey(kind))
-        {
-            return indexTracker.get(kind) + 1;
-        }
-        else
-        {
-            return 0;
-        }
+    //Returns the number of variables in the segment.
+    public int getVarCount(Segment segment) {
+        return varCounts[segment.ordinal()];
     }
 
-    //Returns symbol line from symbol table.
+    //Returns symbol line from symbol table, or null if the symbol isn't in it.
     public SymbolLine getLine(String symbol)
     {
         return table.get(symbol);
     }
-
-    //Increments index tracker and returns index for this type.
-    private int getIndex(String kind)
-    {
-        int newIndex;
-        if(indexTracker.containsKey(kind))
-        {
-            newIndex = indexTracker.get(kind) + 1;
-        }
-        else
-        {
-            newIndex = 0;
-        }
-        indexTracker.put(kind, newIndex);
-        return  newIndex;
-    }
 }
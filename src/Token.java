@@ -0,0 +1,60 @@
+/**
+ * This stores a single token: its kind, its decoded value and the line it was found on.
+ */
+class Token {
+    private final TokenKind kind;
+    private final String value;
+    private final int lineNumber;
+
+    Token(TokenKind kind, String value, int lineNumber) {
+        this.kind = kind;
+        this.value = value;
+        this.lineNumber = lineNumber;
+    }
+
+    TokenKind getKind() {
+        return kind;
+    }
+
+    String getValue() {
+        return value;
+    }
+
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    //Returns true if this is the given symbol.
+    boolean isSymbol(char symbol) {
+        return kind == TokenKind.SYMBOL && value.charAt(0) == symbol;
+    }
+
+    //Returns true if this is the given keyword.
+    boolean isKeyword(String keyword) {
+        return kind == TokenKind.KEYWORD && value.equals(keyword);
+    }
+
+    //Returns the line written for this token in the token xml output.
+    String toXml() {
+        String xmlValue = value;
+        if (kind == TokenKind.SYMBOL) {
+            switch (value.charAt(0)) {
+                case '>':
+                    xmlValue = "&gt;";
+                    break;
+                case '<':
+                    xmlValue = "&lt;";
+                    break;
+                case '&':
+                    xmlValue = "&amp;";
+                    break;
+            }
+        }
+        return "<" + kind.getXmlTag() + "> " + xmlValue + " </" + kind.getXmlTag() + ">";
+    }
+
+    @Override
+    public String toString() {
+        return toXml() + " on line " + lineNumber;
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * This is the kind of a token, along with the tag used for it in the token xml output.
+ */
+enum TokenKind {
+    KEYWORD("keyword"),
+    SYMBOL("symbol"),
+    IDENTIFIER("identifier"),
+    INTEGER_CONSTANT("integerConstant"),
+    STRING_CONSTANT("stringConstant");
+
+    private final String xmlTag;
+
+    TokenKind(String xmlTag) {
+        this.xmlTag = xmlTag;
+    }
+
+    String getXmlTag() {
+        return xmlTag;
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This tokenizes a file on its own thread while the compiler reads the tokens, so lexing and code generation run at
+ * the same time. The lexing thread hands the tokens over in batches through a bounded queue, so the threads only
+ * meet once per batch, and when the queue is full the lexing thread waits for the compiler to catch up. At most the
+ * queue's batches plus the two being filled and read are held at once, however large the file is.
+ *
+ * If the tokenizer throws, the compiler gets the exception after the tokens read before it, just like it would
+ * tokenizing on its own thread. The pipeline must be closed when the compiler is done, which stops the lexing thread
+ * if the compiler stopped early and waits for it, so the source can be reused once close returns.
+ */
+class TokenPipeline implements Iterator<Token>, AutoCloseable {
+
+    static final int DEFAULT_QUEUE_BATCHES = 8;
+    static final int BATCH_SIZE = 256;
+
+    //How often a lexing thread waiting for room in the queue checks whether the pipeline was closed.
+    private static final long OFFER_MILLIS = 10;
+
+    //Marks the end of the tokens, or the point the tokenizer failed.
+    private static final Token[] END = new Token[0];
+
+    //The lexing threads are shared by every pipeline. They are daemons, so they don't keep the JVM running.
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService lexers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "jack-lexer-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BlockingQueue<Token[]> queue;
+    private final Future<?> lexer;
+    private volatile boolean closed = false;
+    private volatile Throwable failure = null;
+    private volatile long tokenizeNanos = 0;
+
+    //Only the compiler's thread uses these.
+    private Token[] batch = null;
+    private int batchIndex = 0;
+    private long waitNanos = 0;
+
+    //Starts tokenizing on a lexing thread, keeping at most the given number of full batches waiting in the queue.
+    TokenPipeline(Tokenizer tokenizer, int queueBatches) {
+        queue = new ArrayBlockingQueue<>(queueBatches);
+        lexer = lexers.submit(() -> tokenize(tokenizer));
+    }
+
+    //Runs on the lexing thread. Reads every token into batches and queues them, then queues the end marker. If the
+    //tokenizer throws, the tokens before the failure are queued first.
+    private void tokenize(Tokenizer tokenizer) {
+        long lexingNanos = 0;
+        Token[] tokens = new Token[BATCH_SIZE];
+        int count = 0;
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                while (count < BATCH_SIZE && tokenizer.hasNext()) {
+                    tokens[count++] = tokenizer.next();
+                }
+                lexingNanos += System.nanoTime() - start;
+                if (count < BATCH_SIZE) {
+                    break;
+                }
+                if (!offer(tokens)) {
+                    return;
+                }
+                tokens = new Token[BATCH_SIZE];
+                count = 0;
+            }
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        } finally {
+            tokenizeNanos = lexingNanos;
+        }
+
+        if (count > 0) {
+            Token[] lastTokens = new Token[count];
+            System.arraycopy(tokens, 0, lastTokens, 0, count);
+            if (!offer(lastTokens)) {
+                return;
+            }
+        }
+        offer(END);
+    }
+
+    //Queues a batch, waiting while the queue is full. Returns false without queueing it if the pipeline is closed
+    //first.
+    private boolean offer(Token[] tokens) {
+        try {
+            while (!closed) {
+                if (queue.offer(tokens, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (batch == null || batchIndex == batch.length) {
+            if (batch == END) {
+                return false;
+            }
+            batch = takeBatch();
+            batchIndex = 0;
+            if (batch == END) {
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                if (failure != null) {
+                    throw (RuntimeException) failure;
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Token next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch[batchIndex++];
+    }
+
+    //Waits for the next batch from the lexing thread.
+    private Token[] takeBatch() {
+        long start = System.nanoTime();
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tokens", e);
+        } finally {
+            waitNanos += System.nanoTime() - start;
+        }
+    }
+
+    //Stops the lexing thread if it's still running and waits for it to finish.
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+        try {
+            lexer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //The lexing thread catches what the tokenizer throws, so this doesn't happen.
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    //Returns the time the lexing thread spent tokenizing, not counting the time it waited for the compiler. It is
+    //only complete once the pipeline is closed.
+    long getTokenizeNanos() {
+        return tokenizeNanos;
+    }
+
+    //Returns the time the compiler spent waiting for tokens.
+    long getWaitNanos() {
+        return waitNanos;
+    }
+}
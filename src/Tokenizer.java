@@ -1,165 +1,298 @@
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
- * This is created for each line of a file to tokenize the input and write to the tokenized output file.
+ * This is created once for each file to strip the comments and tokenize the source. It walks a cursor over the
+ * characters of the whole file and returns each token in order, so no substring or regex is needed per character.
  */
-public class Tokenizer {
-
-    private FileWriter outputWriter;
-    private String line;
-    private int charNum;
-    private char currentCharacter;
-    private String stringToTokenize;
-    private static String listOfSymbols = "{}[]().,;+-*/&|<>=~";
-    private static String keywordRegex = "^(class|constructor|function|method|" +
-            "field|static|var|int|char|boolean|void|" +
-            "true|false|null|this|let|do|if|else|while|return)(?![a-zA-Z_]).*";
-    private static Pattern keywordPattern = Pattern.compile("(class|constructor|function|method|" +
-            "field|static|var|int|char|boolean|void|" +
-            "true|false|null|this|let|do|if|else|while|return)(?![a-zA-Z_]).*");
-    private static Pattern startingDigits = Pattern.compile("^([0-9]+).*");
-    private static Pattern identifierPat = Pattern.compile("^([a-zA-Z_]+).*");
-
-
-    //Constructor for a tokenizer to be made for each line parsed.
-    Tokenizer(FileWriter outputWriter, String line, int charNum) {
-        this.outputWriter = outputWriter;
-        this.line = line;
-        this.charNum = charNum;
-        this.stringToTokenize = line.substring(charNum);
-        this.currentCharacter = stringToTokenize.charAt(0);
-    }
-
-    //This determines what type of command is stored in a line, and then it writes that command to the output.
-    void writeTokenToTokenOutput() throws IOException
+public class Tokenizer implements Iterator<Token> {
+
+    private static final String LIST_OF_SYMBOLS = "{}[]().,;+-*/&|<>=~";
+    private static final String[] KEYWORDS = {"class", "constructor", "function", "method",
+            "field", "static", "var", "int", "char", "boolean", "void",
+            "true", "false", "null", "this", "let", "do", "if", "else", "while", "return"};
+
+    //Shared value for each symbol, indexed by the symbol character.
+    private static final String[] symbolValues = new String[128];
+
+    //Keyword trie over the letters a-z. Each row holds the next node for each letter, or 0 if there is none.
+    private static final int[][] keywordTrie;
+    private static final String[] keywordAtNode;
+
+    static {
+        for (char symbol : LIST_OF_SYMBOLS.toCharArray()) {
+            symbolValues[symbol] = String.valueOf(symbol);
+        }
+
+        int nodeCount = 1;
+        for (String keyword : KEYWORDS) {
+            nodeCount += keyword.length();
+        }
+        keywordTrie = new int[nodeCount][26];
+        keywordAtNode = new String[nodeCount];
+
+        int nextFreeNode = 1;
+        for (String keyword : KEYWORDS) {
+            int node = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int letter = keyword.charAt(i) - 'a';
+                if (keywordTrie[node][letter] == 0) {
+                    keywordTrie[node][letter] = nextFreeNode++;
+                }
+                node = keywordTrie[node][letter];
+            }
+            keywordAtNode[node] = keyword;
+        }
+    }
+
+    private final CharSequence source;
+    private final int sourceLength;
+    private final IdentifierPool identifiers = new IdentifierPool();
+
+    //Position of the cursor and the end of the code on the current line.
+    private int charNum = 0;
+    private int lineEnd = 0;
+    private int nextLineStart = 0;
+    private int lineNumber = 0;
+    private boolean inBulkComment = false;
+    private Token nextToken;
+
+    //Constructor for a tokenizer to be made for each file parsed.
+    Tokenizer(CharSequence source) {
+        this.source = source;
+        this.sourceLength = source.length();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextToken == null) {
+            nextToken = readToken();
+        }
+        return nextToken != null;
+    }
+
+    @Override
+    public Token next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Token token = nextToken;
+        nextToken = null;
+        return token;
+    }
+
+    //Skips past the } that closes the block whose { was the last token returned, without making tokens for anything
+    //in it. Braces in comments and string constants are ignored. This is used to skip subroutine bodies when only
+    //the declarations of a class are needed.
+    void skipBlock()
     {
-        while(charNum < line.length()) {
-            if (Character.isDigit(currentCharacter)) {
-                tokenizeIntegerConst();
+        if (nextToken != null) {
+            throw new IllegalStateException("Can't skip a block after looking ahead");
+        }
+        int depth = 1;
+        while (depth > 0) {
+            if (charNum >= lineEnd && !advanceLine()) {
+                throw new IllegalArgumentException("Unexpected end of file");
             }
-            else if(listOfSymbols.indexOf(currentCharacter) > -1)
-            {
-                tokenizeSymbol();
+            char character = source.charAt(charNum++);
+            if (character == '{') {
+                depth++;
             }
-            else if(currentCharacter == '"')
+            else if (character == '}') {
+                depth--;
+            }
+            else if (character == '"') {
+                while (charNum < lineEnd && source.charAt(charNum) != '"') {
+                    charNum++;
+                }
+                charNum++;
+            }
+        }
+    }
+
+    //This determines what type of token starts at the cursor, and then it returns that token.
+    //Returns null at the end of the file.
+    private Token readToken()
+    {
+        while (true) {
+            if (charNum >= lineEnd && !advanceLine()) {
+                return null;
+            }
+
+            char currentCharacter = source.charAt(charNum);
+            if (isAsciiDigit(currentCharacter)) {
+                return tokenizeIntegerConst();
+            }
+            else if(LIST_OF_SYMBOLS.indexOf(currentCharacter) > -1)
             {
-                tokenizeStringConst();
+                return tokenizeSymbol(currentCharacter);
             }
-            else if(stringToTokenize.matches(keywordRegex))
+            else if(currentCharacter == '"')
             {
-                tokenizeKeyword();
+                return tokenizeStringConst();
             }
-            else if(Character.isLetter(currentCharacter) || currentCharacter == '_')
+
+            String keyword = matchKeyword();
+            if (keyword != null)
             {
-                tokenizeIdentifier();
+                charNum += keyword.length();
+                return new Token(TokenKind.KEYWORD, keyword, lineNumber);
             }
-            else
+            else if(isIdentifierCharacter(currentCharacter))
             {
-                updateStringTokenize(1);
+                return tokenizeIdentifier();
             }
+            charNum++;
         }
     }
 
-    //Finds end of int, writes tokenized line to output, and updates char num.
-    private void tokenizeIntegerConst() throws IOException {
-        Matcher intMatcher = startingDigits.matcher(stringToTokenize);
-        if(intMatcher.find())
-        {
-        String integerConst = intMatcher.group(1);
-        int integerLength = integerConst.length();
-        outputWriter.write("<integerConstant> " + integerConst + " </integerConstant>\n");
-        updateStringTokenize(integerLength);
-    }
-        else
+    //Moves the cursor to the start of the next line that has code on it. Lines inside a bulk comment are skipped and
+    //anything after a comment marker is cut off. Returns false at the end of the file.
+    private boolean advanceLine()
     {
-        System.out.println(stringToTokenize);
+        while (nextLineStart < sourceLength) {
+            int lineStart = nextLineStart;
+            lineNumber++;
+            int end = lineStart;
+            int firstCommentMarker = -1;
+            boolean opensComment = false;
+            boolean closesComment = false;
+
+            //Find the end of the line and any comment markers on it.
+            while (end < sourceLength && !isLineBreak(source.charAt(end))) {
+                char character = source.charAt(end);
+                if (end + 1 < sourceLength) {
+                    char following = source.charAt(end + 1);
+                    boolean isOpen = character == '/' && following == '*';
+                    boolean isClose = character == '*' && following == '/';
+                    opensComment |= isOpen;
+                    closesComment |= isClose;
+                    if (firstCommentMarker < 0 && (isOpen || isClose || (character == '/' && following == '/'))) {
+                        firstCommentMarker = end;
+                    }
+                }
+                end++;
+            }
+            nextLineStart = skipLineBreak(end);
+
+            if (!inBulkComment) {
+                //Bulk comment starts in this line.
+                if (opensComment && !closesComment) {
+                    inBulkComment = true;
+                }
+                charNum = lineStart;
+                lineEnd = firstCommentMarker < 0 ? end : firstCommentMarker;
+                if (charNum < lineEnd) {
+                    return true;
+                }
+            }
+            else if (closesComment) {
+                inBulkComment = false;
+            }
+        }
+        return false;
     }
+
+    //Returns the start of the next line after the line break at the given position.
+    private int skipLineBreak(int lineBreak)
+    {
+        if (lineBreak < sourceLength && source.charAt(lineBreak) == '\r'
+                && lineBreak + 1 < sourceLength && source.charAt(lineBreak + 1) == '\n') {
+            return lineBreak + 2;
+        }
+        return lineBreak + 1;
     }
 
-    //Writes tokenized line to output, and advanced charNum by 1.
-    private void tokenizeSymbol() throws IOException
+    //Walks the keyword trie from the cursor. Returns the keyword if one starts here and isn't followed by
+    //another identifier letter, otherwise null.
+    private String matchKeyword()
     {
-        String symbol;
-        switch(currentCharacter)
-        {
-            case '>':
-                symbol = "&gt;";
+        int node = 0;
+        for (int i = charNum; i < lineEnd; i++) {
+            char character = source.charAt(i);
+            if (character < 'a' || character > 'z') {
                 break;
-            case '<':
-                symbol = "&lt;";
-                break;
-            case '&':
-                symbol = "&amp;";
-                break;
-            default:
-                symbol = String.valueOf(currentCharacter);
+            }
+            node = keywordTrie[node][character - 'a'];
+            if (node == 0) {
+                return null;
+            }
+            if (keywordAtNode[node] != null) {
+                int following = i + 1;
+                if (following < lineEnd && isIdentifierCharacter(source.charAt(following))) {
+                    return null;
+                }
+                return keywordAtNode[node];
+            }
+        }
+        return null;
+    }
+
+    //Finds end of int, returns the token, and updates char num.
+    private Token tokenizeIntegerConst() {
+        int start = charNum;
+        while (charNum < lineEnd && isAsciiDigit(source.charAt(charNum))) {
+            charNum++;
         }
+        return new Token(TokenKind.INTEGER_CONSTANT, source.subSequence(start, charNum).toString(), lineNumber);
+    }
 
-        outputWriter.write("<symbol> " + symbol + " </symbol>\n");
-        updateStringTokenize(1);
+    //Returns the symbol token, and advances charNum by 1.
+    private Token tokenizeSymbol(char currentCharacter)
+    {
+        charNum++;
+        return new Token(TokenKind.SYMBOL, symbolValues[currentCharacter], lineNumber);
     }
 
-    //Finds end of string, writes tokenized line to output, and updates char num.
-    private void tokenizeStringConst() throws IOException
+    //Finds end of string, returns the token, and updates char num.
+    private Token tokenizeStringConst()
     {
         //Strip first quote
-        updateStringTokenize(1);
+        int start = ++charNum;
 
         //Pull out everything before the next quote and strip that quote.
-        int indexOfNextQuote = stringToTokenize.indexOf('"');
-        String stringConst = stringToTokenize.substring(0, indexOfNextQuote);
+        while (charNum < lineEnd && source.charAt(charNum) != '"') {
+            charNum++;
+        }
+        if (charNum >= lineEnd) {
+            throw new IllegalArgumentException("String constant is not closed on its line: "
+                    + source.subSequence(start - 1, lineEnd));
+        }
+        String stringConst = source.subSequence(start, charNum).toString();
+        charNum++;
 
-        //write to output.
-        outputWriter.write("<stringConstant> " + stringConst + " </stringConstant>\n");
-        updateStringTokenize(indexOfNextQuote + 1);
+        return new Token(TokenKind.STRING_CONSTANT, stringConst, lineNumber);
     }
 
-    //Finds edn of keyword, write tokenized line to output and updates char num of letters in keyword.
-    private void tokenizeKeyword() throws IOException
+    //Find end of identifier, return the token and update the char num the num letters in identifier. The hash is
+    //worked out while scanning, so the identifier can be found in the pool without making a String first.
+    private Token tokenizeIdentifier()
     {
-        Matcher keywordMatcher = keywordPattern.matcher(stringToTokenize);
-        if(keywordMatcher.find()) {
-            String keywordConst = keywordMatcher.group(1);
-            int keywordLength = keywordConst.length();
-            outputWriter.write("<keyword> " + keywordConst + " </keyword>\n");
-            updateStringTokenize(keywordLength);
-        }
-        else
-        {
-            System.out.println(stringToTokenize);
+        int start = charNum;
+        int hash = 0;
+        char character;
+        while (charNum < lineEnd && isIdentifierCharacter(character = source.charAt(charNum))) {
+            hash = 31 * hash + character;
+            charNum++;
         }
+        return new Token(TokenKind.IDENTIFIER, identifiers.intern(source, start, charNum, hash), lineNumber);
     }
 
-    //Find end of identifier, write tokenized line to output and update the char num the num letters in identifier
-    private void tokenizeIdentifier() throws IOException
+    //Identifiers are made of the letters a-z, A-Z and underscores.
+    private static boolean isIdentifierCharacter(char character)
     {
-        Matcher identifierMatcher = identifierPat.matcher(stringToTokenize);
-        if(identifierMatcher.find()) {
-            String identifier = identifierMatcher.group(1);
-            int identifierLength = identifier.length();
-            outputWriter.write("<identifier> " + identifier + " </identifier>\n");
-            updateStringTokenize(identifierLength);
-        }
-        else
-        {
-            System.out.println(stringToTokenize);
-        }
+        return (character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z') || character == '_';
     }
 
-    //Checks if end of the line. Otherwise, advance to string to tokenize
-    //and current character.
-    private void updateStringTokenize(int charactersToAdvance) throws IOException {
-
-        charNum += charactersToAdvance;
+    private static boolean isAsciiDigit(char character)
+    {
+        return character >= '0' && character <= '9';
+    }
 
-        //Otherwise it's the end of the line.
-        if(charNum < line.length())
-        {
-            stringToTokenize = line.substring(charNum);
-            currentCharacter = stringToTokenize.charAt(0);
-        }
+    //Matches the line separators used by Scanner.nextLine.
+    private static boolean isLineBreak(char character)
+    {
+        return character == '\n' || character == '\r' || character == '\u2028' || character == '\u2029'
+                || character == '\u0085';
     }
 }
@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This holds the vm instructions of one class in order, so passes such as the peephole optimizer can rewrite them
+ * before they are written as text. It has the same write methods as VmEmitter, and it is reset and reused for each
+ * file a thread compiles.
+ */
+class VmCode {
+
+    private final ArrayList<VmInstruction> instructions = new ArrayList<>();
+
+    //Writes an instruction that was made ahead of time.
+    void write(VmInstruction instruction) {
+        instructions.add(instruction);
+    }
+
+    //Writes push segment index
+    void writePush(Segment segment, int index) {
+        instructions.add(VmInstruction.push(segment, index));
+    }
+
+    //Writes pop segment index
+    void writePop(Segment segment, int index) {
+        instructions.add(VmInstruction.pop(segment, index));
+    }
+
+    //Writes an arithmetic or logical command.
+    void writeArithmetic(ArithmeticCommand command) {
+        instructions.add(VmInstruction.arithmetic(command));
+    }
+
+    //Writes label prefixNumber
+    void writeLabel(String prefix, int number) {
+        instructions.add(VmInstruction.label(prefix, number));
+    }
+
+    //Writes goto prefixNumber
+    void writeGoto(String prefix, int number) {
+        instructions.add(VmInstruction.goTo(prefix, number));
+    }
+
+    //Writes if-goto prefixNumber
+    void writeIf(String prefix, int number) {
+        instructions.add(VmInstruction.ifGoTo(prefix, number));
+    }
+
+    //Writes call name argCount
+    void writeCall(String name, int argCount) {
+        instructions.add(VmInstruction.call(name, argCount));
+    }
+
+    //Writes function name localCount
+    void writeFunction(String name, int localCount) {
+        instructions.add(VmInstruction.function(name, localCount));
+    }
+
+    //Writes return
+    void writeReturn() {
+        instructions.add(VmInstruction.returnInstruction());
+    }
+
+    //Returns the instructions, which passes may change in place.
+    List<VmInstruction> getInstructions() {
+        return instructions;
+    }
+
+    //Returns the number of instructions.
+    int size() {
+        return instructions.size();
+    }
+
+    //Empties the code so it can be reused for the next file.
+    void reset() {
+        instructions.clear();
+    }
+
+    //Writes every instruction as text to the emitter.
+    void writeTo(VmEmitter vm) {
+        for (VmInstruction instruction : instructions) {
+            instruction.writeTo(vm);
+        }
+    }
+
+    @Override
+    public String toString() {
+        VmEmitter vm = new VmEmitter();
+        writeTo(vm);
+        return vm.toString();
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * This is the kind of a vm instruction.
+ */
+enum VmCommand {
+    PUSH,
+    POP,
+    ARITHMETIC,
+    LABEL,
+    GOTO,
+    IF_GOTO,
+    CALL,
+    FUNCTION,
+    RETURN
+}
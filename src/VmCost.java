@@ -0,0 +1,76 @@
+import java.util.List;
+
+/**
+ * This estimates how many Hack instructions the vm translator writes for each vm instruction, and so how long it takes
+ * to run on the Hack computer. The numbers are for a straightforward translator like the one built in the course: a
+ * call pushes the return address and the caller's four segment pointers, and a return restores them through a frame
+ * pointer, which is why calls and returns cost as much as dozens of pushes.
+ */
+class VmCost {
+
+    static final int CALL = 44;
+    static final int RETURN = 43;
+    static final int PUSH_CONSTANT = 7;
+    static final int PUSH_SEGMENT = 10;
+    static final int PUSH_FIXED = 7;
+    static final int POP_SEGMENT = 12;
+    static final int POP_FIXED = 5;
+    static final int BINARY = 5;
+    static final int UNARY = 3;
+    static final int COMPARISON = 13;
+    static final int GOTO = 2;
+    static final int IF_GOTO = 5;
+    static final int FUNCTION_PER_LOCAL = 7;
+
+    //Returns the estimated number of Hack instructions run for the vm instruction.
+    static int hackInstructions(VmInstruction instruction) {
+        switch (instruction.getCommand()) {
+            case PUSH:
+                if (instruction.getSegment() == Segment.CONSTANT) {
+                    return PUSH_CONSTANT;
+                }
+                return hasPointer(instruction.getSegment()) ? PUSH_SEGMENT : PUSH_FIXED;
+            case POP:
+                return hasPointer(instruction.getSegment()) ? POP_SEGMENT : POP_FIXED;
+            case ARITHMETIC:
+                switch (instruction.getArithmeticCommand()) {
+                    case NEG:
+                    case NOT:
+                        return UNARY;
+                    case EQ:
+                    case GT:
+                    case LT:
+                        return COMPARISON;
+                    default:
+                        return BINARY;
+                }
+            case GOTO:
+                return GOTO;
+            case IF_GOTO:
+                return IF_GOTO;
+            case CALL:
+                return CALL;
+            case FUNCTION:
+                return instruction.getNumber() * FUNCTION_PER_LOCAL;
+            case RETURN:
+                return RETURN;
+            default:
+                return 0;
+        }
+    }
+
+    //Returns the estimated number of Hack instructions run for the instructions from start to end, if each runs once.
+    static int hackInstructions(List<VmInstruction> instructions, int start, int end) {
+        int cost = 0;
+        for (int i = start; i < end; i++) {
+            cost += hackInstructions(instructions.get(i));
+        }
+        return cost;
+    }
+
+    //Returns true if the segment is reached through a base pointer, so its address has to be added up first.
+    private static boolean hasPointer(Segment segment) {
+        return segment == Segment.LOCAL || segment == Segment.ARGUMENT || segment == Segment.THIS
+                || segment == Segment.THAT;
+    }
+}
@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This writes vm commands as text into a reusable byte buffer. Each command has its own typed method, integers are
+ * written digit by digit without making a String, and the finished buffer is written to the vm file through a
+ * FileChannel. Identifiers and labels in Jack are ASCII, so every character is written as one byte.
+ */
+class VmEmitter {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final byte[] LABEL = ascii("label ");
+    private static final byte[] GOTO = ascii("goto ");
+    private static final byte[] IF_GOTO = ascii("if-goto ");
+    private static final byte[] CALL = ascii("call ");
+    private static final byte[] FUNCTION = ascii("function ");
+    private static final byte[] RETURN = ascii("return\n");
+
+    private byte[] buffer;
+    private int size = 0;
+
+    VmEmitter() {
+        this(INITIAL_CAPACITY);
+    }
+
+    VmEmitter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    //Writes push segment index
+    void writePush(Segment segment, int index) {
+        writeBytes(segment.getPushPrefix());
+        writeInt(index);
+        writeByte('\n');
+    }
+
+    //Writes pop segment index
+    void writePop(Segment segment, int index) {
+        writeBytes(segment.getPopPrefix());
+        writeInt(index);
+        writeByte('\n');
+    }
+
+    //Writes an arithmetic or logical command.
+    void writeArithmetic(ArithmeticCommand command) {
+        writeBytes(command.getLine());
+    }
+
+    //Writes label prefixNumber
+    void writeLabel(String prefix, int number) {
+        writeLabelCommand(LABEL, prefix, number);
+    }
+
+    //Writes goto prefixNumber
+    void writeGoto(String prefix, int number) {
+        writeLabelCommand(GOTO, prefix, number);
+    }
+
+    //Writes if-goto prefixNumber
+    void writeIf(String prefix, int number) {
+        writeLabelCommand(IF_GOTO, prefix, number);
+    }
+
+    //Writes call name argCount
+    void writeCall(String name, int argCount) {
+        writeBytes(CALL);
+        writeAscii(name);
+        writeByte(' ');
+        writeInt(argCount);
+        writeByte('\n');
+    }
+
+    //Writes function name localCount
+    void writeFunction(String name, int localCount) {
+        writeBytes(FUNCTION);
+        writeAscii(name);
+        writeByte(' ');
+        writeInt(localCount);
+        writeByte('\n');
+    }
+
+    //Writes return
+    void writeReturn() {
+        writeBytes(RETURN);
+    }
+
+    //Returns the number of bytes written so far.
+    int size() {
+        return size;
+    }
+
+    //Empties the buffer so it can be reused for the next file.
+    void reset() {
+        size = 0;
+    }
+
+    //Returns a copy of the bytes written so far.
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    //Returns true if the bytes written so far are the same as the given bytes.
+    boolean contentEquals(byte[] other) {
+        return Arrays.equals(buffer, 0, size, other, 0, other.length);
+    }
+
+    //Returns the hash of the bytes written so far.
+    String hash() {
+        return BuildManifest.hash(buffer, 0, size);
+    }
+
+    //Writes the buffer to the file, replacing anything already in it.
+    void writeTo(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer output = ByteBuffer.wrap(buffer, 0, size);
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        }
+    }
+
+    //Writes the buffer to the stream.
+    void writeTo(OutputStream stream) throws IOException {
+        stream.write(buffer, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.US_ASCII);
+    }
+
+    private void writeLabelCommand(byte[] command, String prefix, int number) {
+        writeBytes(command);
+        writeAscii(prefix);
+        if (number != VmInstruction.NO_NUMBER) {
+            writeInt(number);
+        }
+        writeByte('\n');
+    }
+
+    //Writes the digits of the number straight into the buffer.
+    private void writeInt(int number) {
+        if (number < 0) {
+            writeByte('-');
+            if (number == Integer.MIN_VALUE) {
+                writeAscii("2147483648");
+                return;
+            }
+            number = -number;
+        }
+
+        int digitCount = 1;
+        for (int remaining = number / 10; remaining > 0; remaining /= 10) {
+            digitCount++;
+        }
+        ensureCapacity(digitCount);
+        for (int i = size + digitCount - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        size += digitCount;
+    }
+
+    private void writeAscii(String text) {
+        int length = text.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buffer[size++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeByte(char character) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) character;
+    }
+
+    //Grows the buffer if the next write wouldn't fit.
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * This is one vm instruction. Instructions are immutable, so the common ones are made once and shared. Labels are
+ * kept as the prefix and number the compiler made them from, and the name is the function name for call and function.
+ * Labels read from vm files have no number, which is kept as NO_NUMBER.
+ */
+final class VmInstruction {
+
+    //Pushes and pops of the first few indexes of each segment are shared, along with every arithmetic command.
+    private static final int CACHED_INDEXES = 64;
+    static final int NO_NUMBER = -1;
+    private static final VmInstruction[][] pushes = new VmInstruction[Segment.values().length][CACHED_INDEXES];
+    private static final VmInstruction[][] pops = new VmInstruction[Segment.values().length][CACHED_INDEXES];
+    private static final VmInstruction[] arithmetics = new VmInstruction[ArithmeticCommand.values().length];
+    private static final VmInstruction RETURN_INSTRUCTION =
+            new VmInstruction(VmCommand.RETURN, null, null, null, 0);
+
+    static {
+        for (Segment segment : Segment.values()) {
+            for (int i = 0; i < CACHED_INDEXES; i++) {
+                pushes[segment.ordinal()][i] = new VmInstruction(VmCommand.PUSH, segment, null, null, i);
+                pops[segment.ordinal()][i] = new VmInstruction(VmCommand.POP, segment, null, null, i);
+            }
+        }
+        for (ArithmeticCommand command : ArithmeticCommand.values()) {
+            arithmetics[command.ordinal()] = new VmInstruction(VmCommand.ARITHMETIC, null, command, null, 0);
+        }
+    }
+
+    private final VmCommand command;
+    private final Segment segment;
+    private final ArithmeticCommand arithmeticCommand;
+    private final String name;
+    private final int number;
+
+    private VmInstruction(VmCommand command, Segment segment, ArithmeticCommand arithmeticCommand, String name,
+                          int number) {
+        this.command = command;
+        this.segment = segment;
+        this.arithmeticCommand = arithmeticCommand;
+        this.name = name;
+        this.number = number;
+    }
+
+    static VmInstruction push(Segment segment, int index) {
+        if (index >= 0 && index < CACHED_INDEXES) {
+            return pushes[segment.ordinal()][index];
+        }
+        return new VmInstruction(VmCommand.PUSH, segment, null, null, index);
+    }
+
+    static VmInstruction pop(Segment segment, int index) {
+        if (index >= 0 && index < CACHED_INDEXES) {
+            return pops[segment.ordinal()][index];
+        }
+        return new VmInstruction(VmCommand.POP, segment, null, null, index);
+    }
+
+    static VmInstruction arithmetic(ArithmeticCommand command) {
+        return arithmetics[command.ordinal()];
+    }
+
+    static VmInstruction label(String prefix, int number) {
+        return new VmInstruction(VmCommand.LABEL, null, null, prefix, number);
+    }
+
+    static VmInstruction goTo(String prefix, int number) {
+        return new VmInstruction(VmCommand.GOTO, null, null, prefix, number);
+    }
+
+    static VmInstruction ifGoTo(String prefix, int number) {
+        return new VmInstruction(VmCommand.IF_GOTO, null, null, prefix, number);
+    }
+
+    static VmInstruction call(String functionName, int argCount) {
+        return new VmInstruction(VmCommand.CALL, null, null, functionName, argCount);
+    }
+
+    static VmInstruction function(String functionName, int localCount) {
+        return new VmInstruction(VmCommand.FUNCTION, null, null, functionName, localCount);
+    }
+
+    static VmInstruction returnInstruction() {
+        return RETURN_INSTRUCTION;
+    }
+
+    //Returns true if this is push segment index
+    boolean isPush(Segment segment, int index) {
+        return command == VmCommand.PUSH && this.segment == segment && number == index;
+    }
+
+    //Returns true if this is pop segment index
+    boolean isPop(Segment segment, int index) {
+        return command == VmCommand.POP && this.segment == segment && number == index;
+    }
+
+    //Returns true if this is the given arithmetic command.
+    boolean isArithmetic(ArithmeticCommand command) {
+        return arithmeticCommand == command;
+    }
+
+    //Returns true if this is a label, goto or if-goto for the same label as the other instruction.
+    boolean hasSameLabel(VmInstruction other) {
+        return name != null && name.equals(other.name) && number == other.number && isLabelCommand()
+                && other.isLabelCommand();
+    }
+
+    //Returns true if this is a label, goto or if-goto.
+    boolean isLabelCommand() {
+        return command == VmCommand.LABEL || command == VmCommand.GOTO || command == VmCommand.IF_GOTO;
+    }
+
+    //Returns the same jump or label pointing at the given label.
+    VmInstruction withLabel(VmInstruction label) {
+        return new VmInstruction(command, null, null, label.name, label.number);
+    }
+
+    //Writes the instruction as text.
+    void writeTo(VmEmitter vm) {
+        switch (command) {
+            case PUSH:
+                vm.writePush(segment, number);
+                break;
+            case POP:
+                vm.writePop(segment, number);
+                break;
+            case ARITHMETIC:
+                vm.writeArithmetic(arithmeticCommand);
+                break;
+            case LABEL:
+                vm.writeLabel(name, number);
+                break;
+            case GOTO:
+                vm.writeGoto(name, number);
+                break;
+            case IF_GOTO:
+                vm.writeIf(name, number);
+                break;
+            case CALL:
+                vm.writeCall(name, number);
+                break;
+            case FUNCTION:
+                vm.writeFunction(name, number);
+                break;
+            case RETURN:
+                vm.writeReturn();
+                break;
+        }
+    }
+
+    //Getters
+    VmCommand getCommand() {
+        return command;
+    }
+
+    Segment getSegment() {
+        return segment;
+    }
+
+    ArithmeticCommand getArithmeticCommand() {
+        return arithmeticCommand;
+    }
+
+    //Returns the label prefix, or the function name for call and function.
+    String getName() {
+        return name;
+    }
+
+    //Returns the whole label, such as WHILE_EXP3.
+    String getLabel() {
+        return number == NO_NUMBER ? name : name + number;
+    }
+
+    //Returns the segment index, label number, argument count or local count.
+    int getNumber() {
+        return number;
+    }
+
+    @Override
+    public String toString() {
+        VmEmitter vm = new VmEmitter(64);
+        writeTo(vm);
+        return vm.toString().trim();
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * This reads vm files back into vm code, so vm files that weren't compiled from jack, such as the OS, can be
+ * translated to Hack assembly with the rest of a program. Labels are kept whole, since this compiler didn't number
+ * them.
+ */
+class VmParser {
+
+    //Reads every instruction in the vm file. Throws with the line number if a line isn't a vm instruction.
+    static VmCode parse(Path file) throws IOException {
+        VmCode code = new VmCode();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+        for (int i = 0; i < lines.size(); i++) {
+            try {
+                VmInstruction instruction = parseLine(lines.get(i));
+                if (instruction != null) {
+                    code.write(instruction);
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(file.getFileName() + " line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return code;
+    }
+
+    //Parses one line of a vm file, or returns null if it's blank or a comment.
+    static VmInstruction parseLine(String line) {
+        int comment = line.indexOf("//");
+        String[] words = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+        switch (words[0]) {
+            case "":
+                return null;
+            case "push":
+                return VmInstruction.push(parseSegment(words), parseNumber(words));
+            case "pop":
+                return VmInstruction.pop(parseSegment(words), parseNumber(words));
+            case "label":
+                return VmInstruction.label(parseName(words), VmInstruction.NO_NUMBER);
+            case "goto":
+                return VmInstruction.goTo(parseName(words), VmInstruction.NO_NUMBER);
+            case "if-goto":
+                return VmInstruction.ifGoTo(parseName(words), VmInstruction.NO_NUMBER);
+            case "call":
+                return VmInstruction.call(parseName(words), parseNumber(words));
+            case "function":
+                return VmInstruction.function(parseName(words), parseNumber(words));
+            case "return":
+                return VmInstruction.returnInstruction();
+            default:
+                for (ArithmeticCommand command : ArithmeticCommand.values()) {
+                    if (command.getVmName().equals(words[0])) {
+                        return VmInstruction.arithmetic(command);
+                    }
+                }
+                throw new IllegalArgumentException("Unknown vm command: " + words[0]);
+        }
+    }
+
+    private static Segment parseSegment(String[] words) {
+        String name = parseName(words);
+        for (Segment segment : Segment.values()) {
+            if (segment.getVmName().equals(name)) {
+                return segment;
+            }
+        }
+        throw new IllegalArgumentException("Unknown segment: " + name);
+    }
+
+    private static String parseName(String[] words) {
+        if (words.length < 2) {
+            throw new IllegalArgumentException("Missing a name after " + words[0]);
+        }
+        return words[1];
+    }
+
+    private static int parseNumber(String[] words) {
+        if (words.length < 3) {
+            throw new IllegalArgumentException("Missing a number after " + words[0] + " " + words[1]);
+        }
+        try {
+            return Integer.parseInt(words[2]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + words[2]);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the vm code of every class in a program, compiled before any of it is written, so passes can work on the
+ * whole program. Each function runs from its function instruction to the next one, and calls name the function they
+ * call, so the call graph can be read straight from the instructions.
+ */
+class VmProgram {
+
+    //The functions a program starts from. The OS's Sys.init calls Main.main, and the vm translator calls Sys.init.
+    static final String[] ENTRY_POINTS = {"Main.main", "Sys.init"};
+
+    private final List<VmCode> classes;
+    private int functionCount = 0;
+    private int removedFunctionCount = 0;
+    private int instructionCount = 0;
+    private int removedInstructionCount = 0;
+    private boolean hasEntryPoint = false;
+
+    VmProgram(List<VmCode> classes) {
+        this.classes = classes;
+    }
+
+    //Removes every function that can't be reached by calls from the entry points. If none of the entry points are in
+    //the program, such as when compiling a library on its own, nothing is removed. Returns the number of instructions
+    //removed.
+    int removeUnreachable() {
+        Map<String, Function> functions = findFunctions(classes);
+        functionCount = functions.size();
+        instructionCount = 0;
+        for (VmCode code : classes) {
+            instructionCount += code.size();
+        }
+
+        //Walk the call graph from the entry points.
+        Deque<Function> toVisit = new ArrayDeque<>();
+        for (String entryPoint : ENTRY_POINTS) {
+            Function function = functions.get(entryPoint);
+            if (function != null) {
+                function.reachable = true;
+                toVisit.add(function);
+                hasEntryPoint = true;
+            }
+        }
+        if (!hasEntryPoint) {
+            return 0;
+        }
+        while (!toVisit.isEmpty()) {
+            Function function = toVisit.poll();
+            List<VmInstruction> instructions = function.code.getInstructions();
+            for (int i = function.start; i < function.end; i++) {
+                VmInstruction instruction = instructions.get(i);
+                if (instruction.getCommand() == VmCommand.CALL) {
+                    Function called = functions.get(instruction.getName());
+                    if (called != null && !called.reachable) {
+                        called.reachable = true;
+                        toVisit.add(called);
+                    }
+                }
+            }
+        }
+
+        //Remove the functions that weren't reached, from the end of each class so the earlier indexes stay valid.
+        for (int i = 0; i < classes.size(); i++) {
+            List<Function> classFunctions = new ArrayList<>();
+            for (Function function : functions.values()) {
+                if (function.code == classes.get(i)) {
+                    classFunctions.add(function);
+                }
+            }
+            classFunctions.sort((first, second) -> Integer.compare(second.start, first.start));
+            for (Function function : classFunctions) {
+                if (!function.reachable) {
+                    function.code.getInstructions().subList(function.start, function.end).clear();
+                    removedFunctionCount++;
+                    removedInstructionCount += function.end - function.start;
+                }
+            }
+        }
+        return removedInstructionCount;
+    }
+
+    //Finds where each function starts and ends in its class's code, by function name.
+    static Map<String, Function> findFunctions(List<VmCode> classes) {
+        Map<String, Function> functions = new HashMap<>();
+        for (VmCode code : classes) {
+            List<VmInstruction> instructions = code.getInstructions();
+            Function function = null;
+            for (int i = 0; i < instructions.size(); i++) {
+                if (instructions.get(i).getCommand() == VmCommand.FUNCTION) {
+                    if (function != null) {
+                        function.end = i;
+                    }
+                    function = new Function(code, i);
+                    functions.put(instructions.get(i).getName(), function);
+                }
+            }
+            if (function != null) {
+                function.end = instructions.size();
+            }
+        }
+        return functions;
+    }
+
+    //Returns what removing the unreachable functions did.
+    String getReport() {
+        if (!hasEntryPoint) {
+            return "Whole program: none of " + String.join(", ", ENTRY_POINTS)
+                    + " were found, so no functions were removed.\n";
+        }
+        return "Whole program: removed " + removedFunctionCount + " of " + functionCount
+                + " functions that can't be reached from " + String.join(" or ", ENTRY_POINTS) + ", "
+                + removedInstructionCount + " of " + instructionCount + " vm instructions.\n";
+    }
+
+    /**
+     * This is where one function's instructions are in its class's code. The function instruction is at the start.
+     */
+    static class Function {
+        private final VmCode code;
+        private final int start;
+        private int end;
+        private boolean reachable = false;
+
+        Function(VmCode code, int start) {
+            this.code = code;
+            this.start = start;
+        }
+
+        VmCode getCode() {
+            return code;
+        }
+
+        int getStart() {
+            return start;
+        }
+
+        int getEnd() {
+            return end;
+        }
+    }
+}
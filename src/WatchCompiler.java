@@ -0,0 +1,124 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This keeps the compiler running and watches the source directory for changed jack files. A burst of saves is
+ * collected until the directory has been quiet for a moment and then recompiled as one batch in the same warm JVM.
+ * When the compiler was given one jack file, only changes to that file are compiled, not the other files in its
+ * directory.
+ */
+class WatchCompiler {
+
+    private static final long QUIET_PERIOD_MILLIS = 100;
+
+    private final JackCompiler jackCompiler;
+    private final Path directory;
+    //The names of the files to compile, or null to compile every jack file in the directory.
+    private final Set<Path> watchedNames;
+
+    WatchCompiler(JackCompiler jackCompiler) {
+        this.jackCompiler = jackCompiler;
+        this.directory = jackCompiler.getSourceDirectory().toPath();
+        if (jackCompiler.isSingleFile()) {
+            watchedNames = new TreeSet<>();
+            for (File file : jackCompiler.getInputFiles()) {
+                watchedNames.add(file.toPath().getFileName());
+            }
+        } else {
+            watchedNames = null;
+        }
+    }
+
+    //Compiles every file once, then recompiles changed files until the process is stopped.
+    void run() throws IOException, InterruptedException {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+
+            compile(jackCompiler.getInputFiles(), -1, System.nanoTime());
+            System.out.println("Watching " + directory + " for changes to jack files. Press Ctrl+C to stop.");
+
+            while (true) {
+                //Wait for the first change, then keep collecting changes until none arrive for the quiet period.
+                WatchKey key = watchService.take();
+                long firstChange = System.nanoTime();
+                Set<Path> changedFiles = new TreeSet<>();
+                boolean overflowed = collectChanges(key, changedFiles);
+                while ((key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    overflowed |= collectChanges(key, changedFiles);
+                }
+
+                //If events were lost, fall back to every jack file in the directory. Whole program builds always
+                //recompile every file, since a change to one file can change which functions the others need.
+                if (overflowed || (jackCompiler.isWholeProgram() && !changedFiles.isEmpty())) {
+                    try (var paths = Files.list(directory)) {
+                        paths.filter(this::isWatched).forEach(changedFiles::add);
+                    }
+                }
+
+                if (!changedFiles.isEmpty()) {
+                    File[] files = changedFiles.stream().map(Path::toFile).toArray(File[]::new);
+                    compile(files, firstChange, System.nanoTime());
+                }
+            }
+        }
+    }
+
+    //Adds the jack files from the key's events to the set and resets the key. Returns true if events overflowed.
+    private boolean collectChanges(WatchKey key, Set<Path> changedFiles) {
+        boolean overflowed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflowed = true;
+                continue;
+            }
+            Path changedFile = directory.resolve((Path) event.context());
+            if (isWatched(changedFile)) {
+                changedFiles.add(changedFile);
+            }
+        }
+        key.reset();
+        return overflowed;
+    }
+
+    //Compiles the files and prints how long it took, and how long since the first change if there was one. Errors are
+    //printed and the watch keeps going.
+    private void compile(File[] files, long firstChange, long start) {
+        StringBuilder fileNames = new StringBuilder();
+        for (File file : files) {
+            fileNames.append(fileNames.length() > 0 ? ", " : "").append(file.getName());
+        }
+
+        try {
+            jackCompiler.compileBatch(files);
+            long end = System.nanoTime();
+            if (firstChange < 0) {
+                System.out.printf("Compiled %s in %.1f ms.%n", fileNames, (end - start) / 1_000_000.0);
+            } else {
+                System.out.printf("Compiled %s in %.1f ms (%.1f ms after the first change).%n", fileNames,
+                        (end - start) / 1_000_000.0, (end - firstChange) / 1_000_000.0);
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Compile failed for " + fileNames + ". Waiting for the next change.");
+        }
+    }
+
+    //Returns true if the path is a jack file this watch compiles.
+    private boolean isWatched(Path path) {
+        return isJackFile(path) && (watchedNames == null || watchedNames.contains(path.getFileName()));
+    }
+
+    private static boolean isJackFile(Path path) {
+        return path.getFileName().toString().endsWith(JackCompiler.IN_EXTENSION) && Files.isRegularFile(path);
+    }
+}